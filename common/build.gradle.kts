@@ -15,6 +15,8 @@ dependencies {
     // Jackson for JSON serialization
     implementation("com.fasterxml.jackson.core:jackson-databind:2.15.2")
     implementation("com.fasterxml.jackson.datatype:jackson-datatype-jsr310:2.15.2")
+    // Binary wire format of inter-service messages
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-cbor")
 
     implementation("org.springframework.boot:spring-boot-starter-web")
     implementation("org.springframework.boot:spring-boot-starter-amqp")
@@ -22,6 +24,9 @@ dependencies {
 
     implementation("io.micrometer:micrometer-tracing-bridge-brave")
 
+    // Metrics of the shared messaging infrastructure
+    implementation("io.micrometer:micrometer-core")
+
     testImplementation("org.springframework.boot:spring-boot-starter-test")
     testImplementation("org.springframework.amqp:spring-rabbit-test")
 
@@ -32,4 +37,10 @@ dependencies {
 
 tasks.test {
     useJUnitPlatform()
+}
+
+// Payload size and encode/decode cost of every wire format, per message type
+tasks.register<JavaExec>("wireFormatBenchmark") {
+    classpath = sourceSets["test"].runtimeClasspath
+    mainClass.set("org.example.WireFormatBenchmark")
 }
\ No newline at end of file
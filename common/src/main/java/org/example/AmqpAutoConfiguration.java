@@ -0,0 +1,248 @@
+package org.example;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aopalliance.aop.Advice;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.rabbit.config.DirectRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.amqp.RabbitAutoConfiguration;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * AMQP infrastructure shared by all services, replacing the per-service copies of
+ * connection factory, converter and template.
+ *
+ * - One connection for consumers and a separate one for publishers, each with
+ *   its own channel cache
+ * - A single message converter, publishing in the configured {@link WireFormat}
+ *   and reading all of them
+ * - {@link ConfirmingPublisher}, publishing with asynchronous confirm tracking and
+ *   stamping a message ID on every message
+ * - {@link MessageDeduplicator}, skipping redelivered messages on every listener
+ * - {@link TieredRetry} of failed messages for listeners with {@code tiered-retry},
+ *   a {@link TieredRetryRouter} for listeners acking manually, and the
+ *   {@link ParkingLot} admin endpoints
+ * - {@code rabbitListenerContainerFactory} for regular listeners,
+ *   {@code batchRabbitListenerContainerFactory} for listeners taking a {@code List}
+ *   of messages and {@code shardedRabbitListenerContainerFactory} for listeners of
+ *   a {@link ShardedQueue}, all tuned per listener id from {@link AmqpProperties}
+ *
+ * Broker address and credentials still come from {@code spring.rabbitmq.*}.
+ */
+@AutoConfiguration(before = RabbitAutoConfiguration.class)
+@ConditionalOnClass(RabbitTemplate.class)
+@EnableConfigurationProperties({AmqpProperties.class, RabbitProperties.class})
+public class AmqpAutoConfiguration {
+
+    public static final String BATCH_CONTAINER_FACTORY = "batchRabbitListenerContainerFactory";
+    public static final String SHARDED_CONTAINER_FACTORY = "shardedRabbitListenerContainerFactory";
+
+    @Bean
+    @ConditionalOnMissingBean(ConnectionFactory.class)
+    public CachingConnectionFactory rabbitConnectionFactory(RabbitProperties rabbit, AmqpProperties amqp) {
+        CachingConnectionFactory factory = new CachingConnectionFactory(rabbit.determineHost(), rabbit.determinePort());
+        factory.setUsername(rabbit.determineUsername());
+        factory.setPassword(rabbit.determinePassword());
+        factory.setVirtualHost(rabbit.determineVirtualHost());
+        factory.setChannelCacheSize(amqp.consumer().channelCacheSize());
+        if (rabbit.getPublisherConfirmType() != null) {
+            factory.setPublisherConfirmType(rabbit.getPublisherConfirmType());
+        }
+        factory.setPublisherReturns(rabbit.isPublisherReturns());
+
+        // Created by the factory, used by templates with usePublisherConnection
+        if (factory.getPublisherConnectionFactory() instanceof CachingConnectionFactory publisher) {
+            publisher.setChannelCacheSize(amqp.publisher().channelCacheSize());
+        }
+        return factory;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(MessageConverter.class)
+    public WireFormatMessageConverter messageConverter(AmqpProperties amqp) {
+        return new WireFormatMessageConverter(amqp.wireFormat());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(RabbitTemplate.class)
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory,
+                                         MessageConverter messageConverter,
+                                         RabbitProperties rabbit) {
+        RabbitTemplate template = new RabbitTemplate(connectionFactory);
+        template.setMessageConverter(messageConverter);
+        template.setUsePublisherConnection(true);
+        template.setMandatory(rabbit.isPublisherReturns());
+        template.setObservationEnabled(rabbit.getTemplate().isObservationEnabled());
+        return template;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnMissingBean(ConfirmingPublisher.class)
+    public ConfirmingPublisher confirmingPublisher(RabbitTemplate rabbitTemplate,
+                                                   ObjectProvider<MeterRegistry> registry,
+                                                   AmqpProperties amqp) {
+        return new ConfirmingPublisher(rabbitTemplate, registry.getIfAvailable(SimpleMeterRegistry::new),
+                amqp.confirms());
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnMissingBean(MessageDeduplicator.class)
+    public MessageDeduplicator messageDeduplicator(ObjectProvider<MongoTemplate> mongoTemplate,
+                                                   ObjectProvider<MeterRegistry> registry,
+                                                   AmqpProperties amqp) {
+        return new MessageDeduplicator(mongoTemplate.getIfAvailable(),
+                registry.getIfAvailable(SimpleMeterRegistry::new), amqp.idempotency());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(ParkingLot.class)
+    public ParkingLot parkingLot(RabbitTemplate rabbitTemplate, ConfirmingPublisher publisher,
+                                 ObjectProvider<MeterRegistry> registry) {
+        return new ParkingLot(rabbitTemplate, publisher, registry.getIfAvailable(SimpleMeterRegistry::new));
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(TieredRetryRouter.class)
+    public TieredRetryRouter tieredRetryRouter(ConfirmingPublisher publisher,
+                                               ObjectProvider<MeterRegistry> registry,
+                                               AmqpProperties amqp) {
+        return new TieredRetryRouter(publisher, registry.getIfAvailable(SimpleMeterRegistry::new), amqp.retry());
+    }
+
+    @Bean
+    @ConditionalOnWebApplication
+    @ConditionalOnMissingBean(ParkingLotController.class)
+    public ParkingLotController parkingLotController(ParkingLot parkingLot) {
+        return new ParkingLotController(parkingLot);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = "rabbitListenerContainerFactory")
+    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(ConnectionFactory connectionFactory,
+                                                                             MessageConverter messageConverter,
+                                                                             RabbitProperties rabbit,
+                                                                             AmqpProperties amqp,
+                                                                             MessageDeduplicator deduplicator,
+                                                                             TieredRetryRouter router) {
+        TieredRetryAdvice retry = new TieredRetryAdvice(router);
+        return containerFactory(connectionFactory, messageConverter, rabbit, amqp, deduplicator, retry, false);
+    }
+
+    @Bean(BATCH_CONTAINER_FACTORY)
+    @ConditionalOnMissingBean(name = BATCH_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(ConnectionFactory connectionFactory,
+                                                                                  MessageConverter messageConverter,
+                                                                                  RabbitProperties rabbit,
+                                                                                  AmqpProperties amqp,
+                                                                                  MessageDeduplicator deduplicator) {
+        return containerFactory(connectionFactory, messageConverter, rabbit, amqp, deduplicator, null, true);
+    }
+
+    /**
+     * Direct containers with one consumer per queue, so that each shard is consumed
+     * in order while shards are consumed in parallel; queues are added and removed
+     * without restarting the other consumers. Concurrency settings do not apply.
+     */
+    @Bean(SHARDED_CONTAINER_FACTORY)
+    @ConditionalOnMissingBean(name = SHARDED_CONTAINER_FACTORY)
+    public DirectRabbitListenerContainerFactory shardedRabbitListenerContainerFactory(ConnectionFactory connectionFactory,
+                                                                                    MessageConverter messageConverter,
+                                                                                    RabbitProperties rabbit,
+                                                                                    AmqpProperties amqp,
+                                                                                    MessageDeduplicator deduplicator,
+                                                                                    TieredRetryRouter router) {
+        TieredRetryAdvice retry = new TieredRetryAdvice(router);
+        DirectRabbitListenerContainerFactory factory = new DirectRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter);
+        // Same switch as the other listeners
+        factory.setObservationEnabled(rabbit.getListener().getSimple().isObservationEnabled());
+        factory.setConsumersPerQueue(1);
+        factory.setContainerCustomizer(container -> {
+            AmqpProperties.Listener settings = amqp.listener(container.getListenerId());
+            if (settings.prefetch() != null) {
+                container.setPrefetchCount(settings.prefetch());
+            }
+            container.setAdviceChain(adviceChain(container, settings, deduplicator, retry));
+        });
+        return factory;
+    }
+
+    private static SimpleRabbitListenerContainerFactory containerFactory(ConnectionFactory connectionFactory,
+                                                                         MessageConverter messageConverter,
+                                                                         RabbitProperties rabbit,
+                                                                         AmqpProperties amqp,
+                                                                         MessageDeduplicator deduplicator,
+                                                                         TieredRetryAdvice retry,
+                                                                         boolean batch) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter);
+        factory.setObservationEnabled(rabbit.getListener().getSimple().isObservationEnabled());
+        if (batch) {
+            // Deliveries are gathered by the container, the listener receives them as a List
+            factory.setBatchListener(true);
+            factory.setConsumerBatchEnabled(true);
+            factory.setDeBatchingEnabled(true);
+        }
+        factory.setContainerCustomizer(container -> {
+            AmqpProperties.Listener settings = amqp.listener(container.getListenerId());
+            apply(settings, container);
+            container.setAdviceChain(adviceChain(container, settings, deduplicator, retry));
+        });
+        return factory;
+    }
+
+    private static Advice[] adviceChain(AbstractMessageListenerContainer container,
+                                        AmqpProperties.Listener settings,
+                                        MessageDeduplicator deduplicator,
+                                        TieredRetryAdvice retry) {
+        // The ack mode of the listener annotation is set by now
+        boolean manualAck = container.getAcknowledgeMode() == AcknowledgeMode.MANUAL;
+        // Outermost first: a retried message must have released its deduplication claim
+        List<Advice> advice = new ArrayList<>();
+        if (retry != null && !manualAck && Boolean.TRUE.equals(settings.tieredRetry())) {
+            advice.add(retry);
+        }
+        if (deduplicator.isEnabled()) {
+            advice.add(new DeduplicatingListenerAdvice(deduplicator, manualAck));
+        }
+        return advice.toArray(Advice[]::new);
+    }
+
+    static void apply(AmqpProperties.Listener settings, SimpleMessageListenerContainer container) {
+        if (settings.concurrency() != null) {
+            container.setConcurrentConsumers(settings.concurrency());
+        }
+        if (settings.maxConcurrency() != null) {
+            container.setMaxConcurrentConsumers(settings.maxConcurrency());
+        }
+        if (settings.prefetch() != null) {
+            container.setPrefetchCount(settings.prefetch());
+        }
+        if (settings.batchSize() != null) {
+            container.setBatchSize(settings.batchSize());
+        }
+        if (settings.batchReceiveTimeoutMs() != null) {
+            container.setBatchReceiveTimeout(settings.batchReceiveTimeoutMs());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.example;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tuning of the shared AMQP infrastructure, bound from {@code messaging.amqp.*}.
+ *
+ * Listener settings are looked up by the {@code id} of the {@code @RabbitListener};
+ * anything a listener leaves unset falls back to {@code defaults}.
+ *
+ * <pre>
+ * messaging:
+ *   amqp:
+ *     wire-format: cbor
+ *     publisher:
+ *       channel-cache-size: 50
+ *     defaults:
+ *       prefetch: 50
+ *     listeners:
+ *       saga-events:
+ *         concurrency: 4
+ *         max-concurrency: 8
+ *         prefetch: 250
+ *       order-requests:
+ *         tiered-retry: true
+ * </pre>
+ */
+@ConfigurationProperties(prefix = "messaging.amqp")
+public record AmqpProperties(
+        @DefaultValue Connection publisher,
+        @DefaultValue Connection consumer,
+        @DefaultValue Listener defaults,
+        Map<String, Listener> listeners,
+        @DefaultValue Confirms confirms,
+        @DefaultValue Idempotency idempotency,
+        @DefaultValue Retry retry,
+        @DefaultValue Sharding sharding,
+        // Encoding of published messages; all formats are always accepted
+        @DefaultValue("json") WireFormat wireFormat
+) {
+
+    /**
+     * Publisher confirm tracking of {@link ConfirmingPublisher}
+     */
+    public record Confirms(
+            // Unconfirmed messages before publishers block
+            @DefaultValue("1000") int maxInFlight,
+            @DefaultValue("5") int maxAttempts,
+            // Wait before retry n is n times this
+            @DefaultValue("200") long retryBackoffMs,
+            // Fanout exchanges where having no bound queue is normal: unroutable
+            // messages there are dropped instead of retried
+            @DefaultValue Set<String> broadcastExchanges
+    ) {}
+
+    /**
+     * Redelivery deduplication of {@link MessageDeduplicator}, applied to every listener
+     */
+    public record Idempotency(
+            @DefaultValue("true") boolean enabled,
+            // Message IDs remembered in memory
+            @DefaultValue("100000") int cacheSize,
+            // How long processed IDs are kept in the store
+            @DefaultValue("24h") Duration ttl,
+            @DefaultValue("100") long flushIntervalMs
+    ) {}
+
+    /**
+     * Delays of {@link TieredRetry}, for listeners with {@code tiered-retry} set.
+     * Tier n waits {@code initial-delay-ms * multiplier^(n-1)}; failures past the
+     * last tier wait as long as the last tier.
+     */
+    public record Retry(
+            @DefaultValue("1000") long initialDelayMs,
+            @DefaultValue("5") double multiplier,
+            @DefaultValue("3") int tiers,
+            // Deliveries, the first included, before a message is parked
+            @DefaultValue("6") int maxAttempts
+    ) {}
+
+    /**
+     * Sharded work queues of {@link ShardedQueue}, claimed through {@link ShardCoordinator}
+     */
+    public record Sharding(
+            // Must be the same in every service, producers included
+            @DefaultValue("8") int shards,
+            @DefaultValue("2000") long heartbeatIntervalMs,
+            // Members without a heartbeat for this long lose their shards
+            @DefaultValue("10000") long leaseMs
+    ) {}
+
+    /**
+     * Settings of one of the two connections; publishers and consumers never share
+     * a connection, so flow control on publishing cannot stall deliveries
+     */
+    public record Connection(
+            @DefaultValue("25") int channelCacheSize
+    ) {}
+
+    /**
+     * Settings of a listener container. Batch settings only apply to listeners
+     * created by the batch container factory.
+     */
+    public record Listener(
+            Integer concurrency,
+            Integer maxConcurrency,
+            Integer prefetch,
+            Integer batchSize,
+            Long batchReceiveTimeoutMs,
+            // Failed messages go through TTL delay queues, then the parking lot
+            Boolean tieredRetry
+    ) {
+        Listener orElse(Listener fallback) {
+            return new Listener(
+                    concurrency != null ? concurrency : fallback.concurrency,
+                    maxConcurrency != null ? maxConcurrency : fallback.maxConcurrency,
+                    prefetch != null ? prefetch : fallback.prefetch,
+                    batchSize != null ? batchSize : fallback.batchSize,
+                    batchReceiveTimeoutMs != null ? batchReceiveTimeoutMs : fallback.batchReceiveTimeoutMs,
+                    tieredRetry != null ? tieredRetry : fallback.tieredRetry);
+        }
+    }
+
+    /**
+     * Effective settings of a listener
+     */
+    public Listener listener(String id) {
+        Listener own = listeners == null || id == null ? null : listeners.get(id);
+        return own == null ? defaults : own.orElse(defaults);
+    }
+}
@@ -0,0 +1,198 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publisher that tracks broker confirms asynchronously.
+ *
+ * Messages are sent without waiting for their confirm, up to {@code max-in-flight}
+ * unconfirmed messages; past that, publishers block until confirms come back. Each
+ * message carries a correlation ID prefixed with its key (the order ID for SAGA
+ * messages), and a message ID for consumers to deduplicate on unless it has one
+ * already. Nacked or returned (unroutable) messages are sent again with linear
+ * backoff, up to {@code max-attempts}, as the same converted message. Unroutable
+ * messages of {@code broadcast-exchanges} are not retried: nobody subscribed to them.
+ *
+ * Requires {@code spring.rabbitmq.publisher-confirm-type=correlated}; without
+ * confirms, messages are sent fire-and-forget.
+ */
+public class ConfirmingPublisher {
+    private static final Logger logger = LoggerFactory.getLogger(ConfirmingPublisher.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final boolean confirms;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final Set<String> broadcastExchanges;
+    private final Semaphore window;
+    private final ScheduledExecutorService retries;
+
+    private final Timer confirmLatency;
+    private final Counter nackRetries;
+    private final Counter returnRetries;
+    private final Counter errorRetries;
+    private final Counter failures;
+    private final Counter unrouted;
+
+    public ConfirmingPublisher(RabbitTemplate rabbitTemplate, MeterRegistry registry,
+                               AmqpProperties.Confirms settings) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.confirms = rabbitTemplate.getConnectionFactory().isPublisherConfirms();
+        this.maxAttempts = settings.maxAttempts();
+        this.retryBackoffMs = settings.retryBackoffMs();
+        this.broadcastExchanges = settings.broadcastExchanges() != null ? settings.broadcastExchanges() : Set.of();
+        this.window = new Semaphore(settings.maxInFlight());
+        this.retries = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "amqp-publish-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (!confirms) {
+            logger.warn("Publisher confirms are disabled: messages are published without delivery guarantee");
+        }
+
+        this.confirmLatency = Timer.builder("amqp_publish_confirm_latency")
+                .description("Time from publish to broker confirm")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.nackRetries = retryCounter(registry, "nack");
+        this.returnRetries = retryCounter(registry, "returned");
+        this.errorRetries = retryCounter(registry, "error");
+        this.failures = Counter.builder("amqp_publish_failed_total")
+                .description("Messages given up after all publish attempts")
+                .register(registry);
+        this.unrouted = Counter.builder("amqp_publish_unrouted_total")
+                .description("Broadcast messages dropped by the broker for lack of a bound queue")
+                .register(registry);
+        Gauge.builder("amqp_publish_in_flight", window, w -> settings.maxInFlight() - w.availablePermits())
+                .description("Published messages waiting for a broker confirm")
+                .register(registry);
+    }
+
+    private static Counter retryCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("amqp_publish_retries_total")
+                .tag("reason", reason)
+                .description("Messages published again after a failed attempt")
+                .register(registry);
+    }
+
+    /**
+     * Publish to a queue through the default exchange
+     */
+    public CompletableFuture<Void> publish(String key, String queue, Object payload) {
+        return publish(key, "", queue, payload);
+    }
+
+    /**
+     * Publish a message; the future completes once the broker confirmed it,
+     * or exceptionally when every attempt failed
+     *
+     * @param key correlates the message with its business entity in logs and correlation IDs
+     */
+    public CompletableFuture<Void> publish(String key, String exchange, String routingKey, Object payload) {
+        Message message = rabbitTemplate.getMessageConverter().toMessage(payload, new MessageProperties());
+        return publish(key, exchange, routingKey, message);
+    }
+
+    /**
+     * Publish a message converted beforehand, such as one read back from an outbox
+     */
+    public CompletableFuture<Void> publish(String key, String exchange, String routingKey, Message message) {
+        // Kept across retries: consumers deduplicate on it
+        if (message.getMessageProperties().getMessageId() == null) {
+            message.getMessageProperties().setMessageId(UUID.randomUUID().toString());
+        }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        send(new Outgoing(key, exchange, routingKey, message, result), 1);
+        return result;
+    }
+
+    private void send(Outgoing outgoing, int attempt) {
+        if (!confirms) {
+            try {
+                rabbitTemplate.send(outgoing.exchange(), outgoing.routingKey(), outgoing.message());
+                outgoing.result().complete(null);
+            } catch (AmqpException e) {
+                retry(outgoing, attempt, errorRetries, e.getMessage());
+            }
+            return;
+        }
+
+        window.acquireUninterruptibly();
+        CorrelationData correlation = new CorrelationData(outgoing.key() + ":" + UUID.randomUUID());
+        // Settled once, by the confirm or by a send that never reached the broker
+        AtomicBoolean settled = new AtomicBoolean();
+        long sentAt = System.nanoTime();
+        correlation.getFuture().whenComplete((confirm, error) -> {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            window.release();
+            confirmLatency.record(System.nanoTime() - sentAt, TimeUnit.NANOSECONDS);
+            if (error != null) {
+                retry(outgoing, attempt, errorRetries, error.getMessage());
+            } else if (!confirm.isAck()) {
+                retry(outgoing, attempt, nackRetries, confirm.getReason());
+            } else if (correlation.getReturned() != null
+                    && broadcastExchanges.contains(outgoing.exchange())) {
+                unrouted.increment();
+                outgoing.result().complete(null);
+            } else if (correlation.getReturned() != null) {
+                retry(outgoing, attempt, returnRetries, correlation.getReturned().getReplyText());
+            } else {
+                outgoing.result().complete(null);
+            }
+        });
+
+        try {
+            rabbitTemplate.send(outgoing.exchange(), outgoing.routingKey(), outgoing.message(), correlation);
+        } catch (AmqpException e) {
+            if (settled.compareAndSet(false, true)) {
+                window.release();
+                retry(outgoing, attempt, errorRetries, e.getMessage());
+            }
+        }
+    }
+
+    private void retry(Outgoing outgoing, int attempt, Counter reason, String cause) {
+        if (attempt >= maxAttempts) {
+            failures.increment();
+            logger.error("Giving up publishing {} to {}/{} after {} attempts: {}",
+                    outgoing.key(), outgoing.exchange(), outgoing.routingKey(), attempt, cause);
+            outgoing.result().completeExceptionally(new AmqpException(
+                    "Publish of " + outgoing.key() + " failed after " + attempt + " attempts: " + cause));
+            return;
+        }
+        reason.increment();
+        logger.warn("Publish of {} to {}/{} failed ({}), retrying", outgoing.key(),
+                outgoing.exchange(), outgoing.routingKey(), cause);
+        retries.schedule(() -> send(outgoing, attempt + 1), retryBackoffMs * attempt, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        retries.shutdown();
+    }
+
+    private record Outgoing(String key, String exchange, String routingKey, Message message,
+                            CompletableFuture<Void> result) {}
+}
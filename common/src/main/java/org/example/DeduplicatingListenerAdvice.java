@@ -0,0 +1,99 @@
+package org.example;
+
+import com.rabbitmq.client.Channel;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Listener container advice skipping messages their queue already processed,
+ * see {@link MessageDeduplicator}. Batches are passed on without their duplicates.
+ *
+ * With automatic acks, messages are recorded as processed once the listener
+ * returned, and released when it threw. Listeners acking manually settle later,
+ * on other threads, so they report the outcome themselves with
+ * {@link MessageDeduplicator#complete} and {@link MessageDeduplicator#release};
+ * their duplicates are acked here.
+ */
+class DeduplicatingListenerAdvice implements MethodInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(DeduplicatingListenerAdvice.class);
+
+    private final MessageDeduplicator deduplicator;
+    private final boolean manualAck;
+
+    DeduplicatingListenerAdvice(MessageDeduplicator deduplicator, boolean manualAck) {
+        this.deduplicator = deduplicator;
+        this.manualAck = manualAck;
+    }
+
+    /**
+     * Wraps {@code invokeListener(Channel, Object)} of the container, where the
+     * data is a {@link Message} or, for batch listeners, a list of them
+     */
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object[] arguments = invocation.getArguments();
+        Channel channel = (Channel) arguments[0];
+        if (arguments[1] instanceof Message message) {
+            return claim(message, channel) ? proceed(invocation, List.of(message)) : null;
+        }
+        if (arguments[1] instanceof List<?> batch) {
+            List<Message> claimed = new ArrayList<>(batch.size());
+            for (Object message : batch) {
+                if (claim((Message) message, channel)) {
+                    claimed.add((Message) message);
+                }
+            }
+            if (claimed.isEmpty()) {
+                return null;
+            }
+            arguments[1] = claimed;
+            return proceed(invocation, claimed);
+        }
+        return invocation.proceed();
+    }
+
+    private Object proceed(MethodInvocation invocation, List<Message> claimed) throws Throwable {
+        if (manualAck) {
+            return invocation.proceed();
+        }
+        try {
+            Object result = invocation.proceed();
+            for (Message message : claimed) {
+                MessageProperties properties = message.getMessageProperties();
+                deduplicator.complete(properties.getConsumerQueue(), properties.getMessageId());
+            }
+            return result;
+        } catch (Throwable e) {
+            for (Message message : claimed) {
+                MessageProperties properties = message.getMessageProperties();
+                deduplicator.release(properties.getConsumerQueue(), properties.getMessageId());
+            }
+            throw e;
+        }
+    }
+
+    private boolean claim(Message message, Channel channel) throws IOException {
+        MessageProperties properties = message.getMessageProperties();
+        if (deduplicator.claim(properties.getConsumerQueue(), properties.getMessageId(),
+                Boolean.TRUE.equals(properties.getRedelivered()))) {
+            return true;
+        }
+        logger.info("Skipping message {} from {}: already processed", properties.getMessageId(),
+                properties.getConsumerQueue());
+        if (manualAck) {
+            // Manual listeners may ack on other threads; keep frames serialized
+            synchronized (channel) {
+                channel.basicAck(properties.getDeliveryTag(), false);
+            }
+        }
+        return false;
+    }
+}
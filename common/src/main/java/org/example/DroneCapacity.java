@@ -0,0 +1,12 @@
+package org.example;
+
+/**
+ * Capacity advertised by an instance of the drone service on
+ * {@link SagaTopology#DRONE_CAPACITY_EXCHANGE}
+ *
+ * @param capacity     drones the instance may have in flight at once
+ * @param available    drones it can still dispatch
+ * @param advertisedAt epoch millis of the advertisement
+ */
+public record DroneCapacity(String instanceId, int capacity, int available, long advertisedAt) {
+}
@@ -0,0 +1,80 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pauses and resumes the container of a listener, by its id.
+ *
+ * A paused container cancels its consumers, so new messages wait in the broker.
+ * Containers are stopped and started on a dedicated thread: stopping waits for
+ * the listener threads, which may be the ones asking for the pause.
+ */
+public class ListenerFlowControl {
+    private static final Logger logger = LoggerFactory.getLogger(ListenerFlowControl.class);
+
+    private final RabbitListenerEndpointRegistry listeners;
+    private final String listenerId;
+    private final ExecutorService executor;
+    private boolean paused;
+
+    public ListenerFlowControl(RabbitListenerEndpointRegistry listeners, String listenerId) {
+        this.listeners = listeners;
+        this.listenerId = listenerId;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "flow-control-" + listenerId);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Pause the listener; also stops a container started behind our back, e.g.
+     * by the application startup after an early pause
+     *
+     * @return whether the listener was running until now
+     */
+    public synchronized boolean pause() {
+        boolean changed = !paused;
+        paused = true;
+        executor.execute(() -> {
+            MessageListenerContainer container = listeners.getListenerContainer(listenerId);
+            if (container != null && container.isRunning()) {
+                container.stop();
+                logger.info("Listener {} paused", listenerId);
+            }
+        });
+        return changed;
+    }
+
+    /**
+     * @return whether the listener was paused until now
+     */
+    public synchronized boolean resume() {
+        if (!paused) {
+            return false;
+        }
+        paused = false;
+        executor.execute(() -> {
+            MessageListenerContainer container = listeners.getListenerContainer(listenerId);
+            if (container != null && !container.isRunning()) {
+                container.start();
+                logger.info("Listener {} resumed", listenerId);
+            }
+        });
+        return true;
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
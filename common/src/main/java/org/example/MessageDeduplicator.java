@@ -0,0 +1,253 @@
+package org.example;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers which messages each queue already processed, by the message ID stamped
+ * at publish time, so that redeliveries are not handled twice.
+ *
+ * - The hot path is a bounded in-memory LRU of the latest {@code cache-size} IDs,
+ *   holding both processed and in-progress messages
+ * - Processed IDs are also written, in batches every {@code flush-interval-ms}, to
+ *   the {@code processed_messages} collection, where a TTL index expires them after
+ *   {@code ttl}. On startup the LRU is warmed from it.
+ * - The collection is only read for redelivered messages the LRU does not know,
+ *   e.g. when a redelivery lands on another instance
+ *
+ * Messages without an ID (from producers predating the stamp) are never deduplicated.
+ * A message processed right before a crash may be handled again if its ID was
+ * not flushed yet.
+ */
+public class MessageDeduplicator {
+    private static final Logger logger = LoggerFactory.getLogger(MessageDeduplicator.class);
+
+    public static final String COLLECTION = "processed_messages";
+
+    private final boolean enabled;
+    private final MongoTemplate mongoTemplate;
+    private final Map<String, Boolean> recent;
+    private final ConcurrentLinkedQueue<Document> unflushed = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService flusher;
+
+    private final MeterRegistry registry;
+    private final Map<String, Counter> checkCounters = new ConcurrentHashMap<>();
+    private final Counter flushFailures;
+
+    /**
+     * @param mongoTemplate store of processed IDs, or null to deduplicate in memory only
+     */
+    public MessageDeduplicator(MongoTemplate mongoTemplate, MeterRegistry registry,
+                               AmqpProperties.Idempotency settings) {
+        this.enabled = settings.enabled();
+        this.mongoTemplate = enabled ? mongoTemplate : null;
+        this.registry = registry;
+        int cacheSize = settings.cacheSize();
+        // Access-ordered: the least recently seen ID goes first
+        this.recent = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        this.flushFailures = Counter.builder("amqp_dedup_flush_failures_total")
+                .description("Failed writes of processed message IDs to the store")
+                .register(registry);
+        Gauge.builder("amqp_dedup_cache_size", this, d -> d.cacheSize())
+                .description("Message IDs held in the in-memory deduplication window")
+                .register(registry);
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "amqp-dedup-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (this.mongoTemplate != null) {
+            prepareStore(settings);
+            flusher.scheduleWithFixedDelay(this::flushQuietly, settings.flushIntervalMs(),
+                    settings.flushIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void prepareStore(AmqpProperties.Idempotency settings) {
+        try {
+            mongoTemplate.indexOps(COLLECTION)
+                    .ensureIndex(new Index().on("processedAt", Sort.Direction.ASC).expire(settings.ttl()));
+            Query latest = new Query().with(Sort.by(Sort.Direction.DESC, "processedAt"))
+                    .limit(settings.cacheSize());
+            latest.fields().include("_id");
+            List<Document> processed = mongoTemplate.find(latest, Document.class, COLLECTION);
+            synchronized (recent) {
+                // Oldest first, so the most recent stay longest
+                for (int i = processed.size() - 1; i >= 0; i--) {
+                    recent.put(processed.get(i).getString("_id"), true);
+                }
+            }
+            logger.info("Deduplication window warmed with {} processed message IDs", processed.size());
+        } catch (DataAccessException e) {
+            logger.warn("Processed message store unavailable, starting with an empty window", e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Claim a message for processing
+     *
+     * @param queue       the queue the message was consumed from
+     * @param messageId   ID stamped by the publisher, may be null
+     * @param redelivered whether the broker delivered the message before
+     * @return false when the message was processed, or is being processed, already
+     */
+    public boolean claim(String queue, String messageId, boolean redelivered) {
+        if (!enabled || messageId == null) {
+            return true;
+        }
+        String key = key(queue, messageId);
+        synchronized (recent) {
+            if (recent.containsKey(key)) {
+                count(queue, "hit_memory");
+                return false;
+            }
+            recent.put(key, false);
+        }
+        if (redelivered && isStored(key)) {
+            synchronized (recent) {
+                recent.put(key, true);
+            }
+            count(queue, "hit_store");
+            return false;
+        }
+        count(queue, "miss");
+        return true;
+    }
+
+    /**
+     * Record a claimed message as processed
+     */
+    public void complete(String queue, String messageId) {
+        if (!enabled || messageId == null) {
+            return;
+        }
+        String key = key(queue, messageId);
+        synchronized (recent) {
+            recent.put(key, true);
+        }
+        if (mongoTemplate != null) {
+            unflushed.add(new Document("_id", key).append("processedAt", new Date()));
+        }
+    }
+
+    /**
+     * Give up a claim after a failure, so that the redelivery is processed
+     */
+    public void release(String queue, String messageId) {
+        if (!enabled || messageId == null) {
+            return;
+        }
+        synchronized (recent) {
+            recent.remove(key(queue, messageId));
+        }
+    }
+
+    private boolean isStored(String key) {
+        if (mongoTemplate == null) {
+            return false;
+        }
+        try {
+            return mongoTemplate.exists(Query.query(Criteria.where("_id").is(key)), COLLECTION);
+        } catch (DataAccessException e) {
+            logger.warn("Processed message lookup failed, handling {} as new", key, e);
+            return false;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            logger.warn("Failed to store processed message IDs, retrying with the next flush", e);
+        }
+    }
+
+    /**
+     * Write the IDs processed since the last flush
+     */
+    void flush() {
+        List<Document> batch = new ArrayList<>();
+        for (Document document = unflushed.poll(); document != null; document = unflushed.poll()) {
+            batch.add(document);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            mongoTemplate.getCollection(COLLECTION).insertMany(batch, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            // Already stored, e.g. by a redelivery handled elsewhere: nothing to keep
+            boolean onlyDuplicates = e.getWriteErrors().stream()
+                    .map(BulkWriteError::getCode)
+                    .allMatch(code -> code == 11000);
+            if (!onlyDuplicates) {
+                unflushed.addAll(batch);
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            unflushed.addAll(batch);
+            throw e;
+        }
+    }
+
+    private int cacheSize() {
+        synchronized (recent) {
+            return recent.size();
+        }
+    }
+
+    private void count(String queue, String result) {
+        checkCounters.computeIfAbsent(queue + "/" + result, k -> Counter.builder("amqp_dedup_checks_total")
+                .tag("queue", queue)
+                .tag("result", result)
+                .description("Deduplication checks of consumed messages; hit_* are duplicates skipped")
+                .register(registry)).increment();
+    }
+
+    private static String key(String queue, String messageId) {
+        return queue + ":" + messageId;
+    }
+
+    public void shutdown() {
+        flusher.shutdown();
+        if (mongoTemplate != null) {
+            flushQuietly();
+        }
+    }
+}
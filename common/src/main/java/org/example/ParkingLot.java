@@ -0,0 +1,155 @@
+package org.example;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.GetResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations on the parking lots of {@link TieredRetry}, by work queue name.
+ *
+ * Listing peeks: messages are fetched without ack, then all returned to the queue.
+ * Replaying moves messages back to their work queue one at a time, with a fresh
+ * attempt count, acking each only once its copy is confirmed.
+ */
+public class ParkingLot {
+    private static final Logger logger = LoggerFactory.getLogger(ParkingLot.class);
+    private static final long CONFIRM_TIMEOUT_MS = 10_000;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final RabbitAdmin rabbitAdmin;
+    private final ConfirmingPublisher publisher;
+    private final MeterRegistry registry;
+    private final MessagePropertiesConverter propertiesConverter = new DefaultMessagePropertiesConverter();
+
+    public ParkingLot(RabbitTemplate rabbitTemplate, ConfirmingPublisher publisher, MeterRegistry registry) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.rabbitAdmin = new RabbitAdmin(rabbitTemplate);
+        this.publisher = publisher;
+        this.registry = registry;
+    }
+
+    /**
+     * Oldest parked messages of a work queue, left in place
+     */
+    public List<ParkedMessage> list(String queue, int limit) {
+        String parking = TieredRetry.parkingQueue(queue);
+        return rabbitTemplate.execute(channel -> {
+            List<ParkedMessage> parked = new ArrayList<>();
+            long lastTag = -1;
+            try {
+                while (parked.size() < limit) {
+                    GetResponse response = channel.basicGet(parking, false);
+                    if (response == null) {
+                        break;
+                    }
+                    lastTag = response.getEnvelope().getDeliveryTag();
+                    parked.add(ParkedMessage.of(response));
+                }
+            } finally {
+                if (lastTag >= 0) {
+                    channel.basicNack(lastTag, true, true);
+                }
+            }
+            return parked;
+        });
+    }
+
+    /**
+     * Move up to {@code limit} parked messages back to their work queue
+     *
+     * @return the number of messages replayed
+     */
+    public int replay(String queue, int limit) {
+        String parking = TieredRetry.parkingQueue(queue);
+        int replayed = rabbitTemplate.execute(channel -> {
+            int count = 0;
+            while (count < limit) {
+                GetResponse response = channel.basicGet(parking, false);
+                if (response == null) {
+                    break;
+                }
+                long tag = response.getEnvelope().getDeliveryTag();
+                MessageProperties properties = propertiesConverter.toMessageProperties(
+                        response.getProps(), response.getEnvelope(), StandardCharsets.UTF_8.name());
+                properties.getHeaders().remove(TieredRetry.ATTEMPTS_HEADER);
+                properties.getHeaders().remove(TieredRetry.ERROR_HEADER);
+                properties.getHeaders().remove(TieredRetry.PARKED_AT_HEADER);
+                try {
+                    publisher.publish(queue, queue, new Message(response.getBody(), properties))
+                            .get(CONFIRM_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (Exception e) {
+                    channel.basicNack(tag, false, true);
+                    logger.error("Failed to replay a parked message of {}, stopping after {}", queue, count, e);
+                    break;
+                }
+                channel.basicAck(tag, false);
+                count++;
+            }
+            return count;
+        });
+        counter("amqp_parking_replayed_total", "Parked messages sent back to their queue", queue)
+                .increment(replayed);
+        logger.info("Replayed {} parked messages of {}", replayed, queue);
+        return replayed;
+    }
+
+    /**
+     * Drop every parked message of a work queue
+     *
+     * @return the number of messages dropped
+     */
+    public int purge(String queue) {
+        int purged = rabbitAdmin.purgeQueue(TieredRetry.parkingQueue(queue));
+        counter("amqp_parking_purged_total", "Parked messages dropped", queue).increment(purged);
+        logger.warn("Purged {} parked messages of {}", purged, queue);
+        return purged;
+    }
+
+    private Counter counter(String name, String description, String queue) {
+        return Counter.builder(name)
+                .tag("queue", queue)
+                .description(description)
+                .register(registry);
+    }
+
+    /**
+     * A parked message; the body is included for text content types only
+     */
+    public record ParkedMessage(String messageId, String contentType, Integer attempts, String lastError,
+                                Instant parkedAt, int size, String body) {
+
+        static ParkedMessage of(GetResponse response) {
+            AMQP.BasicProperties properties = response.getProps();
+            Map<String, Object> headers = properties.getHeaders() != null ? properties.getHeaders() : Map.of();
+            Object attempts = headers.get(TieredRetry.ATTEMPTS_HEADER);
+            Object error = headers.get(TieredRetry.ERROR_HEADER);
+            Object parkedAt = headers.get(TieredRetry.PARKED_AT_HEADER);
+            String contentType = properties.getContentType();
+            boolean text = contentType != null && (contentType.contains("json") || contentType.startsWith("text/"));
+            return new ParkedMessage(
+                    properties.getMessageId(),
+                    contentType,
+                    attempts instanceof Number number ? number.intValue() : null,
+                    error != null ? error.toString() : null,
+                    parkedAt instanceof Number millis ? Instant.ofEpochMilli(millis.longValue()) : null,
+                    response.getBody().length,
+                    text ? new String(response.getBody(), StandardCharsets.UTF_8) : null);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.example;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin endpoints of the parking lots, by work queue name (e.g. {@code order_queue})
+ */
+@RestController
+@RequestMapping("/admin/parking")
+public class ParkingLotController {
+    private final ParkingLot parkingLot;
+
+    public ParkingLotController(ParkingLot parkingLot) {
+        this.parkingLot = parkingLot;
+    }
+
+    @GetMapping("/{queue}")
+    public ResponseEntity<List<ParkingLot.ParkedMessage>> list(@PathVariable String queue,
+                                                               @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(parkingLot.list(queue, limit));
+    }
+
+    @PostMapping("/{queue}/replay")
+    public ResponseEntity<Map<String, Integer>> replay(@PathVariable String queue,
+                                                       @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(Map.of("replayed", parkingLot.replay(queue, limit)));
+    }
+
+    @DeleteMapping("/{queue}")
+    public ResponseEntity<Map<String, Integer>> purge(@PathVariable String queue) {
+        return ResponseEntity.ok(Map.of("purged", parkingLot.purge(queue)));
+    }
+}
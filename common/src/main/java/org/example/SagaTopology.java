@@ -0,0 +1,79 @@
+package org.example;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Exchanges, queues and routing keys shared by the services.
+ *
+ * - {@code saga_events_exchange} (topic) carries point-to-point SAGA traffic in two
+ *   namespaces: commands of the orchestrator ({@code command.<service>.<action>})
+ *   and replies to it ({@code reply.<service>.<outcome>}). Every queue binds only the
+ *   keys its listener handles, so the orchestrator never receives its own messages.
+ * - {@code saga_notifications_exchange} (fanout) broadcasts the SAGA lifecycle;
+ *   every interested service binds a queue of its own. Having no subscriber is fine.
+ * - {@code order_queue} and {@code drone_queue} are work queues sharded by order ID,
+ *   published to through their {@link ShardedQueue#exchange(String) exchange}.
+ * - {@code drone_capacity_exchange} (fanout) carries the {@link DroneCapacity} of each
+ *   drone service instance to the delivery services, which pace their intake on it.
+ */
+public final class SagaTopology {
+    public static final String SAGA_EVENTS_EXCHANGE = "saga_events_exchange";
+    public static final String NOTIFICATIONS_EXCHANGE = "saga_notifications_exchange";
+    public static final String DRONE_CAPACITY_EXCHANGE = "drone_capacity_exchange";
+
+    public static final String ORDER_QUEUE = "order_queue";
+    public static final String DRONE_QUEUE = "drone_queue";
+    // Replies to the orchestrator
+    public static final String SAGA_EVENTS_QUEUE = "saga_events_queue";
+    public static final String ORDER_COMPENSATION_QUEUE = "saga_compensation_queue";
+    public static final String DELIVERY_COMPENSATION_QUEUE = "delivery_compensation_queue";
+    public static final String DRONE_COMPENSATION_QUEUE = "drone_compensation_queue";
+
+    // Replies of the services to the orchestrator
+    public static final String REPLIES = "reply.#";
+    public static final String DELIVERY_SCHEDULED = "reply.delivery.scheduled";
+    public static final String DRONE_ASSIGNED = "reply.drone.assigned";
+
+    // Commands of the orchestrator
+    public static final String COMPENSATE_ORDER = "command.order.compensate";
+    public static final String COMPENSATE_DELIVERY = "command.delivery.compensate";
+    public static final String COMPENSATE_DRONE = "command.drone.compensate";
+
+    private static final Map<Class<? extends SagaEvent>, String> POINT_TO_POINT = Map.of(
+            DeliveryScheduledEvent.class, DELIVERY_SCHEDULED,
+            DroneAssignedEvent.class, DRONE_ASSIGNED,
+            CompensateOrderEvent.class, COMPENSATE_ORDER,
+            CompensateDeliveryEvent.class, COMPENSATE_DELIVERY,
+            CompensateDroneEvent.class, COMPENSATE_DRONE
+    );
+
+    private SagaTopology() {
+    }
+
+    /**
+     * Whether an event is broadcast rather than sent to the one service acting on it
+     */
+    public static boolean isNotification(Class<? extends SagaEvent> type) {
+        return !POINT_TO_POINT.containsKey(type);
+    }
+
+    public static String exchange(SagaEvent event) {
+        return isNotification(event.getClass()) ? NOTIFICATIONS_EXCHANGE : SAGA_EVENTS_EXCHANGE;
+    }
+
+    /**
+     * Routing key of an event; informative only for notifications, as fanout ignores it
+     */
+    public static String routingKey(SagaEvent event) {
+        String key = routingKey(event.getClass());
+        return key != null ? key : "saga." + event.getEventType().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Routing key of a command or reply type, null for notifications
+     */
+    static String routingKey(Class<? extends SagaEvent> type) {
+        return POINT_TO_POINT.get(type);
+    }
+}
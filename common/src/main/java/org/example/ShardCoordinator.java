@@ -0,0 +1,214 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.listener.AbstractMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Claims a share of the shards of a {@link ShardedQueue} for one listener.
+ *
+ * Every instance heartbeats into the {@code shard_members} collection. Members
+ * seen within {@code lease-ms} split the shards by rendezvous hashing, which every
+ * member computes on its own from the same member list: no leader, no locks.
+ * When a member joins, leaves or stops heartbeating, the others pick up the
+ * change on their next heartbeat and only the shards concerned move.
+ *
+ * Claimed shards are added to the listener container next to the queues of its
+ * annotation, and released ones removed. Shard queues have a single active
+ * consumer, so while members disagree for a heartbeat, a shard is never consumed
+ * by two of them at once.
+ *
+ * Without a MongoTemplate, the instance claims every shard.
+ */
+public class ShardCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    public static final String COLLECTION = "shard_members";
+
+    private final MongoTemplate mongoTemplate;
+    private final RabbitListenerEndpointRegistry listeners;
+    private final String listenerId;
+    private final String queue;
+    private final AmqpProperties.Sharding settings;
+    private final String memberId = UUID.randomUUID().toString();
+    private final ScheduledExecutorService heartbeat;
+
+    private volatile List<String> members = List.of();
+    private volatile Set<Integer> owned = Set.of();
+    private final Counter rebalances;
+
+    /**
+     * @param mongoTemplate store of the members, or null to claim every shard
+     */
+    public ShardCoordinator(MongoTemplate mongoTemplate, MeterRegistry registry,
+                            RabbitListenerEndpointRegistry listeners, String listenerId, String queue,
+                            AmqpProperties.Sharding settings) {
+        this.mongoTemplate = mongoTemplate;
+        this.listeners = listeners;
+        this.listenerId = listenerId;
+        this.queue = queue;
+        this.settings = settings;
+
+        Gauge.builder("amqp_shards_owned", this, c -> c.owned.size())
+                .tag("queue", queue)
+                .description("Shards of the queue consumed by this instance")
+                .register(registry);
+        Gauge.builder("amqp_shard_members", this, c -> c.members.size())
+                .tag("queue", queue)
+                .description("Live instances sharing the shards of the queue")
+                .register(registry);
+        this.rebalances = Counter.builder("amqp_shard_rebalances_total")
+                .tag("queue", queue)
+                .description("Changes of the shards consumed by this instance")
+                .register(registry);
+
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shard-coordinator-" + listenerId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (mongoTemplate != null) {
+            try {
+                // Members that left without a goodbye
+                mongoTemplate.indexOps(COLLECTION).ensureIndex(new Index().on("heartbeatAt", Sort.Direction.ASC)
+                        .expire(Duration.ofMillis(settings.leaseMs() * 10)));
+            } catch (DataAccessException e) {
+                logger.warn("Failed to create the index of {}", COLLECTION, e);
+            }
+        }
+        heartbeat.scheduleWithFixedDelay(this::rebalanceQuietly, 0, settings.heartbeatIntervalMs(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    public Set<Integer> getOwnedShards() {
+        return owned;
+    }
+
+    private void rebalanceQuietly() {
+        try {
+            rebalance();
+        } catch (RuntimeException e) {
+            // Shards stay as they are; if the lease runs out, the others take them over
+            logger.warn("Shard rebalance of {} failed, retrying with the next heartbeat", queue, e);
+        }
+    }
+
+    /**
+     * Heartbeat, then claim and release shards as the live members changed
+     */
+    void rebalance() {
+        List<String> live = mongoTemplate != null ? heartbeatAndList() : List.of(memberId);
+        Set<Integer> wanted = ShardedQueue.assign(live, memberId, settings.shards());
+        members = live;
+        if (wanted.equals(owned)) {
+            return;
+        }
+        if (apply(wanted)) {
+            logger.info("Consuming shards {} of {}, shared by {} instances", wanted, queue, live.size());
+            owned = wanted;
+            rebalances.increment();
+        }
+    }
+
+    private List<String> heartbeatAndList() {
+        Date now = new Date();
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(key(memberId))),
+                new Update().set("queue", queue).set("memberId", memberId).set("heartbeatAt", now),
+                COLLECTION);
+        Query live = Query.query(Criteria.where("queue").is(queue)
+                .and("heartbeatAt").gte(new Date(now.getTime() - settings.leaseMs())));
+        live.fields().include("memberId");
+        List<String> ids = new ArrayList<>();
+        for (Document member : mongoTemplate.find(live, Document.class, COLLECTION)) {
+            ids.add(member.getString("memberId"));
+        }
+        if (!ids.contains(memberId)) {
+            ids.add(memberId);
+        }
+        return ids;
+    }
+
+    /**
+     * @return false when the container is not there yet, or could not be changed
+     */
+    private boolean apply(Set<Integer> wanted) {
+        MessageListenerContainer listener = listeners.getListenerContainer(listenerId);
+        if (!(listener instanceof AbstractMessageListenerContainer container)) {
+            return false;
+        }
+        Set<String> current = new TreeSet<>(Arrays.asList(container.getQueueNames()));
+        Set<String> claimed = new TreeSet<>();
+        for (int shard : wanted) {
+            claimed.add(ShardedQueue.shard(queue, shard));
+        }
+        List<String> released = current.stream()
+                .filter(name -> ShardedQueue.isShard(queue, name) && !claimed.contains(name))
+                .toList();
+        List<String> added = claimed.stream().filter(name -> !current.contains(name)).toList();
+        try {
+            if (container.isRunning()) {
+                // Releasing first lets the next owner start as early as possible
+                if (!released.isEmpty()) {
+                    container.removeQueueNames(released.toArray(String[]::new));
+                }
+                if (!added.isEmpty()) {
+                    container.addQueueNames(added.toArray(String[]::new));
+                }
+            } else {
+                // Not started yet, or paused: consumed from on the next start
+                List<String> names = new ArrayList<>(current.stream()
+                        .filter(name -> !ShardedQueue.isShard(queue, name)).toList());
+                names.addAll(claimed);
+                container.setQueueNames(names.toArray(String[]::new));
+            }
+            return true;
+        } catch (IllegalStateException e) {
+            // Started or stopped meanwhile
+            logger.debug("Listener {} changed state during a rebalance, retrying", listenerId, e);
+            return false;
+        }
+    }
+
+    private String key(String member) {
+        return queue + ":" + member;
+    }
+
+    /**
+     * Leave the group, so the others take the shards over on their next heartbeat
+     */
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        if (mongoTemplate != null) {
+            try {
+                mongoTemplate.remove(Query.query(Criteria.where("_id").is(key(memberId))), COLLECTION);
+            } catch (DataAccessException e) {
+                logger.warn("Failed to leave the shard members of {}", queue, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.example;
+
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.ExchangeBuilder;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Sharded topology of a work queue.
+ *
+ * Messages are published to a consistent-hash exchange (RabbitMQ plugin
+ * {@code rabbitmq_consistent_hash_exchange}) with the order ID as routing key, which
+ * spreads orders evenly over {@code shards} queues while sending every message of
+ * an order to the same shard. Each service instance consumes the shards it claims
+ * through {@link ShardCoordinator}, one consumer per shard.
+ *
+ * For {@code order_queue} and 4 shards:
+ *
+ * - {@code order_queue.sharded}, a {@value #CONSISTENT_HASH} exchange
+ * - {@code order_queue.shard.0} to {@code order_queue.shard.3}, bound with weight 1
+ *   and single active consumer: while shards move between instances, the new owner
+ *   only receives messages once the previous one let go
+ *
+ * The shard count is part of the topology: producers and consumers must agree on
+ * it, and changing it moves orders between shards.
+ *
+ * Consumers also keep draining the unsharded {@code order_queue} of older producers,
+ * through the same listener: with {@code tiered-retry} its failures are rerouted to
+ * {@code order_queue.retry.<delay>}, so it is declared with its own retry topology.
+ */
+public final class ShardedQueue {
+    public static final String CONSISTENT_HASH = "x-consistent-hash";
+
+    private ShardedQueue() {
+    }
+
+    /**
+     * Exchange, shards and their bindings; declared by producers and consumers alike
+     */
+    public static Declarables declarables(String queue, int shards) {
+        return declarables(queue, shards, null);
+    }
+
+    /**
+     * Also the unsharded queue and the {@link TieredRetry} topology of every queue the
+     * listener consumes, for the consumers of a listener with {@code tiered-retry}
+     */
+    public static Declarables declarables(String queue, int shards, AmqpProperties.Retry retry) {
+        List<Declarable> declarables = new ArrayList<>();
+        if (retry != null) {
+            declarables.add(QueueBuilder.durable(queue).build());
+            declarables.addAll(TieredRetry.declarables(queue, retry).getDeclarables());
+        }
+        Exchange exchange = new ExchangeBuilder(exchange(queue), CONSISTENT_HASH).durable(true).build();
+        declarables.add(exchange);
+        for (String name : shards(queue, shards)) {
+            Queue shard = QueueBuilder.durable(name).singleActiveConsumer().build();
+            // Weight of the shard on the hash ring
+            Binding binding = BindingBuilder.bind(shard).to(exchange).with("1").noargs();
+            declarables.add(shard);
+            declarables.add(binding);
+            if (retry != null) {
+                declarables.addAll(TieredRetry.declarables(name, retry).getDeclarables());
+            }
+        }
+        return new Declarables(declarables);
+    }
+
+    public static String exchange(String queue) {
+        return queue + ".sharded";
+    }
+
+    public static String shard(String queue, int index) {
+        return queue + ".shard." + index;
+    }
+
+    public static List<String> shards(String queue, int shards) {
+        List<String> names = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            names.add(shard(queue, i));
+        }
+        return names;
+    }
+
+    static boolean isShard(String queue, String name) {
+        return name.startsWith(queue + ".shard.");
+    }
+
+    /**
+     * Shards owned by a member, by rendezvous hashing: each shard goes to the member
+     * with the highest score for it. When a member joins or leaves, only the shards
+     * it gains or loses move.
+     */
+    static Set<Integer> assign(Collection<String> members, String member, int shards) {
+        Set<Integer> owned = new TreeSet<>();
+        for (int shard = 0; shard < shards; shard++) {
+            String owner = null;
+            long best = Long.MIN_VALUE;
+            for (String candidate : members) {
+                long score = score(candidate, shard);
+                // Ties, if ever, go to the smallest ID so that everyone agrees
+                if (owner == null || score > best || (score == best && candidate.compareTo(owner) < 0)) {
+                    owner = candidate;
+                    best = score;
+                }
+            }
+            if (member.equals(owner)) {
+                owned.add(shard);
+            }
+        }
+        return owned;
+    }
+
+    // SplitMix64 finalizer over the String hash, which is the same on every JVM
+    private static long score(String member, int shard) {
+        long z = (member.hashCode() * 0x9E3779B97F4A7C15L) ^ (shard * 0xBF58476D1CE4E5B9L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,84 @@
+package org.example;
+
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Retry topology of a work queue.
+ *
+ * A message that failed is not requeued in place but published to a delay queue,
+ * whose TTL dead-letters it back to the work queue once the delay is over.
+ * Delays grow with each tier. After {@code max-attempts} deliveries, or right away
+ * when it cannot be converted, the message goes to the dead-letter exchange, which
+ * routes it to the parking lot of its queue, until replayed or purged through
+ * {@link ParkingLot}.
+ *
+ * For {@code order_queue} with the default delays:
+ *
+ * - {@code order_queue.retry.1000}, {@code order_queue.retry.5000} and
+ *   {@code order_queue.retry.25000}, dead-lettering to {@code order_queue}
+ * - {@code order_queue.parking}, bound to {@value #DEAD_LETTER_EXCHANGE} with
+ *   {@code order_queue}
+ *
+ * Delay queues are named after their delay: a new delay declares a new queue
+ * rather than conflicting with the TTL of the existing one.
+ */
+public final class TieredRetry {
+    public static final String DEAD_LETTER_EXCHANGE = "dead_letter_exchange";
+
+    // Failed deliveries so far
+    public static final String ATTEMPTS_HEADER = "x-retry-attempts";
+    // Set on parked messages
+    public static final String ORIGINAL_QUEUE_HEADER = "x-original-queue";
+    public static final String ERROR_HEADER = "x-last-error";
+    public static final String PARKED_AT_HEADER = "x-parked-at";
+
+    private TieredRetry() {
+    }
+
+    /**
+     * Delay queues, parking lot and dead-letter exchange of a work queue
+     */
+    public static Declarables declarables(String queue, AmqpProperties.Retry settings) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (int tier = 1; tier <= settings.tiers(); tier++) {
+            long delayMs = delayMs(settings, tier);
+            declarables.add(QueueBuilder.durable(delayQueue(queue, delayMs))
+                    .ttl((int) delayMs)
+                    .deadLetterExchange("")
+                    .deadLetterRoutingKey(queue)
+                    .build());
+        }
+        DirectExchange deadLetters = new DirectExchange(DEAD_LETTER_EXCHANGE);
+        Queue parking = QueueBuilder.durable(parkingQueue(queue)).build();
+        Binding parkingBinding = BindingBuilder.bind(parking).to(deadLetters).with(queue);
+        declarables.add(deadLetters);
+        declarables.add(parking);
+        declarables.add(parkingBinding);
+        return new Declarables(declarables);
+    }
+
+    /**
+     * Delay of a tier, 1-based; tiers past the last one use the last delay
+     */
+    static long delayMs(AmqpProperties.Retry settings, int tier) {
+        int capped = Math.min(Math.max(tier, 1), settings.tiers());
+        return Math.round(settings.initialDelayMs() * Math.pow(settings.multiplier(), capped - 1));
+    }
+
+    public static String delayQueue(String queue, long delayMs) {
+        return queue + ".retry." + delayMs;
+    }
+
+    public static String parkingQueue(String queue) {
+        return queue + ".parking";
+    }
+}
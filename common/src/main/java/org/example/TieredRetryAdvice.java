@@ -0,0 +1,56 @@
+package org.example;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+
+/**
+ * Listener container advice sending failed messages through {@link TieredRetry}
+ * instead of requeueing them in place, where a poison message loops hot.
+ *
+ * Messages that cannot be converted, or whose listener threw
+ * {@link AmqpRejectAndDontRequeueException}, are parked without retry.
+ *
+ * Once the retry or parked copy is confirmed by the broker, the failed delivery
+ * is acked. When that publish fails, the failure is rethrown and the container
+ * requeues the message as before. Only for single-message listeners with
+ * automatic acks; listeners acking manually use {@link TieredRetryRouter} directly.
+ */
+class TieredRetryAdvice implements MethodInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(TieredRetryAdvice.class);
+
+    private final TieredRetryRouter router;
+
+    TieredRetryAdvice(ConfirmingPublisher publisher, MeterRegistry registry, AmqpProperties.Retry settings) {
+        this(new TieredRetryRouter(publisher, registry, settings));
+    }
+
+    TieredRetryAdvice(TieredRetryRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (!(invocation.getArguments()[1] instanceof Message message)) {
+            return invocation.proceed();
+        }
+        try {
+            return invocation.proceed();
+        } catch (Throwable e) {
+            try {
+                router.reroute(message, e);
+            } catch (Exception publishFailure) {
+                if (publishFailure instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                logger.error("Failed to reroute a failed message, requeueing it", publishFailure);
+                throw e;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends a failed message to the {@link TieredRetry} delay queue of its attempt, or
+ * parks it once its attempts are used up.
+ *
+ * Used by {@link TieredRetryAdvice} for listeners with automatic acks, and directly
+ * by listeners acking manually: they ack the failed delivery once its copy is
+ * confirmed. The work queue is the one the message was consumed from, which must
+ * have its {@link TieredRetry#declarables} declared.
+ */
+public class TieredRetryRouter {
+    private static final Logger logger = LoggerFactory.getLogger(TieredRetryRouter.class);
+    private static final long CONFIRM_TIMEOUT_MS = 10_000;
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    /**
+     * Returned by {@link #reroute} for a parked message
+     */
+    public static final long PARKED = -1;
+
+    private final ConfirmingPublisher publisher;
+    private final MeterRegistry registry;
+    private final AmqpProperties.Retry settings;
+
+    public TieredRetryRouter(ConfirmingPublisher publisher, MeterRegistry registry, AmqpProperties.Retry settings) {
+        this.publisher = publisher;
+        this.registry = registry;
+        this.settings = settings;
+    }
+
+    /**
+     * Count a failed attempt of the message and publish it to its delay queue, or
+     * to the parking lot. Messages that cannot be converted, or whose listener threw
+     * {@link AmqpRejectAndDontRequeueException}, are parked without retry.
+     *
+     * @return the delay before the next attempt, or {@link #PARKED}
+     * @throws Exception if the broker did not confirm the copy; the failed delivery
+     *                   must then be requeued
+     */
+    public long reroute(Message message, Throwable error) throws Exception {
+        MessageProperties properties = message.getMessageProperties();
+        String queue = properties.getConsumerQueue();
+        Object previous = properties.getHeader(TieredRetry.ATTEMPTS_HEADER);
+        int attempts = (previous instanceof Number number ? number.intValue() : 0) + 1;
+        properties.setHeader(TieredRetry.ATTEMPTS_HEADER, attempts);
+
+        boolean unconvertible = causedBy(error, MessageConversionException.class);
+        boolean rejected = causedBy(error, AmqpRejectAndDontRequeueException.class);
+        if (unconvertible || rejected || attempts >= settings.maxAttempts()) {
+            properties.setHeader(TieredRetry.ORIGINAL_QUEUE_HEADER, queue);
+            properties.setHeader(TieredRetry.ERROR_HEADER, describe(error));
+            properties.setHeader(TieredRetry.PARKED_AT_HEADER, System.currentTimeMillis());
+            await(publisher.publish(queue, TieredRetry.DEAD_LETTER_EXCHANGE, queue, message));
+            Counter.builder("amqp_parked_total")
+                    .tag("queue", queue)
+                    .tag("reason", unconvertible ? "unconvertible" : rejected ? "rejected" : "exhausted")
+                    .description("Messages moved to the parking lot")
+                    .register(registry)
+                    .increment();
+            logger.error("Parked message {} from {} after {} attempts", properties.getMessageId(), queue,
+                    attempts, error);
+            return PARKED;
+        }
+
+        long delayMs = TieredRetry.delayMs(settings, attempts);
+        // The Message overload: the body is sent as is, not converted again
+        await(publisher.publish(queue, "", TieredRetry.delayQueue(queue, delayMs), message));
+        Counter.builder("amqp_retry_scheduled_total")
+                .tag("queue", queue)
+                .tag("tier", String.valueOf(Math.min(attempts, settings.tiers())))
+                .description("Failed messages sent to a delay queue for another attempt")
+                .register(registry)
+                .increment();
+        logger.warn("Message {} from {} failed (attempt {}), retrying in {} ms: {}", properties.getMessageId(),
+                queue, attempts, delayMs, describe(error));
+        return delayMs;
+    }
+
+    /**
+     * Publish a message that did not fail to a delay queue, without counting an
+     * attempt: it waits behind a failed message of the same entity, which
+     * {@link #reroute} sent to the same queue first
+     *
+     * @throws Exception if the broker did not confirm the copy
+     */
+    public void delay(Message message, long delayMs) throws Exception {
+        String queue = message.getMessageProperties().getConsumerQueue();
+        await(publisher.publish(queue, "", TieredRetry.delayQueue(queue, delayMs), message));
+        Counter.builder("amqp_retry_held_total")
+                .tag("queue", queue)
+                .description("Messages delayed behind a failed message of the same entity")
+                .register(registry)
+                .increment();
+    }
+
+    private static void await(CompletableFuture<Void> confirm)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        confirm.get(CONFIRM_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean causedBy(Throwable error, Class<? extends Throwable> type) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Innermost cause, as the container wraps listener failures
+     */
+    private static String describe(Throwable error) {
+        Throwable root = error;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        String description = root.getClass().getSimpleName() + ": " + root.getMessage();
+        return description.length() > MAX_ERROR_LENGTH ? description.substring(0, MAX_ERROR_LENGTH) : description;
+    }
+}
@@ -0,0 +1,42 @@
+package org.example;
+
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+/**
+ * Encodings of inter-service messages, told apart by the AMQP content type.
+ *
+ * Every service decodes all of them; {@code messaging.amqp.wire-format} only picks
+ * the one it publishes with, so services can switch one at a time.
+ */
+public enum WireFormat {
+    JSON(MessageProperties.CONTENT_TYPE_JSON) {
+        @Override
+        public MessageConverter converter() {
+            return new Jackson2JsonMessageConverter();
+        }
+    },
+    // Binary JSON data model: same fields, no quoting, dates as numeric arrays
+    CBOR(CborMessageConverter.CONTENT_TYPE) {
+        @Override
+        public MessageConverter converter() {
+            return new CborMessageConverter();
+        }
+    };
+
+    private final String contentType;
+
+    WireFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * A new converter encoding and decoding this format
+     */
+    public abstract MessageConverter converter();
+}
@@ -0,0 +1,44 @@
+package org.example;
+
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+/**
+ * Converter of all services: decodes every {@link WireFormat} by the message's
+ * content type, and encodes outgoing messages in the configured one.
+ * Messages without a known content type are read as the configured format.
+ */
+public class WireFormatMessageConverter extends ContentTypeDelegatingMessageConverter {
+    private final WireFormat outgoing;
+
+    public WireFormatMessageConverter(WireFormat outgoing) {
+        this(outgoing, outgoing.converter());
+    }
+
+    private WireFormatMessageConverter(WireFormat outgoing, MessageConverter outgoingConverter) {
+        super(outgoingConverter);
+        this.outgoing = outgoing;
+        for (WireFormat format : WireFormat.values()) {
+            addDelegate(format.contentType(), format == outgoing ? outgoingConverter : format.converter());
+        }
+    }
+
+    public WireFormat getOutgoing() {
+        return outgoing;
+    }
+
+    /**
+     * Parameters such as {@code charset} do not change the format
+     */
+    @Override
+    protected MessageConverter getConverterForContentType(String contentType) {
+        if (contentType != null) {
+            int parameters = contentType.indexOf(';');
+            if (parameters >= 0) {
+                contentType = contentType.substring(0, parameters);
+            }
+            contentType = contentType.trim().toLowerCase();
+        }
+        return super.getConverterForContentType(contentType);
+    }
+}
@@ -0,0 +1,60 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AmqpAutoConfigurationTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(AmqpAutoConfiguration.class));
+
+    @Test
+    void testListenerSettingsFallBackToDefaults() {
+        contextRunner.withPropertyValues(
+                "messaging.amqp.defaults.prefetch=10",
+                "messaging.amqp.defaults.concurrency=2",
+                "messaging.amqp.listeners.saga-events.concurrency=4",
+                "messaging.amqp.listeners.saga-events.batch-size=100"
+        ).run(context -> {
+            AmqpProperties properties = context.getBean(AmqpProperties.class);
+
+            AmqpProperties.Listener sagaEvents = properties.listener("saga-events");
+            assertEquals(4, sagaEvents.concurrency());
+            assertEquals(10, sagaEvents.prefetch());
+            assertEquals(100, sagaEvents.batchSize());
+            assertNull(sagaEvents.maxConcurrency());
+
+            assertEquals(2, properties.listener("unknown").concurrency());
+        });
+    }
+
+    @Test
+    void testPublisherAndConsumerConnectionsAreSeparate() {
+        contextRunner.withPropertyValues(
+                "messaging.amqp.publisher.channel-cache-size=40",
+                "messaging.amqp.consumer.channel-cache-size=10"
+        ).run(context -> {
+            CachingConnectionFactory consumer = context.getBean(CachingConnectionFactory.class);
+            CachingConnectionFactory publisher = (CachingConnectionFactory) consumer.getPublisherConnectionFactory();
+
+            assertEquals(10, consumer.getChannelCacheSize());
+            assertEquals(40, publisher.getChannelCacheSize());
+            assertTrue(context.containsBean("rabbitListenerContainerFactory"));
+            assertTrue(context.containsBean(AmqpAutoConfiguration.BATCH_CONTAINER_FACTORY));
+        });
+    }
+
+    @Test
+    void testWireFormatIsConfigurable() {
+        contextRunner.run(context ->
+                assertEquals(WireFormat.JSON, context.getBean(WireFormatMessageConverter.class).getOutgoing()));
+        contextRunner.withPropertyValues("messaging.amqp.wire-format=cbor").run(context ->
+                assertEquals(WireFormat.CBOR, context.getBean(WireFormatMessageConverter.class).getOutgoing()));
+    }
+}
@@ -0,0 +1,122 @@
+package org.example;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ConfirmingPublisherTest {
+
+    private RabbitTemplate rabbitTemplate;
+    private SimpleMeterRegistry registry;
+    private ConfirmingPublisher publisher;
+
+    @BeforeEach
+    void setUp() {
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+        when(rabbitTemplate.getMessageConverter()).thenReturn(new Jackson2JsonMessageConverter());
+
+        registry = new SimpleMeterRegistry();
+        publisher = new ConfirmingPublisher(rabbitTemplate, registry,
+                new AmqpProperties.Confirms(2, 3, 1, Set.of("notifications")));
+    }
+
+    @Test
+    void testNackedMessageIsRepublishedUntilConfirmed() throws Exception {
+        CompletableFuture<Void> result = publisher.publish("order-1", "exchange", "saga.started", event());
+
+        CorrelationData first = awaitSend(1).get(0);
+        assertTrue(first.getId().startsWith("order-1:"));
+        first.getFuture().complete(new CorrelationData.Confirm(false, "queue full"));
+
+        List<CorrelationData> sends = awaitSend(2);
+        assertFalse(result.isDone());
+        sends.get(1).getFuture().complete(new CorrelationData.Confirm(true, null));
+
+        result.get(5, TimeUnit.SECONDS);
+        assertEquals(1.0, registry.get("amqp_publish_retries_total").tag("reason", "nack").counter().count());
+        assertEquals(2, registry.get("amqp_publish_confirm_latency").timer().count());
+    }
+
+    @Test
+    void testRetriesSendTheSameMessage() {
+        publisher.publish("order-1", "exchange", "saga.started", event());
+        awaitSend(1).get(0).getFuture().complete(new CorrelationData.Confirm(false, "nack"));
+        awaitSend(2);
+
+        ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate, times(2)).send(eq("exchange"), eq("saga.started"), messages.capture(),
+                any(CorrelationData.class));
+        assertSame(messages.getAllValues().get(0), messages.getAllValues().get(1));
+    }
+
+    @Test
+    void testGivesUpAfterMaxAttempts() {
+        CompletableFuture<Void> result = publisher.publish("order-1", "exchange", "saga.started", event());
+
+        for (int attempt = 1; attempt <= 3; attempt++) {
+            awaitSend(attempt).get(attempt - 1).getFuture().complete(new CorrelationData.Confirm(false, "nack"));
+        }
+
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> result.get(5, TimeUnit.SECONDS));
+        assertTrue(failure.getCause().getMessage().contains("3 attempts"));
+        assertEquals(1.0, registry.get("amqp_publish_failed_total").counter().count());
+    }
+
+    @Test
+    void testUnroutableMessageIsRetriedUnlessBroadcast() throws Exception {
+        CompletableFuture<Void> command = publisher.publish("order-1", "exchange", "saga.started", event());
+        returned(awaitSend(1).get(0));
+        awaitSend(2).get(1).getFuture().complete(new CorrelationData.Confirm(true, null));
+        command.get(5, TimeUnit.SECONDS);
+
+        CompletableFuture<Void> notification = publisher.publish("order-1", "notifications", "saga.started", event());
+        returned(awaitSend(3).get(2));
+        notification.get(5, TimeUnit.SECONDS);
+
+        assertEquals(1.0, registry.get("amqp_publish_retries_total").tag("reason", "returned").counter().count());
+        assertEquals(1.0, registry.get("amqp_publish_unrouted_total").counter().count());
+    }
+
+    private static void returned(CorrelationData correlation) {
+        correlation.setReturned(new ReturnedMessage(new Message(new byte[0]), 312, "NO_ROUTE", "exchange", "key"));
+        correlation.getFuture().complete(new CorrelationData.Confirm(true, null));
+    }
+
+    private List<CorrelationData> awaitSend(int sends) {
+        ArgumentCaptor<CorrelationData> correlations = ArgumentCaptor.forClass(CorrelationData.class);
+        verify(rabbitTemplate, timeout(5000).times(sends)).send(anyString(), anyString(), any(Message.class),
+                correlations.capture());
+        return correlations.getAllValues();
+    }
+
+    private static OrderValidatedEvent event() {
+        return new OrderValidatedEvent("saga-1", "order-1", LocalDateTime.now());
+    }
+}
@@ -0,0 +1,53 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+class ListenerFlowControlTest {
+
+    private MessageListenerContainer container;
+    private ListenerFlowControl flowControl;
+
+    @BeforeEach
+    void setUp() {
+        RabbitListenerEndpointRegistry listeners = mock(RabbitListenerEndpointRegistry.class);
+        container = mock(MessageListenerContainer.class);
+        when(listeners.getListenerContainer("order-requests")).thenReturn(container);
+        flowControl = new ListenerFlowControl(listeners, "order-requests");
+    }
+
+    @AfterEach
+    void tearDown() {
+        flowControl.shutdown();
+    }
+
+    @Test
+    void pauseStopsTheRunningContainerOnce() {
+        when(container.isRunning()).thenReturn(true);
+
+        assertTrue(flowControl.pause());
+        assertFalse(flowControl.pause());
+
+        assertTrue(flowControl.isPaused());
+        verify(container, timeout(1000).atLeastOnce()).stop();
+    }
+
+    @Test
+    void resumeStartsTheContainerOnlyWhenPaused() {
+        assertFalse(flowControl.resume());
+
+        flowControl.pause();
+        when(container.isRunning()).thenReturn(false);
+        assertTrue(flowControl.resume());
+
+        assertFalse(flowControl.isPaused());
+        verify(container, timeout(1000)).start();
+    }
+}
@@ -0,0 +1,149 @@
+package org.example;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class MessageDeduplicatorTest {
+
+    private SimpleMeterRegistry registry;
+    private MessageDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        deduplicator = new MessageDeduplicator(null, registry, settings(2));
+    }
+
+    @AfterEach
+    void tearDown() {
+        deduplicator.shutdown();
+    }
+
+    @Test
+    void testProcessedMessageIsClaimedOnce() {
+        assertTrue(deduplicator.claim("queue", "m1", false));
+        deduplicator.complete("queue", "m1");
+
+        assertFalse(deduplicator.claim("queue", "m1", true));
+        // Deduplication is per queue: another consumer of the message still gets it
+        assertTrue(deduplicator.claim("other", "m1", false));
+
+        assertEquals(1.0, checks("queue", "hit_memory"));
+        assertEquals(2.0, registry.get("amqp_dedup_checks_total").tag("result", "miss").counters()
+                .stream().mapToDouble(c -> c.count()).sum());
+    }
+
+    @Test
+    void testReleasedMessageIsProcessedAgain() {
+        assertTrue(deduplicator.claim("queue", "m1", false));
+        deduplicator.release("queue", "m1");
+
+        assertTrue(deduplicator.claim("queue", "m1", true));
+    }
+
+    @Test
+    void testWindowKeepsTheMostRecentIds() {
+        for (String id : List.of("m1", "m2", "m3")) {
+            deduplicator.claim("queue", id, false);
+            deduplicator.complete("queue", id);
+        }
+
+        assertTrue(deduplicator.claim("queue", "m1", false));
+        assertFalse(deduplicator.claim("queue", "m3", false));
+    }
+
+    @Test
+    void testMessagesWithoutIdAreNeverDeduplicated() {
+        assertTrue(deduplicator.claim("queue", null, false));
+        deduplicator.complete("queue", null);
+        assertTrue(deduplicator.claim("queue", null, true));
+    }
+
+    @Test
+    void testRedeliveryUnknownInMemoryIsLookedUpInStore() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class, RETURNS_DEEP_STUBS);
+        when(mongoTemplate.exists(any(Query.class), eq(MessageDeduplicator.COLLECTION))).thenReturn(true);
+        MessageDeduplicator stored = new MessageDeduplicator(mongoTemplate, registry, settings(100));
+
+        // First deliveries never cost a store lookup
+        assertTrue(stored.claim("queue", "m1", false));
+        assertFalse(stored.claim("queue", "m2", true));
+
+        verify(mongoTemplate, times(1)).exists(any(Query.class), eq(MessageDeduplicator.COLLECTION));
+        assertEquals(1.0, checks("queue", "hit_store"));
+        stored.shutdown();
+    }
+
+    @Test
+    void testAdviceDropsDuplicatesFromBatchAndAcksThemWhenManual() throws Throwable {
+        deduplicator.claim("queue", "m1", false);
+        deduplicator.complete("queue", "m1");
+        Channel channel = mock(Channel.class);
+        Object[] arguments = {channel, List.of(message("m1", 1), message("m2", 2))};
+        MethodInvocation invocation = mock(MethodInvocation.class);
+        when(invocation.getArguments()).thenReturn(arguments);
+
+        new DeduplicatingListenerAdvice(deduplicator, true).invoke(invocation);
+
+        verify(invocation).proceed();
+        List<?> passed = (List<?>) arguments[1];
+        assertEquals(1, passed.size());
+        assertEquals("m2", ((Message) passed.get(0)).getMessageProperties().getMessageId());
+        verify(channel).basicAck(1, false);
+    }
+
+    @Test
+    void testAdviceReleasesClaimWhenListenerFails() throws Throwable {
+        MethodInvocation invocation = mock(MethodInvocation.class);
+        when(invocation.getArguments()).thenReturn(new Object[]{mock(Channel.class), message("m1", 1)});
+        when(invocation.proceed()).thenThrow(new IllegalStateException("boom"));
+        DeduplicatingListenerAdvice advice = new DeduplicatingListenerAdvice(deduplicator, false);
+
+        try {
+            advice.invoke(invocation);
+        } catch (IllegalStateException expected) {
+            // Requeued by the container
+        }
+        doReturn(null).when(invocation).proceed();
+        assertNull(advice.invoke(invocation));
+        // Processed on the second attempt: a third delivery is skipped
+        advice.invoke(invocation);
+
+        verify(invocation, times(2)).proceed();
+    }
+
+    private double checks(String queue, String result) {
+        return registry.get("amqp_dedup_checks_total").tag("queue", queue).tag("result", result).counter().count();
+    }
+
+    private static Message message(String messageId, long deliveryTag) {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(messageId);
+        properties.setDeliveryTag(deliveryTag);
+        properties.setConsumerQueue("queue");
+        return new Message(new byte[0], properties);
+    }
+
+    private static AmqpProperties.Idempotency settings(int cacheSize) {
+        return new AmqpProperties.Idempotency(true, cacheSize, Duration.ofHours(1), 60_000);
+    }
+}
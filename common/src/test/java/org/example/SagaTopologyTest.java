@@ -0,0 +1,117 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SagaTopologyTest {
+
+    // Bindings of the queues on the SAGA exchange, as declared by the services
+    private static final Map<String, String> BINDINGS = Map.of(
+            SagaTopology.SAGA_EVENTS_QUEUE, SagaTopology.REPLIES,
+            SagaTopology.ORDER_COMPENSATION_QUEUE, SagaTopology.COMPENSATE_ORDER,
+            SagaTopology.DELIVERY_COMPENSATION_QUEUE, SagaTopology.COMPENSATE_DELIVERY,
+            SagaTopology.DRONE_COMPENSATION_QUEUE, SagaTopology.COMPENSATE_DRONE
+    );
+
+    // Event types the listener of each queue acts on
+    private static final Map<String, Set<Class<?>>> HANDLED = Map.of(
+            // OrderSagaOrchestrator.handleSagaEvents
+            SagaTopology.SAGA_EVENTS_QUEUE, Set.of(DeliveryScheduledEvent.class, DroneAssignedEvent.class),
+            // customer SagaEventListener
+            SagaTopology.ORDER_COMPENSATION_QUEUE, Set.of(CompensateOrderEvent.class),
+            // DeliveryCompensationListener
+            SagaTopology.DELIVERY_COMPENSATION_QUEUE, Set.of(CompensateDeliveryEvent.class),
+            // DroneCompensationListener
+            SagaTopology.DRONE_COMPENSATION_QUEUE, Set.of(CompensateDroneEvent.class)
+    );
+
+    @Test
+    void testQueuesReceiveOnlyTheTypesTheirListenerHandles() {
+        for (Class<? extends SagaEvent> type : eventTypes()) {
+            String key = SagaTopology.routingKey(type);
+            BINDINGS.forEach((queue, pattern) -> {
+                if (key != null && matches(pattern, key)) {
+                    assertTrue(HANDLED.get(queue).contains(type),
+                            queue + " receives " + type.getSimpleName() + " which its listener ignores");
+                }
+            });
+        }
+    }
+
+    @Test
+    void testEveryCommandAndReplyReachesExactlyOneQueue() {
+        for (Class<? extends SagaEvent> type : eventTypes()) {
+            String key = SagaTopology.routingKey(type);
+            if (key == null) {
+                continue;
+            }
+            List<String> queues = BINDINGS.entrySet().stream()
+                    .filter(binding -> matches(binding.getValue(), key))
+                    .map(Map.Entry::getKey)
+                    .toList();
+            assertEquals(1, queues.size(), type.getSimpleName() + " is routed to " + queues);
+        }
+    }
+
+    @Test
+    void testOrchestratorLifecycleIsBroadcast() {
+        for (Class<? extends SagaEvent> type : List.of(OrderSagaStartedEvent.class, OrderValidatedEvent.class,
+                OrderValidationFailedEvent.class, DeliverySchedulingFailedEvent.class,
+                DroneAssignmentFailedEvent.class, OrderCompletedEvent.class, OrderCancelledEvent.class)) {
+            assertTrue(SagaTopology.isNotification(type), type.getSimpleName());
+        }
+
+        OrderCompletedEvent completed = new OrderCompletedEvent("saga-1", "order-1", LocalDateTime.now());
+        assertEquals(SagaTopology.NOTIFICATIONS_EXCHANGE, SagaTopology.exchange(completed));
+        assertFalse(matches(SagaTopology.REPLIES, SagaTopology.routingKey(completed)));
+    }
+
+    @Test
+    void testTopicMatching() {
+        assertTrue(matches("reply.#", "reply.drone.assigned"));
+        assertTrue(matches("command.*.compensate", "command.drone.compensate"));
+        assertFalse(matches("reply.#", "command.drone.compensate"));
+        assertFalse(matches("command.drone", "command.drone.compensate"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Class<? extends SagaEvent>> eventTypes() {
+        return Arrays.stream(SagaEvent.class.getAnnotation(JsonSubTypes.class).value())
+                .<Class<? extends SagaEvent>>map(subType -> (Class<? extends SagaEvent>) subType.value())
+                .toList();
+    }
+
+    /**
+     * AMQP topic matching: {@code *} is exactly one word, {@code #} zero or more
+     */
+    private static boolean matches(String pattern, String key) {
+        return matches(pattern.split("\\."), 0, key.split("\\."), 0);
+    }
+
+    private static boolean matches(String[] pattern, int p, String[] key, int k) {
+        if (p == pattern.length) {
+            return k == key.length;
+        }
+        if (pattern[p].equals("#")) {
+            for (int skip = k; skip <= key.length; skip++) {
+                if (matches(pattern, p + 1, key, skip)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return k < key.length
+                && (pattern[p].equals("*") || pattern[p].equals(key[k]))
+                && matches(pattern, p + 1, key, k + 1);
+    }
+}
@@ -0,0 +1,100 @@
+package org.example;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.listener.DirectMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+class ShardedQueueTest {
+
+    @Test
+    void testShardsAreBoundToAConsistentHashExchange() {
+        Declarables declarables = ShardedQueue.declarables("order_queue", 4);
+
+        Exchange exchange = declarables.getDeclarablesByType(Exchange.class).get(0);
+        assertEquals("order_queue.sharded", exchange.getName());
+        assertEquals(ShardedQueue.CONSISTENT_HASH, exchange.getType());
+        List<Queue> shards = declarables.getDeclarablesByType(Queue.class);
+        assertEquals(List.of("order_queue.shard.0", "order_queue.shard.1", "order_queue.shard.2",
+                "order_queue.shard.3"), shards.stream().map(Queue::getName).toList());
+        assertTrue(shards.stream().allMatch(q -> Boolean.TRUE.equals(q.getArguments().get("x-single-active-consumer"))));
+        assertTrue(declarables.getDeclarablesByType(Binding.class).stream()
+                .allMatch(b -> b.getRoutingKey().equals("1")));
+    }
+
+    @Test
+    void testRetryTopologyIsPerShard() {
+        Declarables declarables = ShardedQueue.declarables("drone_queue", 2, new AmqpProperties.Retry(1000, 5, 3, 6));
+
+        Set<String> queues = new HashSet<>();
+        declarables.getDeclarablesByType(Queue.class).forEach(q -> queues.add(q.getName()));
+        assertTrue(queues.contains("drone_queue.shard.1.retry.25000"));
+        assertTrue(queues.contains("drone_queue.shard.0.parking"));
+        // The unsharded queue is still consumed, and retried, by the same listener
+        assertTrue(queues.contains("drone_queue"));
+        assertTrue(queues.contains("drone_queue.retry.1000"));
+        assertTrue(queues.contains("drone_queue.parking"));
+    }
+
+    @Test
+    void testEveryShardHasExactlyOneOwner() {
+        List<String> members = List.of("a", "b", "c");
+        Set<Integer> all = new HashSet<>();
+        int total = 0;
+        for (String member : members) {
+            Set<Integer> owned = ShardedQueue.assign(members, member, 64);
+            all.addAll(owned);
+            total += owned.size();
+            // Roughly a third each
+            assertTrue(owned.size() > 10, member + " owns " + owned.size());
+        }
+        assertEquals(64, total);
+        assertEquals(64, all.size());
+    }
+
+    @Test
+    void testOnlyTheShardsOfAJoiningMemberMove() {
+        List<String> before = List.of("a", "b");
+        List<String> after = List.of("a", "b", "c");
+
+        Set<Integer> gained = ShardedQueue.assign(after, "c", 32);
+        for (String member : before) {
+            Set<Integer> kept = new HashSet<>(ShardedQueue.assign(before, member, 32));
+            kept.removeAll(gained);
+            assertEquals(kept, ShardedQueue.assign(after, member, 32));
+        }
+    }
+
+    @Test
+    void testCoordinatorWithoutStoreClaimsEveryShard() {
+        RabbitListenerEndpointRegistry listeners = mock(RabbitListenerEndpointRegistry.class);
+        DirectMessageListenerContainer container = new DirectMessageListenerContainer();
+        container.setQueueNames("order_queue");
+        when(listeners.getListenerContainer("order-requests")).thenReturn(container);
+
+        ShardCoordinator coordinator = new ShardCoordinator(null, new SimpleMeterRegistry(), listeners,
+                "order-requests", "order_queue", new AmqpProperties.Sharding(3, 60_000, 10_000));
+        try {
+            coordinator.rebalance();
+
+            assertEquals(Set.of(0, 1, 2), coordinator.getOwnedShards());
+            assertArrayEquals(new String[]{"order_queue", "order_queue.shard.0", "order_queue.shard.1",
+                    "order_queue.shard.2"}, container.getQueueNames());
+        } finally {
+            coordinator.shutdown();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.example;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class TieredRetryTest {
+
+    private static final AmqpProperties.Retry SETTINGS = new AmqpProperties.Retry(1000, 5, 3, 4);
+
+    private ConfirmingPublisher publisher;
+    private SimpleMeterRegistry registry;
+    private TieredRetryAdvice advice;
+
+    @BeforeEach
+    void setUp() {
+        publisher = mock(ConfirmingPublisher.class);
+        when(publisher.publish(anyString(), anyString(), anyString(), any(Message.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        registry = new SimpleMeterRegistry();
+        advice = new TieredRetryAdvice(publisher, registry, SETTINGS);
+    }
+
+    @Test
+    void testDelaysGrowPerTierAndStayAtTheLast() {
+        assertEquals(List.of(1000L, 5000L, 25000L, 25000L),
+                List.of(1, 2, 3, 4).stream().map(tier -> TieredRetry.delayMs(SETTINGS, tier)).toList());
+    }
+
+    @Test
+    void testDelayQueuesDeadLetterBackToTheWorkQueue() {
+        Declarables declarables = TieredRetry.declarables("order_queue", SETTINGS);
+
+        List<Queue> queues = declarables.getDeclarablesByType(Queue.class);
+        assertEquals(List.of("order_queue.retry.1000", "order_queue.retry.5000", "order_queue.retry.25000",
+                "order_queue.parking"), queues.stream().map(Queue::getName).toList());
+        Queue firstTier = queues.get(0);
+        assertEquals(1000, firstTier.getArguments().get("x-message-ttl"));
+        assertEquals("", firstTier.getArguments().get("x-dead-letter-exchange"));
+        assertEquals("order_queue", firstTier.getArguments().get("x-dead-letter-routing-key"));
+    }
+
+    @Test
+    void testFailedMessageGoesToTheDelayQueueOfItsAttempt() throws Throwable {
+        Message message = message(1);
+
+        assertNull(advice.invoke(failing(message, new IllegalStateException("boom"))));
+
+        verify(publisher).publish("order_queue", "", "order_queue.retry.5000", message);
+        assertEquals(2, (int) message.getMessageProperties().getHeader(TieredRetry.ATTEMPTS_HEADER));
+        assertEquals(1.0, registry.get("amqp_retry_scheduled_total").tag("tier", "2").counter().count());
+    }
+
+    @Test
+    void testMessageIsParkedAfterMaxAttempts() throws Throwable {
+        Message message = message(3);
+
+        advice.invoke(failing(message, new IllegalStateException("boom")));
+
+        verify(publisher).publish("order_queue", TieredRetry.DEAD_LETTER_EXCHANGE, "order_queue", message);
+        MessageProperties properties = message.getMessageProperties();
+        assertEquals("order_queue", properties.getHeader(TieredRetry.ORIGINAL_QUEUE_HEADER));
+        assertEquals("IllegalStateException: boom", properties.getHeader(TieredRetry.ERROR_HEADER));
+        assertEquals(1.0, registry.get("amqp_parked_total").tag("reason", "exhausted").counter().count());
+    }
+
+    @Test
+    void testUnconvertibleMessageIsParkedRightAway() throws Throwable {
+        advice.invoke(failing(message(0), new RuntimeException(new MessageConversionException("bad body"))));
+
+        verify(publisher).publish(eq("order_queue"), eq(TieredRetry.DEAD_LETTER_EXCHANGE), eq("order_queue"),
+                any(Message.class));
+        assertEquals(1.0, registry.get("amqp_parked_total").tag("reason", "unconvertible").counter().count());
+    }
+
+    @Test
+    void testListenerFailureIsRethrownWhenRetryCannotBePublished() throws Throwable {
+        when(publisher.publish(anyString(), anyString(), anyString(), any(Message.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+        IllegalStateException failure = new IllegalStateException("boom");
+
+        assertEquals(failure, assertThrows(IllegalStateException.class,
+                () -> advice.invoke(failing(message(0), failure))));
+    }
+
+    private static MethodInvocation failing(Message message, Throwable failure) throws Throwable {
+        MethodInvocation invocation = mock(MethodInvocation.class);
+        when(invocation.getArguments()).thenReturn(new Object[]{null, message});
+        when(invocation.proceed()).thenThrow(failure);
+        return invocation;
+    }
+
+    private static Message message(int previousAttempts) {
+        MessageProperties properties = new MessageProperties();
+        properties.setConsumerQueue("order_queue");
+        if (previousAttempts > 0) {
+            properties.setHeader(TieredRetry.ATTEMPTS_HEADER, previousAttempts);
+        }
+        return new Message(new byte[0], properties);
+    }
+}
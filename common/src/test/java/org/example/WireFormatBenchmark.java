@@ -0,0 +1,85 @@
+package org.example;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Payload size and encode/decode cost of every {@link WireFormat}, per message type.
+ * Run with {@code gradle :common:wireFormatBenchmark}.
+ *
+ * Timings are averaged over {@code ITERATIONS} conversions after as many warm-up
+ * rounds; they compare formats on one machine, they are not absolute figures.
+ */
+public class WireFormatBenchmark {
+    private static final int ITERATIONS = 200_000;
+
+    public static void main(String[] args) {
+        System.out.printf("%-30s %-5s %7s %11s %11s%n", "Message", "Format", "Bytes", "Encode ns", "Decode ns");
+        samples().forEach((name, payload) -> {
+            for (WireFormat format : WireFormat.values()) {
+                MessageConverter converter = new WireFormatMessageConverter(format);
+                Message message = converter.toMessage(payload, new MessageProperties());
+                message.getMessageProperties().setInferredArgumentType(payload.getClass());
+
+                run(converter, payload, message);
+                long encode = time(() -> converter.toMessage(payload, new MessageProperties()));
+                long decode = time(() -> converter.fromMessage(message));
+
+                System.out.printf("%-30s %-5s %7d %11d %11d%n",
+                        name, format, message.getBody().length, encode, decode);
+            }
+        });
+    }
+
+    /**
+     * One realistic message of every type exchanged by the services
+     */
+    static Map<String, Object> samples() {
+        String sagaId = UUID.randomUUID().toString();
+        String orderId = UUID.randomUUID().toString();
+        LocalDateTime now = LocalDateTime.of(2026, 5, 10, 14, 30, 12, 345_678_000);
+        String reason = "No drone available within range";
+
+        Map<String, Object> samples = new LinkedHashMap<>();
+        samples.put("OrderMessage", new OrderMessage(orderId, "customer-42", "Via Roma 1, Milano",
+                "Piazza Duomo 3, Milano", 2.5, now.plusHours(2), 120));
+        samples.put("OrderSagaStartedEvent", new OrderSagaStartedEvent(sagaId, orderId, "customer-42",
+                "Via Roma 1, Milano", "Piazza Duomo 3, Milano", 2.5, now.plusHours(2), 120, now));
+        samples.put("OrderValidatedEvent", new OrderValidatedEvent(sagaId, orderId, now));
+        samples.put("OrderValidationFailedEvent", new OrderValidationFailedEvent(sagaId, orderId, reason, now));
+        samples.put("DeliveryScheduledEvent", new DeliveryScheduledEvent("unknown", orderId,
+                UUID.randomUUID().toString(), now));
+        samples.put("DeliverySchedulingFailedEvent", new DeliverySchedulingFailedEvent("unknown", orderId,
+                reason, now));
+        samples.put("DroneAssignedEvent", new DroneAssignedEvent("unknown", orderId, "drone-017", now));
+        samples.put("DroneAssignmentFailedEvent", new DroneAssignmentFailedEvent("unknown", orderId, reason, now));
+        samples.put("OrderCompletedEvent", new OrderCompletedEvent(sagaId, orderId, now));
+        samples.put("OrderCancelledEvent", new OrderCancelledEvent(sagaId, orderId, reason, now));
+        samples.put("CompensateOrderEvent", new CompensateOrderEvent(sagaId, orderId, reason, now));
+        samples.put("CompensateDeliveryEvent", new CompensateDeliveryEvent(sagaId, orderId,
+                UUID.randomUUID().toString(), reason, now));
+        samples.put("CompensateDroneEvent", new CompensateDroneEvent(sagaId, orderId, "drone-017", reason, now));
+        return samples;
+    }
+
+    private static void run(MessageConverter converter, Object payload, Message message) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            converter.toMessage(payload, new MessageProperties());
+            converter.fromMessage(message);
+        }
+    }
+
+    private static long time(Runnable conversion) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            conversion.run();
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+}
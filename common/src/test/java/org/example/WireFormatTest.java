@@ -0,0 +1,73 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WireFormatTest {
+
+    private final WireFormatMessageConverter jsonService = new WireFormatMessageConverter(WireFormat.JSON);
+    private final WireFormatMessageConverter cborService = new WireFormatMessageConverter(WireFormat.CBOR);
+
+    @Test
+    void testPublishesInConfiguredFormat() {
+        Message message = cborService.toMessage(new OrderCompletedEvent("saga-1", "order-1", null),
+                new MessageProperties());
+
+        assertEquals(CborMessageConverter.CONTENT_TYPE, message.getMessageProperties().getContentType());
+    }
+
+    @Test
+    void testEveryMessageSurvivesEveryFormatPair() {
+        for (Map.Entry<String, Object> sample : WireFormatBenchmark.samples().entrySet()) {
+            for (WireFormatMessageConverter producer : new WireFormatMessageConverter[]{jsonService, cborService}) {
+                for (WireFormatMessageConverter consumer : new WireFormatMessageConverter[]{jsonService, cborService}) {
+                    Object decoded = roundTrip(sample.getValue(), producer, consumer);
+
+                    assertEquals(sample.getValue().getClass(), decoded.getClass(), sample.getKey());
+                    if (decoded instanceof SagaEvent event) {
+                        SagaEvent original = (SagaEvent) sample.getValue();
+                        assertEquals(original.getOrderId(), event.getOrderId(), sample.getKey());
+                        assertEquals(original.getTimestamp(), event.getTimestamp(), sample.getKey());
+                    } else {
+                        assertEquals(sample.getValue(), decoded, sample.getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testCborIsSmallerThanJsonForEveryMessage() {
+        WireFormatBenchmark.samples().forEach((name, payload) -> {
+            int json = jsonService.toMessage(payload, new MessageProperties()).getBody().length;
+            int cbor = cborService.toMessage(payload, new MessageProperties()).getBody().length;
+            assertTrue(cbor < json, name + ": " + cbor + " bytes in CBOR, " + json + " in JSON");
+        });
+    }
+
+    @Test
+    void testContentTypeParametersAreIgnored() {
+        Message message = jsonService.toMessage(new DroneAssignedEvent("unknown", "order-1", "drone-1", null),
+                new MessageProperties());
+        message.getMessageProperties().setContentType("application/json; charset=UTF-8");
+        message.getMessageProperties().setInferredArgumentType(SagaEvent.class);
+
+        assertInstanceOf(DroneAssignedEvent.class, cborService.fromMessage(message));
+    }
+
+    private static Object roundTrip(Object payload, WireFormatMessageConverter producer,
+                                    WireFormatMessageConverter consumer) {
+        Message message = producer.toMessage(payload, new MessageProperties());
+        // Set by listener adapters from the parameter type
+        message.getMessageProperties().setInferredArgumentType(
+                payload instanceof SagaEvent ? SagaEvent.class : payload.getClass());
+        return consumer.fromMessage(message);
+    }
+}
@@ -0,0 +1,164 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel holding deadlines at tick granularity.
+ *
+ * Level 0 has one slot per tick; every higher level has slots spanning a full
+ * revolution of the level below. A deadline is placed on the lowest level whose
+ * range covers it and cascades down as time approaches, so scheduling and
+ * cancelling are O(1) regardless of how many deadlines are pending.
+ *
+ * Not thread-safe: callers serialize access.
+ */
+public class HierarchicalTimingWheel<T> {
+    private final long tickMillis;
+    private final int bits;
+    private final int mask;
+    private final Bucket<T>[][] wheels;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public HierarchicalTimingWheel(long tickMillis, int slotsPerLevel, int levels, long startMillis) {
+        if (Integer.bitCount(slotsPerLevel) != 1) {
+            throw new IllegalArgumentException("slotsPerLevel must be a power of two");
+        }
+        this.tickMillis = tickMillis;
+        this.bits = Integer.numberOfTrailingZeros(slotsPerLevel);
+        this.mask = slotsPerLevel - 1;
+        this.wheels = new Bucket[levels][slotsPerLevel];
+        for (Bucket<T>[] wheel : wheels) {
+            for (int slot = 0; slot < wheel.length; slot++) {
+                wheel[slot] = new Bucket<>();
+            }
+        }
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Schedule a payload; deadlines already due fire on the next tick
+     */
+    public Timeout<T> schedule(T payload, long deadlineMillis) {
+        long deadlineTick = Math.max(Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis), currentTick + 1);
+        Timeout<T> timeout = new Timeout<>(payload, deadlineTick);
+        place(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * @return false if the timeout already fired or was cancelled
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout.bucket == null) {
+            return false;
+        }
+        timeout.unlink();
+        size--;
+        return true;
+    }
+
+    /**
+     * Move time forward and collect the payloads whose deadline has passed, in deadline order
+     */
+    public List<T> advanceTo(long nowMillis) {
+        long targetTick = nowMillis / tickMillis;
+        List<T> expired = new ArrayList<>();
+
+        while (currentTick < targetTick) {
+            currentTick++;
+
+            // A lower level completed a revolution: spread the next higher slot over it
+            for (int level = 1; level < wheels.length; level++) {
+                if ((currentTick & ((1L << (bits * level)) - 1)) != 0) {
+                    break;
+                }
+                // Deadlines beyond the top level's range land back in the same slot
+                wheels[level][slotIndex(currentTick, level)].drain().forEach(this::place);
+            }
+
+            for (Timeout<T> timeout : wheels[0][slotIndex(currentTick, 0)].drain()) {
+                expired.add(timeout.payload);
+                size--;
+            }
+        }
+        return expired;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void place(Timeout<T> timeout) {
+        long delta = timeout.deadlineTick - currentTick;
+        int level = 0;
+        while (level < wheels.length - 1 && delta >= 1L << (bits * (level + 1))) {
+            level++;
+        }
+        wheels[level][slotIndex(timeout.deadlineTick, level)].add(timeout);
+    }
+
+    private int slotIndex(long tick, int level) {
+        return (int) ((tick >>> (bits * level)) & mask);
+    }
+
+    /**
+     * Handle of a scheduled deadline
+     */
+    public static final class Timeout<T> {
+        private final T payload;
+        private final long deadlineTick;
+        private Bucket<T> bucket;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T payload, long deadlineTick) {
+            this.payload = payload;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T payload() {
+            return payload;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+            bucket = null;
+        }
+    }
+
+    /**
+     * Circular doubly linked list with a sentinel node
+     */
+    private static final class Bucket<T> {
+        private final Timeout<T> head = new Timeout<>(null, 0);
+
+        Bucket() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.prev = head.prev;
+            timeout.next = head;
+            head.prev.next = timeout;
+            head.prev = timeout;
+        }
+
+        List<Timeout<T>> drain() {
+            List<Timeout<T>> drained = new ArrayList<>();
+            for (Timeout<T> first = head.next; first != head; first = head.next) {
+                first.unlink();
+                drained.add(first);
+            }
+            return drained;
+        }
+    }
+}
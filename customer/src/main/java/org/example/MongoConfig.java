@@ -0,0 +1,40 @@
+package org.example;
+
+import org.bson.Document;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * MongoDB transactions of the orchestrator.
+ *
+ * The {@link SagaOutbox} is written in the same transaction as the SAGA change
+ * that produced its messages, and MongoDB only runs transactions on a replica set
+ * (or through mongos). A single node is enough: docker-compose starts it with
+ * {@code --replSet rs0} and initiates it in its health check, and the URI connects
+ * with {@code directConnection=true}. Startup fails against a standalone server,
+ * instead of every outbox write failing later.
+ */
+@Configuration
+public class MongoConfig {
+
+    @Bean
+    public MongoTransactionManager transactionManager(MongoDatabaseFactory databaseFactory,
+                                                      MongoTemplate mongoTemplate) {
+        requireTransactions(mongoTemplate);
+        return new MongoTransactionManager(databaseFactory);
+    }
+
+    private static void requireTransactions(MongoTemplate mongoTemplate) {
+        Document hello = mongoTemplate.executeCommand(new Document("hello", 1));
+        boolean replicaSet = hello.get("setName") != null;
+        boolean router = "isdbgrid".equals(hello.get("msg"));
+        if (!replicaSet && !router) {
+            throw new IllegalStateException("MongoDB database " + mongoTemplate.getDb().getName()
+                    + " is on a standalone server, but the SAGA outbox needs transactions: run mongod with"
+                    + " --replSet and initiate the replica set (rs.initiate()), as docker-compose.yml does");
+        }
+    }
+}
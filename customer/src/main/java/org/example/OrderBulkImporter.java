@@ -0,0 +1,151 @@
+package org.example;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Bulk order submission.
+ *
+ * The body is read one order at a time, either as NDJSON or as a single JSON
+ * array, so only one chunk of orders is ever held in memory. Valid orders of a
+ * chunk are started together through {@link OrderSagaOrchestrator#startValidatedSagas};
+ * one NDJSON result line per input order is written once its chunk is done.
+ */
+@Service
+public class OrderBulkImporter {
+    private static final Logger logger = LoggerFactory.getLogger(OrderBulkImporter.class);
+
+    private final OrderSagaOrchestrator sagaOrchestrator;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final Counter acceptedCounter;
+    private final Counter rejectedCounter;
+
+    public OrderBulkImporter(OrderSagaOrchestrator sagaOrchestrator,
+                             ObjectMapper objectMapper,
+                             MeterRegistry registry,
+                             @Value("${order.bulk.chunk-size:500}") int chunkSize) {
+        this.sagaOrchestrator = sagaOrchestrator;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        this.acceptedCounter = Counter.builder("business_orders_created_total")
+                .description("Total numbers of orders created")
+                .register(registry);
+        this.rejectedCounter = Counter.builder("order_bulk_rejected_total")
+                .description("Bulk order lines rejected by validation")
+                .register(registry);
+    }
+
+    /**
+     * Start a SAGA for every valid order read from the input, writing one result per order
+     */
+    public void importOrders(InputStream input, OutputStream output) throws IOException {
+        List<Line> chunk = new ArrayList<>(chunkSize);
+        int lineNumber = 0;
+
+        // A root-level array is unwrapped, otherwise values are read one after the other
+        try (MappingIterator<CreateOrderRequest> requests =
+                     objectMapper.readerFor(CreateOrderRequest.class).readValues(input)) {
+            while (true) {
+                CreateOrderRequest request;
+                try {
+                    if (!requests.hasNextValue()) {
+                        break;
+                    }
+                    request = requests.nextValue();
+                } catch (JsonProcessingException e) {
+                    // Unreadable input: report what was read so far and stop
+                    chunk.add(Line.rejected(++lineNumber, "Malformed order: " + e.getOriginalMessage()));
+                    break;
+                }
+                chunk.add(toLine(++lineNumber, request));
+                if (chunk.size() >= chunkSize) {
+                    flushChunk(chunk, output);
+                }
+            }
+        }
+        flushChunk(chunk, output);
+    }
+
+    private Line toLine(int lineNumber, CreateOrderRequest request) {
+        LocalDateTime deliveryTime = request.requestedDeliveryTime() != null
+                ? request.requestedDeliveryTime()
+                : LocalDateTime.now().plusHours(2);
+        OrderSagaState saga = new OrderSagaState(
+                UUID.randomUUID().toString(), UUID.randomUUID().toString(), request.customerId(),
+                request.fromAddress(), request.toAddress(), request.packageWeight(),
+                deliveryTime, request.maxDeliveryTimeMinutes()
+        );
+
+        String error = OrderSagaOrchestrator.validationError(saga);
+        return error == null ? new Line(lineNumber, saga, null) : Line.rejected(lineNumber, error);
+    }
+
+    private void flushChunk(List<Line> chunk, OutputStream output) throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<OrderSagaState> sagas = chunk.stream()
+                .filter(line -> line.saga() != null)
+                .map(Line::saga)
+                .toList();
+        String chunkError = null;
+        if (!sagas.isEmpty()) {
+            try {
+                sagaOrchestrator.startValidatedSagas(sagas);
+                acceptedCounter.increment(sagas.size());
+            } catch (RuntimeException e) {
+                logger.error("Failed to start {} bulk orders", sagas.size(), e);
+                chunkError = "Not started: " + e.getMessage();
+            }
+        }
+
+        for (Line line : chunk) {
+            BulkOrderResult result;
+            if (line.saga() == null) {
+                rejectedCounter.increment();
+                result = new BulkOrderResult(line.number(), null, null, line.error());
+            } else if (chunkError != null) {
+                result = new BulkOrderResult(line.number(), null, null, chunkError);
+            } else {
+                result = new BulkOrderResult(line.number(), line.saga().getOrderId(), line.saga().getSagaId(), null);
+            }
+            output.write(objectMapper.writeValueAsBytes(result));
+            output.write('\n');
+        }
+        output.flush();
+        chunk.clear();
+    }
+
+    /**
+     * An input order: the SAGA to start, or why it was rejected
+     */
+    private record Line(int number, OrderSagaState saga, String error) {
+        static Line rejected(int number, String error) {
+            return new Line(number, null, error);
+        }
+    }
+}
+
+/**
+ * Outcome of one order of a bulk submission
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+record BulkOrderResult(int line, String orderId, String sagaId, String error) {}
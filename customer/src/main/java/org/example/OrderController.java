@@ -1,10 +1,16 @@
 package org.example;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.time.LocalDateTime;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Order controller with SAGA pattern support
@@ -13,9 +19,18 @@ import java.time.LocalDateTime;
 @RequestMapping("/")
 public class OrderController {
     private final OrderService orderService;
+    private final OrderBulkImporter bulkImporter;
+    private final boolean asyncIntake;
+    private final long retryAfterSeconds;
 
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService,
+                           OrderBulkImporter bulkImporter,
+                           @Value("${order.intake.async:true}") boolean asyncIntake,
+                           @Value("${order.intake.retry-after-seconds:1}") long retryAfterSeconds) {
         this.orderService = orderService;
+        this.bulkImporter = bulkImporter;
+        this.asyncIntake = asyncIntake;
+        this.retryAfterSeconds = retryAfterSeconds;
     }
 
     @PostMapping
@@ -24,6 +39,25 @@ public class OrderController {
                 ? request.requestedDeliveryTime()
                 : LocalDateTime.now().plusHours(2);
 
+        if (asyncIntake) {
+            // Answer with the IDs right away, the SAGA starts on an intake worker
+            try {
+                OrderResponse response = orderService.acceptOrder(
+                        request.customerId(),
+                        request.fromAddress(),
+                        request.toAddress(),
+                        request.packageWeight(),
+                        deliveryTime,
+                        request.maxDeliveryTimeMinutes()
+                );
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+            } catch (RejectedExecutionException e) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                        .build();
+            }
+        }
+
         OrderResponse response = orderService.createOrder(
                 request.customerId(),
                 request.fromAddress(),
@@ -36,6 +70,19 @@ public class OrderController {
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    /**
+     * Submit many orders at once, as NDJSON or a JSON array.
+     * Answers with one NDJSON line per order, streamed as chunks are started.
+     */
+    @PostMapping(value = "/bulk",
+            consumes = {"application/x-ndjson", MediaType.APPLICATION_JSON_VALUE},
+            produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> createOrders(InputStream body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(output -> bulkImporter.importOrders(body, output));
+    }
+
     /**
      * Get SAGA status for an order
      */
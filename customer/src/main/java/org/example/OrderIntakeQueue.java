@@ -0,0 +1,83 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded admission queue for accepted orders.
+ *
+ * Request threads only enqueue the work of starting a SAGA and answer right away;
+ * a fixed pool of intake workers performs the writes and publishes. The queue has
+ * a hard capacity: when it is full, {@link #submit(Runnable)} rejects instead of
+ * letting a burst pile up on request threads.
+ */
+@Service
+public class OrderIntakeQueue {
+    private static final Logger logger = LoggerFactory.getLogger(OrderIntakeQueue.class);
+
+    private final ThreadPoolExecutor workers;
+    private final Counter rejectedCounter;
+    private final Counter failedCounter;
+
+    public OrderIntakeQueue(MeterRegistry registry,
+                            @Value("${order.intake.workers:16}") int workerCount,
+                            @Value("${order.intake.queue-capacity:1000}") int capacity) {
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                r -> new Thread(r, "order-intake-" + threads.getAndIncrement()),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.rejectedCounter = Counter.builder("order_intake_rejected_total")
+                .description("Orders turned away because the intake queue was full")
+                .register(registry);
+        this.failedCounter = Counter.builder("order_intake_failed_total")
+                .description("Accepted orders whose SAGA could not be started")
+                .register(registry);
+        Gauge.builder("order_intake_queue_depth", workers, w -> w.getQueue().size())
+                .description("Accepted orders waiting for an intake worker")
+                .register(registry);
+    }
+
+    /**
+     * Queue the start of an accepted order
+     *
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public void submit(Runnable task) {
+        try {
+            workers.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    failedCounter.increment();
+                    logger.error("Failed to start an accepted order", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Accepted orders were acknowledged to clients: let the queue drain
+        workers.shutdown();
+        if (!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+            logger.warn("{} accepted orders were not started before shutdown", workers.shutdownNow().size());
+        }
+    }
+}
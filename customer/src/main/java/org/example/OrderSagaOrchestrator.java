@@ -4,12 +4,17 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Orchestrator for the Order SAGA pattern.
@@ -20,23 +25,38 @@ import java.util.UUID;
  * 3. Assign Drone (Drone Service)
  *
  * If any step fails, compensating transactions are executed in reverse order.
+ *
+ * Messages are not published directly: they are queued on the SAGA and written to
+ * the outbox together with its next persisted change, then published by
+ * {@link SagaOutboxRelay}. A message is therefore sent if and only if the state
+ * change that produced it is stored.
  */
 @Service
 public class OrderSagaOrchestrator {
     private static final Logger logger = LoggerFactory.getLogger(OrderSagaOrchestrator.class);
 
     private final OrderSagaRepository sagaRepository;
-    private final RabbitTemplate rabbitTemplate;
+    private final SagaStateStore sagaStore;
+    private final SagaStateWriter sagaWriter;
+    private final SagaStateCache sagaCache;
+    private final SagaTimeoutScheduler timeoutScheduler;
     private final Counter sagaStartedCounter;
     private final Counter sagaCompletedCounter;
     private final Counter sagaFailedCounter;
     private final Counter sagaCompensatedCounter;
+    private final SagaLatencyMetrics latency;
 
     public OrderSagaOrchestrator(OrderSagaRepository sagaRepository,
-                                 RabbitTemplate rabbitTemplate,
+                                 SagaStateStore sagaStore,
+                                 SagaStateWriter sagaWriter,
+                                 SagaStateCache sagaCache,
+                                 SagaTimeoutScheduler timeoutScheduler,
                                  MeterRegistry registry) {
         this.sagaRepository = sagaRepository;
-        this.rabbitTemplate = rabbitTemplate;
+        this.sagaStore = sagaStore;
+        this.sagaWriter = sagaWriter;
+        this.sagaCache = sagaCache;
+        this.timeoutScheduler = timeoutScheduler;
 
         this.sagaStartedCounter = Counter.builder("saga_started_total")
                 .description("Total SAGAs started")
@@ -50,6 +70,7 @@ public class OrderSagaOrchestrator {
         this.sagaCompensatedCounter = Counter.builder("saga_compensated_total")
                 .description("Total SAGAs compensated (rolled back)")
                 .register(registry);
+        this.latency = new SagaLatencyMetrics(registry);
     }
 
     /**
@@ -58,8 +79,18 @@ public class OrderSagaOrchestrator {
     public String startOrderSaga(String orderId, String customerId, String fromAddress,
                                  String toAddress, double packageWeight,
                                  LocalDateTime requestedDeliveryTime, int maxDeliveryTimeMinutes) {
-
         String sagaId = UUID.randomUUID().toString();
+        startOrderSaga(sagaId, orderId, customerId, fromAddress, toAddress,
+                packageWeight, requestedDeliveryTime, maxDeliveryTimeMinutes);
+        return sagaId;
+    }
+
+    /**
+     * Start a new order SAGA under an ID already handed out to the client
+     */
+    public void startOrderSaga(String sagaId, String orderId, String customerId, String fromAddress,
+                               String toAddress, double packageWeight,
+                               LocalDateTime requestedDeliveryTime, int maxDeliveryTimeMinutes) {
 
         // Create SAGA state
         OrderSagaState saga = new OrderSagaState(
@@ -67,25 +98,21 @@ public class OrderSagaOrchestrator {
                 packageWeight, requestedDeliveryTime, maxDeliveryTimeMinutes
         );
 
-        sagaRepository.save(saga);
-        sagaStartedCounter.increment();
-
-        logger.info("Started SAGA {} for order {}", sagaId, orderId);
-
         // Publish SAGA started event
         OrderSagaStartedEvent event = new OrderSagaStartedEvent(
                 sagaId, orderId, customerId, fromAddress, toAddress,
                 packageWeight, requestedDeliveryTime, maxDeliveryTimeMinutes,
                 LocalDateTime.now()
         );
+        saga.publish(event);
 
-        rabbitTemplate.convertAndSend(RabbitMqConfig.SAGA_EVENTS_EXCHANGE,
-                "saga.started", event);
+        persist(saga);
+        sagaStartedCounter.increment();
+
+        logger.info("Started SAGA {} for order {}", sagaId, orderId);
 
         // Start first step: Order Validation
         validateOrder(saga);
-
-        return sagaId;
     }
 
     /**
@@ -95,40 +122,26 @@ public class OrderSagaOrchestrator {
         logger.info("SAGA {}: Validating order {}", saga.getSagaId(), saga.getOrderId());
 
         try {
-            // Simulate validation logic
-            if (saga.getPackageWeight() <= 0) {
-                handleValidationFailure(saga, "Invalid package weight");
-                return;
-            }
-
-            if (saga.getFromAddress() == null || saga.getToAddress() == null) {
-                handleValidationFailure(saga, "Missing addresses");
+            String error = validationError(saga);
+            if (error != null) {
+                handleValidationFailure(saga, error);
                 return;
             }
 
             // Validation successful
-            saga.markStepCompleted(SagaStep.ORDER_VALIDATION);
-            saga.moveToNextStep();
-            sagaRepository.save(saga);
+            completeStep(saga, SagaStep.ORDER_VALIDATION);
 
             // Publish success event
             OrderValidatedEvent event = new OrderValidatedEvent(
                     saga.getSagaId(), saga.getOrderId(), LocalDateTime.now()
             );
-            rabbitTemplate.convertAndSend(RabbitMqConfig.SAGA_EVENTS_EXCHANGE,
-                    "saga.validated", event);
-
-            logger.info("SAGA {}: Order validated successfully", saga.getSagaId());
+            saga.publish(event);
 
             // Initiate Step 2 (Delivery Scheduling) by sending the order to the Delivery Service
-            OrderMessage deliveryRequest = new OrderMessage(
-                    saga.getOrderId(), saga.getCustomerId(), saga.getFromAddress(),
-                    saga.getToAddress(), saga.getPackageWeight(),
-                    saga.getRequestedDeliveryTime(), saga.getMaxDeliveryTimeMinutes()
-            );
+            requestDelivery(saga);
+            persist(saga);
 
-            rabbitTemplate.convertAndSend(RabbitMqConfig.ORDER_QUEUE, deliveryRequest);
-            logger.info("SAGA {}: Order sent to the Delivery Service. Waiting for response...", saga.getSagaId());
+            logger.info("SAGA {}: Order validated successfully", saga.getSagaId());
 
             // The orchestrator stops here and waits for asynchronous events.
 
@@ -139,40 +152,223 @@ public class OrderSagaOrchestrator {
     }
 
     /**
-     * UNIFIED ASYNCHRONOUS LISTENER: Reacts to events published by other microservices.
+     * @return why the order is invalid, or null if it can be delivered
      */
-    @RabbitListener(queues = RabbitMqConfig.SAGA_EVENTS_QUEUE)
-    public void handleSagaEvents(SagaEvent event) {
+    public static String validationError(OrderSagaState saga) {
+        // Simulate validation logic
+        if (saga.getPackageWeight() <= 0) {
+            return "Invalid package weight";
+        }
+        if (saga.getFromAddress() == null || saga.getToAddress() == null) {
+            return "Missing addresses";
+        }
+        return null;
+    }
+
+    /**
+     * Start SAGAs for a batch of orders that already passed {@link #validationError}.
+     * All SAGAs and their messages are written with one bulk insert each, in a single
+     * transaction, instead of two writes and three publishes per order.
+     */
+    public void startValidatedSagas(List<OrderSagaState> sagas) {
+        for (OrderSagaState saga : sagas) {
+            saga.publish(new OrderSagaStartedEvent(
+                    saga.getSagaId(), saga.getOrderId(), saga.getCustomerId(),
+                    saga.getFromAddress(), saga.getToAddress(), saga.getPackageWeight(),
+                    saga.getRequestedDeliveryTime(), saga.getMaxDeliveryTimeMinutes(),
+                    saga.getStartTime()));
+            completeStep(saga, SagaStep.ORDER_VALIDATION);
+            saga.publish(new OrderValidatedEvent(saga.getSagaId(), saga.getOrderId(), LocalDateTime.now()));
+            requestDelivery(saga);
+        }
+        sagaStore.insertAll(sagas);
+        sagaStartedCounter.increment(sagas.size());
+
+        for (OrderSagaState saga : sagas) {
+            sagaCache.put(saga);
+            timeoutScheduler.track(saga);
+        }
+        logger.info("Started {} SAGAs in bulk", sagas.size());
+    }
+
+    private void requestDelivery(OrderSagaState saga) {
+        OrderMessage deliveryRequest = new OrderMessage(
+                saga.getOrderId(), saga.getCustomerId(), saga.getFromAddress(),
+                saga.getToAddress(), saga.getPackageWeight(),
+                saga.getRequestedDeliveryTime(), saga.getMaxDeliveryTimeMinutes()
+        );
+
+        // Sharded by order: every request of an order is consumed in order
+        saga.publish(ShardedQueue.exchange(RabbitMqConfig.ORDER_QUEUE), saga.getOrderId(), deliveryRequest);
+        logger.info("SAGA {}: Order queued for the Delivery Service. Waiting for response...", saga.getSagaId());
+    }
+
+    /**
+     * UNIFIED ASYNCHRONOUS HANDLER: Reacts to events published by other microservices.
+     * Invoked by {@link SagaEventDispatcher} on the lane owning the order.
+     *
+     * @return completes once all the writes of the event are persisted; already
+     *         complete on return, except in ASYNC mode
+     */
+    public CompletableFuture<Void> handleSagaEvents(SagaEvent event) {
+        return sagaWriter.writingOnce(() -> handle(event));
+    }
+
+    private void handle(SagaEvent event) {
 
         // Generic Log
         logger.info("SAGA Event Received: {} for order {}", event.getEventType(), event.getOrderId());
 
         if (event instanceof DeliveryScheduledEvent deliveryEvent) {
 
-            OrderSagaState saga = sagaRepository.findByOrderId(deliveryEvent.getOrderId()).orElse(null);
-            if (saga != null) {
+            OrderSagaState saga = findSaga(deliveryEvent.getOrderId());
+            if (saga != null && isLateReply(saga, SagaStep.DELIVERY_SCHEDULING, event)) {
+                if (gaveUpOn(saga, SagaStep.DELIVERY_SCHEDULING)) {
+                    // Scheduled after the SAGA gave up on it: release it again
+                    saga.publish(new CompensateDeliveryEvent(saga.getSagaId(), saga.getOrderId(),
+                            deliveryEvent.getDeliveryId(), saga.getFailureReason(), LocalDateTime.now()));
+                    persist(saga);
+                }
+            } else if (saga != null) {
                 saga.setDeliveryId(deliveryEvent.getDeliveryId());
-                saga.markStepCompleted(SagaStep.DELIVERY_SCHEDULING);
-                saga.moveToNextStep(); // Moves to DRONE_ASSIGNMENT
-                sagaRepository.save(saga);
+                completeStep(saga, SagaStep.DELIVERY_SCHEDULING); // Moves to DRONE_ASSIGNMENT
+                persist(saga);
                 logger.info("SAGA {}: Delivery planned notification received (DeliveryID: {})",
                         saga.getSagaId(), deliveryEvent.getDeliveryId());
             }
 
         } else if (event instanceof DroneAssignedEvent droneEvent) {
 
-            OrderSagaState saga = sagaRepository.findByOrderId(droneEvent.getOrderId()).orElse(null);
-            if (saga != null) {
+            OrderSagaState saga = findSaga(droneEvent.getOrderId());
+            if (saga != null && isLateReply(saga, SagaStep.DRONE_ASSIGNMENT, event)) {
+                if (gaveUpOn(saga, SagaStep.DRONE_ASSIGNMENT)) {
+                    // Assigned after the SAGA gave up on it: release the drone again
+                    saga.publish(new CompensateDroneEvent(saga.getSagaId(), saga.getOrderId(),
+                            droneEvent.getDroneId(), saga.getFailureReason(), LocalDateTime.now()));
+                    persist(saga);
+                }
+            } else if (saga != null) {
                 saga.setDroneId(droneEvent.getDroneId());
-                saga.markStepCompleted(SagaStep.DRONE_ASSIGNMENT);
-                saga.moveToNextStep();
-                sagaRepository.save(saga);
+                completeStep(saga, SagaStep.DRONE_ASSIGNMENT);
+                persist(saga);
                 logger.info("SAGA {}: Drone assigned notification received (DroneID: {})",
                         saga.getSagaId(), droneEvent.getDroneId());
 
                 // Trigger SAGA Completion
                 completeOrderSaga(saga);
+                LocalDateTime endTime = saga.getEndTime();
+                sagaWriter.afterWrites(() -> latency.recordDroneAssignedToCompletion(
+                        SagaLatencyMetrics.COMPLETED, droneEvent.getTimestamp(), endTime));
+            }
+        }
+    }
+
+    /**
+     * A reply for a step the SAGA is no longer waiting on: it timed out and was
+     * compensated, or the reply is a duplicate. Either way it must not move the SAGA.
+     */
+    private boolean isLateReply(OrderSagaState saga, SagaStep step, SagaEvent reply) {
+        if (SagaTimeoutScheduler.isWaitingOn(saga, step)) {
+            return false;
+        }
+        logger.warn("SAGA {}: ignoring {} received at step {} ({})",
+                saga.getSagaId(), reply.getEventType(), saga.getCurrentStep(), saga.getStatus());
+        return true;
+    }
+
+    /**
+     * Whether the SAGA failed at the given step, so a late success of that step
+     * left a reservation behind
+     */
+    private static boolean gaveUpOn(OrderSagaState saga, SagaStep step) {
+        return saga.getCurrentStep() == step
+                && (saga.getStatus() == SagaStatus.FAILED || saga.getStatus() == SagaStatus.COMPENSATING
+                        || saga.getStatus() == SagaStatus.COMPENSATED);
+    }
+
+    /**
+     * Load the SAGAs of several orders that are not in memory, with a single query.
+     * Only a lookup: each SAGA is taken over by {@link #adoptLoaded} on its own lane.
+     */
+    public Map<String, OrderSagaState> loadSagas(Collection<String> orderIds) {
+        List<String> missing = orderIds.stream()
+                .filter(orderId -> sagaCache.getByOrderId(orderId).isEmpty())
+                .toList();
+        if (missing.isEmpty()) {
+            return Map.of();
+        }
+        return sagaStore.findAllForEvents(missing).stream()
+                .collect(Collectors.toMap(OrderSagaState::getOrderId, Function.identity()));
+    }
+
+    /**
+     * Use a SAGA returned by {@link #loadSagas} unless a newer state is already held
+     * in memory. Invoked on the lane owning the order.
+     */
+    public void adoptLoaded(OrderSagaState loaded) {
+        if (sagaCache.getByOrderId(loaded.getOrderId()).isEmpty()
+                && sagaWriter.findPending(loaded.getOrderId()).isEmpty()) {
+            sagaCache.put(loaded);
+        }
+    }
+
+    /**
+     * A step overran its deadline: fail it as if the service had reported the failure.
+     * Invoked by {@link SagaEventDispatcher} on the lane owning the order.
+     */
+    public void handleStepTimeout(String orderId, SagaStep step) {
+        sagaWriter.writingOnce(() -> {
+            OrderSagaState saga = findSaga(orderId);
+            if (saga == null || !SagaTimeoutScheduler.isWaitingOn(saga, step)) {
+                // The step completed while the timeout was queued
+                return;
             }
+
+            failStep(saga, "Timed out waiting for " + step);
+        });
+    }
+
+    /**
+     * Resume a SAGA left in flight by a previous run, as decided by {@link SagaRecoveryService}.
+     * Invoked on the lane owning the order.
+     *
+     * @return false if the SAGA was already picked up again by a live event
+     */
+    public boolean resumeSaga(OrderSagaState stored, SagaRecoveryAction action) {
+        if (sagaCache.getByOrderId(stored.getOrderId()).isPresent()) {
+            return false;
+        }
+        OrderSagaState saga = sagaWriter.findPending(stored.getOrderId()).orElse(stored);
+        sagaCache.put(saga);
+
+        logger.info("SAGA {}: recovering at {} ({}): {}",
+                saga.getSagaId(), saga.getCurrentStep(), saga.getStatus(), action);
+        switch (action) {
+            case RESEND -> {
+                if (saga.getCurrentStep() == SagaStep.ORDER_VALIDATION) {
+                    validateOrder(saga);
+                } else {
+                    requestDelivery(saga);
+                    persist(saga);
+                }
+            }
+            case WAIT -> timeoutScheduler.track(saga);
+            case COMPENSATE -> {
+                if (saga.getStatus() == SagaStatus.FAILED || saga.getStatus() == SagaStatus.COMPENSATING) {
+                    compensateSaga(saga);
+                } else {
+                    failStep(saga, "Timed out waiting for " + saga.getCurrentStep() + " before restart");
+                }
+            }
+        }
+        return true;
+    }
+
+    private void failStep(OrderSagaState saga, String reason) {
+        switch (saga.getCurrentStep()) {
+            case DELIVERY_SCHEDULING -> handleDeliveryFailure(saga, reason);
+            case DRONE_ASSIGNMENT -> handleDroneFailure(saga, reason);
+            default -> logger.warn("SAGA {}: cannot fail step {}", saga.getSagaId(), saga.getCurrentStep());
         }
     }
 
@@ -182,50 +378,66 @@ public class OrderSagaOrchestrator {
     private void completeOrderSaga(OrderSagaState saga) {
         saga.setStatus(SagaStatus.COMPLETED);
         saga.setEndTime(LocalDateTime.now());
-        sagaRepository.save(saga);
-        sagaCompletedCounter.increment();
 
         OrderCompletedEvent event = new OrderCompletedEvent(
                 saga.getSagaId(), saga.getOrderId(), LocalDateTime.now()
         );
-        rabbitTemplate.convertAndSend(RabbitMqConfig.SAGA_EVENTS_EXCHANGE,
-                "saga.completed", event);
+        saga.publish(event);
+
+        persist(saga);
+        LocalDateTime startTime = saga.getStartTime();
+        LocalDateTime endTime = saga.getEndTime();
+        sagaWriter.afterWrites(() -> {
+            sagaCompletedCounter.increment();
+            latency.recordSaga(SagaLatencyMetrics.COMPLETED, startTime, endTime);
+        });
 
         logger.info("SAGA {}: Completed successfully for order {}",
                 saga.getSagaId(), saga.getOrderId());
     }
 
+    private void completeStep(OrderSagaState saga, SagaStep step) {
+        saga.markStepCompleted(step);
+        latency.recordStep(step, SagaLatencyMetrics.SUCCESS,
+                saga.getStepStartedAt(), saga.getStepCompletedAt().get(step));
+        saga.moveToNextStep();
+    }
+
     // ========================================================================
     // FAILURE HANDLERS - Trigger compensation
     // ========================================================================
 
-    private void handleValidationFailure(OrderSagaState saga, String reason) {
+    private void failCurrentStep(OrderSagaState saga, String reason) {
         saga.markFailed(reason);
-        sagaRepository.save(saga);
-        sagaFailedCounter.increment();
+        latency.recordStep(saga.getCurrentStep(), SagaLatencyMetrics.FAILURE,
+                saga.getStepStartedAt(), saga.getEndTime());
+    }
+
+    private void handleValidationFailure(OrderSagaState saga, String reason) {
+        failCurrentStep(saga, reason);
 
         OrderValidationFailedEvent event = new OrderValidationFailedEvent(
                 saga.getSagaId(), saga.getOrderId(), reason, LocalDateTime.now()
         );
-        rabbitTemplate.convertAndSend(RabbitMqConfig.SAGA_EVENTS_EXCHANGE,
-                "saga.validation_failed", event);
-
-        logger.error("SAGA {}: Failed at validation - {}", saga.getSagaId(), reason);
+        saga.publish(event);
 
         // No compensation needed as no steps were completed
         cancelOrder(saga, reason);
+        persist(saga);
+        sagaWriter.afterWrites(sagaFailedCounter::increment);
+
+        logger.error("SAGA {}: Failed at validation - {}", saga.getSagaId(), reason);
     }
 
     private void handleDeliveryFailure(OrderSagaState saga, String reason) {
-        saga.markFailed(reason);
-        sagaRepository.save(saga);
-        sagaFailedCounter.increment();
+        failCurrentStep(saga, reason);
 
         DeliverySchedulingFailedEvent event = new DeliverySchedulingFailedEvent(
                 saga.getSagaId(), saga.getOrderId(), reason, LocalDateTime.now()
         );
-        rabbitTemplate.convertAndSend(RabbitMqConfig.SAGA_EVENTS_EXCHANGE,
-                "saga.delivery_failed", event);
+        saga.publish(event);
+        persist(saga);
+        sagaWriter.afterWrites(sagaFailedCounter::increment);
 
         logger.error("SAGA {}: Failed at delivery scheduling - {}",
                 saga.getSagaId(), reason);
@@ -235,15 +447,14 @@ public class OrderSagaOrchestrator {
     }
 
     private void handleDroneFailure(OrderSagaState saga, String reason) {
-        saga.markFailed(reason);
-        sagaRepository.save(saga);
-        sagaFailedCounter.increment();
+        failCurrentStep(saga, reason);
 
         DroneAssignmentFailedEvent event = new DroneAssignmentFailedEvent(
                 saga.getSagaId(), saga.getOrderId(), reason, LocalDateTime.now()
         );
-        rabbitTemplate.convertAndSend(RabbitMqConfig.SAGA_EVENTS_EXCHANGE,
-                "saga.drone_failed", event);
+        saga.publish(event);
+        persist(saga);
+        sagaWriter.afterWrites(sagaFailedCounter::increment);
 
         logger.error("SAGA {}: Failed at drone assignment - {}",
                 saga.getSagaId(), reason);
@@ -262,7 +473,7 @@ public class OrderSagaOrchestrator {
     private void compensateSaga(OrderSagaState saga) {
         logger.info("SAGA {}: Starting compensation", saga.getSagaId());
         saga.startCompensation();
-        sagaRepository.save(saga);
+        persist(saga);
 
         // Get steps to compensate in reverse order
         for (SagaStep step : saga.getStepsToCompensate()) {
@@ -275,13 +486,20 @@ public class OrderSagaOrchestrator {
 
         // Mark SAGA as compensated
         saga.markCompensated();
-        sagaRepository.save(saga);
-        sagaCompensatedCounter.increment();
-
-        logger.info("SAGA {}: Compensation completed", saga.getSagaId());
 
         // Cancel the order
         cancelOrder(saga, saga.getFailureReason());
+        persist(saga);
+        LocalDateTime startTime = saga.getStartTime();
+        LocalDateTime compensationStartedAt = saga.getCompensationStartedAt();
+        LocalDateTime endTime = saga.getEndTime();
+        sagaWriter.afterWrites(() -> {
+            sagaCompensatedCounter.increment();
+            latency.recordCompensation(SagaLatencyMetrics.COMPENSATED, compensationStartedAt, endTime);
+            latency.recordSaga(SagaLatencyMetrics.COMPENSATED, startTime, endTime);
+        });
+
+        logger.info("SAGA {}: Compensation completed", saga.getSagaId());
     }
 
     private void compensateOrder(OrderSagaState saga) {
@@ -291,8 +509,7 @@ public class OrderSagaOrchestrator {
                 saga.getSagaId(), saga.getOrderId(),
                 saga.getFailureReason(), LocalDateTime.now()
         );
-        rabbitTemplate.convertAndSend(RabbitMqConfig.SAGA_EVENTS_EXCHANGE,
-                "saga.compensate_order", event);
+        saga.publish(event);
     }
 
     private void compensateDelivery(OrderSagaState saga) {
@@ -302,8 +519,7 @@ public class OrderSagaOrchestrator {
                 saga.getSagaId(), saga.getOrderId(), saga.getDeliveryId(),
                 saga.getFailureReason(), LocalDateTime.now()
         );
-        rabbitTemplate.convertAndSend(RabbitMqConfig.SAGA_EVENTS_EXCHANGE,
-                "saga.compensate_delivery", event);
+        saga.publish(event);
     }
 
     private void compensateDrone(OrderSagaState saga) {
@@ -313,8 +529,7 @@ public class OrderSagaOrchestrator {
                 saga.getSagaId(), saga.getOrderId(), saga.getDroneId(),
                 saga.getFailureReason(), LocalDateTime.now()
         );
-        rabbitTemplate.convertAndSend(RabbitMqConfig.SAGA_EVENTS_EXCHANGE,
-                "saga.compensate_drone", event);
+        saga.publish(event);
     }
 
     private void cancelOrder(OrderSagaState saga, String reason) {
@@ -323,21 +538,71 @@ public class OrderSagaOrchestrator {
         OrderCancelledEvent event = new OrderCancelledEvent(
                 saga.getSagaId(), saga.getOrderId(), reason, LocalDateTime.now()
         );
-        rabbitTemplate.convertAndSend(RabbitMqConfig.SAGA_EVENTS_EXCHANGE,
-                "saga.cancelled", event);
+        saga.publish(event);
     }
 
     /**
      * Get SAGA status
      */
     public OrderSagaState getSagaState(String sagaId) {
-        return sagaRepository.findById(sagaId).orElse(null);
+        return sagaCache.getBySagaId(sagaId)
+                .map(this::withOrderDetails)
+                .or(() -> sagaRepository.findById(sagaId))
+                .orElse(null);
     }
 
     /**
      * Get SAGA by order ID
      */
     public OrderSagaState getSagaByOrderId(String orderId) {
-        return sagaRepository.findByOrderId(orderId).orElse(null);
+        OrderSagaState saga = findSaga(orderId);
+        return saga == null ? null : withOrderDetails(saga);
+    }
+
+    /**
+     * A SAGA loaded for its events completed with the order details of its stored
+     * document, for readers of the whole SAGA
+     */
+    private OrderSagaState withOrderDetails(OrderSagaState saga) {
+        if (saga.hasOrderDetails()) {
+            return saga;
+        }
+        return sagaRepository.findById(saga.getSagaId())
+                .map(saga::withOrderDetailsOf)
+                .orElse(saga);
+    }
+
+    /**
+     * Latest SAGA state for an order, including transitions not yet flushed.
+     * Order details are not loaded: transitions only carry the fields they change.
+     */
+    private OrderSagaState findSaga(String orderId) {
+        Optional<OrderSagaState> cached = sagaCache.getByOrderId(orderId);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        OrderSagaState saga = sagaWriter.findPending(orderId)
+                .or(() -> sagaStore.findForEvent(orderId))
+                .orElse(null);
+        if (saga != null) {
+            sagaCache.put(saga);
+        }
+        return saga;
+    }
+
+    /**
+     * Persist the SAGA's changes, write them through to the cache and re-arm its step deadline
+     */
+    private void persist(OrderSagaState saga) {
+        try {
+            sagaWriter.write(saga);
+        } catch (RuntimeException e) {
+            // The cached object already carries the changes that failed
+            sagaCache.invalidate(saga.getOrderId());
+            throw e;
+        }
+        sagaCache.put(saga);
+        timeoutScheduler.track(saga);
     }
 }
\ No newline at end of file
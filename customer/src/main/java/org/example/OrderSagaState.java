@@ -1,30 +1,44 @@
 package org.example;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents the state of an order SAGA.
  * Tracks progress through the distributed transaction and supports compensation.
  */
 @Document(collection = "order_sagas")
+@CompoundIndex(name = "status_startTime", def = "{'status': 1, 'startTime': 1}")
 public class OrderSagaState {
 
     @Id
     private String sagaId;
+    @Indexed(name = "orderId_unique", unique = true)
     private String orderId;
     private SagaStatus status;
     private SagaStep currentStep;
+    // When the current step was entered, the reference for its timeout
+    private LocalDateTime stepStartedAt;
     private List<SagaStep> completedSteps;
+    // When each completed step finished
+    private Map<SagaStep, LocalDateTime> stepCompletedAt;
+    private LocalDateTime compensationStartedAt;
     private String failureReason;
     private LocalDateTime startTime;
     private LocalDateTime endTime;
 
     // Order details for compensation
+    @Indexed(name = "customerId")
     private String customerId;
     private String fromAddress;
     private String toAddress;
@@ -36,11 +50,29 @@ public class OrderSagaState {
     private String deliveryId;
     private String droneId;
 
+    // Optimistic concurrency guard, bumped by every persisted transition
+    @Version
+    private Long version;
+
+    // Field-level changes not yet persisted
+    @Transient
+    private final Map<String, Object> changedFields = new LinkedHashMap<>();
+    @Transient
+    private final List<SagaStep> addedSteps = new ArrayList<>();
+    // Messages to write to the outbox with the next persisted change
+    @Transient
+    private final List<OutboxMessage> outbox = new ArrayList<>();
+    // Loaded for its events only, without the order details
+    @Transient
+    private boolean withoutOrderDetails;
+
     public OrderSagaState() {
         this.completedSteps = new ArrayList<>();
+        this.stepCompletedAt = new LinkedHashMap<>();
         this.status = SagaStatus.STARTED;
         this.currentStep = SagaStep.ORDER_VALIDATION;
         this.startTime = LocalDateTime.now();
+        this.stepStartedAt = startTime;
     }
 
     public OrderSagaState(String sagaId, String orderId, String customerId,
@@ -57,37 +89,150 @@ public class OrderSagaState {
         this.maxDeliveryTimeMinutes = maxDeliveryTimeMinutes;
     }
 
+    /**
+     * Detached copy of this SAGA, without pending changes
+     */
+    public OrderSagaState copy() {
+        OrderSagaState copy = new OrderSagaState(sagaId, orderId, customerId, fromAddress, toAddress,
+                packageWeight, requestedDeliveryTime, maxDeliveryTimeMinutes);
+        copy.status = status;
+        copy.currentStep = currentStep;
+        copy.stepStartedAt = stepStartedAt;
+        copy.completedSteps = new ArrayList<>(completedSteps);
+        copy.stepCompletedAt = new LinkedHashMap<>(stepCompletedAt);
+        copy.compensationStartedAt = compensationStartedAt;
+        copy.failureReason = failureReason;
+        copy.startTime = startTime;
+        copy.endTime = endTime;
+        copy.deliveryId = deliveryId;
+        copy.droneId = droneId;
+        copy.version = version;
+        copy.withoutOrderDetails = withoutOrderDetails;
+        return copy;
+    }
+
+    /**
+     * Mark this SAGA as loaded without its order details
+     */
+    OrderSagaState withoutOrderDetails() {
+        this.withoutOrderDetails = true;
+        return this;
+    }
+
+    public boolean hasOrderDetails() {
+        return !withoutOrderDetails;
+    }
+
+    /**
+     * Detached copy of this SAGA with the order details of its stored document,
+     * which never change once the SAGA is started
+     */
+    public OrderSagaState withOrderDetailsOf(OrderSagaState stored) {
+        OrderSagaState copy = copy();
+        copy.customerId = stored.customerId;
+        copy.fromAddress = stored.fromAddress;
+        copy.toAddress = stored.toAddress;
+        copy.packageWeight = stored.packageWeight;
+        copy.requestedDeliveryTime = stored.requestedDeliveryTime;
+        copy.maxDeliveryTimeMinutes = stored.maxDeliveryTimeMinutes;
+        copy.withoutOrderDetails = false;
+        return copy;
+    }
+
     // State transitions
     public void markStepCompleted(SagaStep step) {
+        LocalDateTime now = LocalDateTime.now();
         this.completedSteps.add(step);
+        this.addedSteps.add(step);
+        this.stepCompletedAt.put(step, now);
+        track("stepCompletedAt." + step.name(), now);
     }
 
     public void moveToNextStep() {
         switch (currentStep) {
-            case ORDER_VALIDATION -> currentStep = SagaStep.DELIVERY_SCHEDULING;
-            case DELIVERY_SCHEDULING -> currentStep = SagaStep.DRONE_ASSIGNMENT;
+            case ORDER_VALIDATION -> setCurrentStep(SagaStep.DELIVERY_SCHEDULING);
+            case DELIVERY_SCHEDULING -> setCurrentStep(SagaStep.DRONE_ASSIGNMENT);
             case DRONE_ASSIGNMENT -> {
-                currentStep = SagaStep.COMPLETED;
-                status = SagaStatus.COMPLETED;
-                endTime = LocalDateTime.now();
+                setCurrentStep(SagaStep.COMPLETED);
+                setStatus(SagaStatus.COMPLETED);
+                setEndTime(LocalDateTime.now());
             }
             default -> {}
         }
     }
 
     public void markFailed(String reason) {
-        this.status = SagaStatus.FAILED;
-        this.failureReason = reason;
-        this.endTime = LocalDateTime.now();
+        setStatus(SagaStatus.FAILED);
+        setFailureReason(reason);
+        setEndTime(LocalDateTime.now());
     }
 
     public void startCompensation() {
-        this.status = SagaStatus.COMPENSATING;
+        setStatus(SagaStatus.COMPENSATING);
+        this.compensationStartedAt = LocalDateTime.now();
+        track("compensationStartedAt", compensationStartedAt);
     }
 
     public void markCompensated() {
-        this.status = SagaStatus.COMPENSATED;
-        this.endTime = LocalDateTime.now();
+        setStatus(SagaStatus.COMPENSATED);
+        setEndTime(LocalDateTime.now());
+    }
+
+    /**
+     * Collect the changes made since the last call as a field-level transition.
+     * The in-memory version is advanced as if the transition was persisted.
+     */
+    public SagaTransition drainChanges() {
+        if (version == null) {
+            throw new IllegalStateException("SAGA " + sagaId + " has not been persisted yet");
+        }
+        SagaTransition transition = new SagaTransition(sagaId, orderId, version,
+                new LinkedHashMap<>(changedFields), new ArrayList<>(addedSteps), 1);
+        clearChanges();
+        if (!transition.isEmpty()) {
+            version++;
+        }
+        return transition;
+    }
+
+    /**
+     * Queue a message to be written to the outbox together with the next change
+     * of this SAGA; it is published once that write is committed
+     */
+    public void publish(String exchange, String routingKey, Object payload) {
+        outbox.add(new OutboxMessage(orderId, exchange, routingKey, payload));
+    }
+
+    /**
+     * Queue a SAGA event, routed as {@link SagaTopology} prescribes for its type
+     */
+    public void publish(SagaEvent event) {
+        publish(SagaTopology.exchange(event), SagaTopology.routingKey(event), event);
+    }
+
+    /**
+     * Queue a message for a queue, through the default exchange
+     */
+    public void publish(String queue, Object payload) {
+        publish("", queue, payload);
+    }
+
+    /**
+     * Collect the messages queued since the last call
+     */
+    public List<OutboxMessage> drainOutbox() {
+        List<OutboxMessage> messages = List.copyOf(outbox);
+        outbox.clear();
+        return messages;
+    }
+
+    public void clearChanges() {
+        changedFields.clear();
+        addedSteps.clear();
+    }
+
+    private void track(String field, Object value) {
+        changedFields.put(field, value);
     }
 
     public boolean needsCompensation() {
@@ -109,24 +254,51 @@ public class OrderSagaState {
     public void setOrderId(String orderId) { this.orderId = orderId; }
 
     public SagaStatus getStatus() { return status; }
-    public void setStatus(SagaStatus status) { this.status = status; }
+    public void setStatus(SagaStatus status) {
+        this.status = status;
+        track("status", status);
+    }
 
     public SagaStep getCurrentStep() { return currentStep; }
-    public void setCurrentStep(SagaStep currentStep) { this.currentStep = currentStep; }
+    public void setCurrentStep(SagaStep currentStep) {
+        this.currentStep = currentStep;
+        this.stepStartedAt = LocalDateTime.now();
+        track("currentStep", currentStep);
+        track("stepStartedAt", stepStartedAt);
+    }
+
+    public LocalDateTime getStepStartedAt() { return stepStartedAt; }
+    public void setStepStartedAt(LocalDateTime stepStartedAt) { this.stepStartedAt = stepStartedAt; }
 
     public List<SagaStep> getCompletedSteps() { return completedSteps; }
     public void setCompletedSteps(List<SagaStep> completedSteps) {
         this.completedSteps = completedSteps;
     }
 
+    public Map<SagaStep, LocalDateTime> getStepCompletedAt() { return stepCompletedAt; }
+    public void setStepCompletedAt(Map<SagaStep, LocalDateTime> stepCompletedAt) {
+        this.stepCompletedAt = stepCompletedAt;
+    }
+
+    public LocalDateTime getCompensationStartedAt() { return compensationStartedAt; }
+    public void setCompensationStartedAt(LocalDateTime compensationStartedAt) {
+        this.compensationStartedAt = compensationStartedAt;
+    }
+
     public String getFailureReason() { return failureReason; }
-    public void setFailureReason(String failureReason) { this.failureReason = failureReason; }
+    public void setFailureReason(String failureReason) {
+        this.failureReason = failureReason;
+        track("failureReason", failureReason);
+    }
 
     public LocalDateTime getStartTime() { return startTime; }
     public void setStartTime(LocalDateTime startTime) { this.startTime = startTime; }
 
     public LocalDateTime getEndTime() { return endTime; }
-    public void setEndTime(LocalDateTime endTime) { this.endTime = endTime; }
+    public void setEndTime(LocalDateTime endTime) {
+        this.endTime = endTime;
+        track("endTime", endTime);
+    }
 
     public String getCustomerId() { return customerId; }
     public void setCustomerId(String customerId) { this.customerId = customerId; }
@@ -151,9 +323,17 @@ public class OrderSagaState {
     }
 
     public String getDeliveryId() { return deliveryId; }
-    public void setDeliveryId(String deliveryId) { this.deliveryId = deliveryId; }
+    public void setDeliveryId(String deliveryId) {
+        this.deliveryId = deliveryId;
+        track("deliveryId", deliveryId);
+    }
 
     public String getDroneId() { return droneId; }
-    public void setDroneId(String droneId) { this.droneId = droneId; }
-}
+    public void setDroneId(String droneId) {
+        this.droneId = droneId;
+        track("droneId", droneId);
+    }
 
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+}
@@ -14,10 +14,13 @@ import java.util.UUID;
 @Service
 public class OrderService {
     private final OrderSagaOrchestrator sagaOrchestrator;
+    private final OrderIntakeQueue intakeQueue;
     private final Counter orderCounter;
 
-    public OrderService(OrderSagaOrchestrator sagaOrchestrator, MeterRegistry registry) {
+    public OrderService(OrderSagaOrchestrator sagaOrchestrator, OrderIntakeQueue intakeQueue,
+                        MeterRegistry registry) {
         this.sagaOrchestrator = sagaOrchestrator;
+        this.intakeQueue = intakeQueue;
         this.orderCounter = Counter.builder("business_orders_created_total")
                 .description("Total numbers of orders created")
                 .register(registry);
@@ -55,6 +58,37 @@ public class OrderService {
         );
     }
 
+    /**
+     * Accept an order and start its SAGA in the background.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if the intake queue is full
+     */
+    public OrderResponse acceptOrder(String customerId, String fromAddress, String toAddress,
+                                     double packageWeight, LocalDateTime requestedDeliveryTime,
+                                     int maxDeliveryTimeMinutes) {
+
+        String orderId = UUID.randomUUID().toString();
+        String sagaId = UUID.randomUUID().toString();
+
+        intakeQueue.submit(() -> {
+            sagaOrchestrator.startOrderSaga(sagaId, orderId, customerId, fromAddress, toAddress,
+                    packageWeight, requestedDeliveryTime, maxDeliveryTimeMinutes);
+            this.orderCounter.increment();
+        });
+
+        return new OrderResponse(
+                orderId,
+                sagaId,
+                customerId,
+                fromAddress,
+                toAddress,
+                packageWeight,
+                requestedDeliveryTime,
+                maxDeliveryTimeMinutes,
+                "SAGA_ACCEPTED"
+        );
+    }
+
     public OrderSagaState getOrderStatus(String orderId) {
         return sagaOrchestrator.getSagaByOrderId(orderId);
     }
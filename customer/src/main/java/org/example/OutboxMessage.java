@@ -0,0 +1,8 @@
+package org.example;
+
+/**
+ * Message written to the SAGA outbox and published by {@link SagaOutboxRelay}
+ *
+ * @param key order ID of the SAGA the message belongs to
+ */
+public record OutboxMessage(String key, String exchange, String routingKey, Object payload) {}
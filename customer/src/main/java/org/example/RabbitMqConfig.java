@@ -1,48 +1,34 @@
 package org.example;
 
 import org.springframework.amqp.core.*;
-import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
-import org.springframework.amqp.rabbit.connection.ConnectionFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 /**
- * RabbitMQ configuration with SAGA pattern support.
- * Uses topic exchange for SAGA event routing.
+ * RabbitMQ topology of the orchestrator, see {@link SagaTopology}.
+ * Only replies and the order compensation command are consumed here; the
+ * lifecycle events published by the orchestrator go out on the notification
+ * fanout. Connections, converter and listener containers come from
+ * {@link AmqpAutoConfiguration}.
  */
 @Configuration
 public class RabbitMqConfig {
 
     // Existing queues
-    public static final String ORDER_QUEUE = "order_queue";
-    public static final String DRONE_QUEUE = "drone_queue";
+    public static final String ORDER_QUEUE = SagaTopology.ORDER_QUEUE;
+    public static final String DRONE_QUEUE = SagaTopology.DRONE_QUEUE;
 
-    // SAGA-specific exchange and queues
-    public static final String SAGA_EVENTS_EXCHANGE = "saga_events_exchange";
-    public static final String SAGA_EVENTS_QUEUE = "saga_events_queue";
-    public static final String SAGA_COMPENSATION_QUEUE = "saga_compensation_queue";
+    // SAGA-specific exchanges and queues
+    public static final String SAGA_EVENTS_EXCHANGE = SagaTopology.SAGA_EVENTS_EXCHANGE;
+    public static final String NOTIFICATIONS_EXCHANGE = SagaTopology.NOTIFICATIONS_EXCHANGE;
+    public static final String SAGA_EVENTS_QUEUE = SagaTopology.SAGA_EVENTS_QUEUE;
+    public static final String SAGA_COMPENSATION_QUEUE = SagaTopology.ORDER_COMPENSATION_QUEUE;
 
-    @Value("${spring.rabbitmq.host:localhost}")
-    private String rabbitmqHost;
-
-    @Value("${spring.rabbitmq.username:guest}")
-    private String rabbitmqUsername;
-
-    @Value("${spring.rabbitmq.password:guest}")
-    private String rabbitmqPassword;
-
-    // Existing queues
+    // Shards of the order requests, declared here too so none is lost before
+    // the delivery service is up
     @Bean
-    public Queue orderQueue() {
-        return new Queue(ORDER_QUEUE, true);
-    }
-
-    @Bean
-    public Queue droneQueue() {
-        return new Queue(DRONE_QUEUE, true);
+    public Declarables orderQueueShards(AmqpProperties amqp) {
+        return ShardedQueue.declarables(ORDER_QUEUE, amqp.sharding().shards());
     }
 
     // SAGA queues
@@ -51,23 +37,35 @@ public class RabbitMqConfig {
         return new Queue(SAGA_EVENTS_QUEUE, true);
     }
 
+    // Failed SAGA events wait here before another attempt, see SagaEventDispatcher
+    @Bean
+    public Declarables sagaEventsRetry(AmqpProperties amqp) {
+        return TieredRetry.declarables(SAGA_EVENTS_QUEUE, amqp.retry());
+    }
+
     @Bean
     public Queue sagaCompensationQueue() {
         return new Queue(SAGA_COMPENSATION_QUEUE, true);
     }
 
-    // Topic exchange for SAGA events
+    // Topic exchange for SAGA commands and replies
     @Bean
     public TopicExchange sagaEventsExchange() {
         return new TopicExchange(SAGA_EVENTS_EXCHANGE);
     }
 
-    // Bindings for SAGA events
+    // Fanout exchange for SAGA lifecycle notifications
+    @Bean
+    public FanoutExchange sagaNotificationsExchange() {
+        return new FanoutExchange(NOTIFICATIONS_EXCHANGE);
+    }
+
+    // Replies of delivery and drone only
     @Bean
     public Binding sagaEventsBinding(Queue sagaEventsQueue, TopicExchange sagaEventsExchange) {
         return BindingBuilder.bind(sagaEventsQueue)
                 .to(sagaEventsExchange)
-                .with("saga.*");
+                .with(SagaTopology.REPLIES);
     }
 
     // Bindings for compensation events
@@ -76,26 +74,6 @@ public class RabbitMqConfig {
                                            TopicExchange sagaEventsExchange) {
         return BindingBuilder.bind(sagaCompensationQueue)
                 .to(sagaEventsExchange)
-                .with("saga.compensate_order");
-    }
-
-    @Bean
-    public ConnectionFactory connectionFactory() {
-        CachingConnectionFactory factory = new CachingConnectionFactory(rabbitmqHost);
-        factory.setUsername(rabbitmqUsername);
-        factory.setPassword(rabbitmqPassword);
-        return factory;
-    }
-
-    @Bean
-    public Jackson2JsonMessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
-    }
-
-    @Bean
-    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
-        RabbitTemplate template = new RabbitTemplate(connectionFactory);
-        template.setMessageConverter(messageConverter());
-        return template;
+                .with(SagaTopology.COMPENSATE_ORDER);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,10 @@
+package org.example;
+
+/**
+ * Durability of SAGA state writes
+ */
+public enum SagaDurabilityMode {
+    SYNC,           // Every transition is written before the caller continues
+    GROUP_COMMIT,   // Transitions are batched; the caller waits for its batch to be flushed
+    ASYNC           // Transitions are batched and flushed in the background; events are acked once written
+}
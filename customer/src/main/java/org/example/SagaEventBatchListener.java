@@ -0,0 +1,265 @@
+package org.example;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Batch mode of SAGA event consumption, enabled with {@code saga.dispatch.batch.enabled}.
+ *
+ * The container hands over up to {@code batch-size} events, or whatever arrived within
+ * {@code batch-receive-timeout-ms} (settings of the {@code saga-events-batch} listener).
+ * A batch is then handled as a whole:
+ *
+ * - events are grouped by SAGA, keeping their arrival order within each group
+ * - SAGAs not held in memory are loaded with one {@code $in} query
+ * - each group is applied on the lane owning its SAGA, without waiting for writes
+ * - the resulting transitions are flushed together, as one bulk write
+ * - the batch is acked with a single multiple-ack once persisted
+ *
+ * When an event fails, the later events of its SAGA are not applied. As in
+ * {@link SagaEventDispatcher}, the failed event goes to its delay queue, or is
+ * parked, and the later ones are held back behind it; the rest of the batch is
+ * acked. Acked events are recorded with the {@link MessageDeduplicator}, which
+ * already dropped redelivered duplicates from the batch.
+ *
+ * Each SAGA waits for its own writes only. When they fail, the writer has already
+ * discarded them, so its events are retried onto the stored state the same way.
+ */
+@Service
+@ConditionalOnProperty(name = "saga.dispatch.batch.enabled", havingValue = "true")
+public class SagaEventBatchListener {
+    private static final Logger logger = LoggerFactory.getLogger(SagaEventBatchListener.class);
+
+    private final SagaEventDispatcher dispatcher;
+    private final OrderSagaOrchestrator orchestrator;
+    private final SagaStateWriter sagaWriter;
+    private final MessageDeduplicator deduplicator;
+    private final MessageConverter messageConverter;
+
+    private final DistributionSummary batchSizeSummary;
+    private final DistributionSummary sagasPerBatchSummary;
+    private final Counter retriedCounter;
+
+    public SagaEventBatchListener(SagaEventDispatcher dispatcher,
+                                  OrderSagaOrchestrator orchestrator,
+                                  SagaStateWriter sagaWriter,
+                                  MessageDeduplicator deduplicator,
+                                  MessageConverter messageConverter,
+                                  MeterRegistry registry) {
+        this.dispatcher = dispatcher;
+        this.orchestrator = orchestrator;
+        this.sagaWriter = sagaWriter;
+        this.deduplicator = deduplicator;
+        this.messageConverter = messageConverter;
+
+        this.batchSizeSummary = DistributionSummary.builder("saga_event_batch_size")
+                .description("SAGA events received per batch")
+                .register(registry);
+        this.sagasPerBatchSummary = DistributionSummary.builder("saga_event_batch_sagas")
+                .description("Distinct SAGAs per batch of events")
+                .register(registry);
+        this.retriedCounter = Counter.builder("saga_event_batch_retried_total")
+                .description("SAGA events of a batch sent for another attempt, failed or held back")
+                .register(registry);
+    }
+
+    @RabbitListener(id = "saga-events-batch", queues = RabbitMqConfig.SAGA_EVENTS_QUEUE, ackMode = "MANUAL",
+            containerFactory = AmqpAutoConfiguration.BATCH_CONTAINER_FACTORY)
+    public void onSagaEvents(List<Message> messages, Channel channel) {
+        Map<String, List<Delivery>> bySaga = new LinkedHashMap<>();
+        for (Message message : messages) {
+            SagaEvent event;
+            try {
+                event = convert(message);
+            } catch (MessageConversionException e) {
+                // Parked right away
+                dispatcher.retry(null, message, channel, e);
+                continue;
+            }
+            bySaga.computeIfAbsent(SagaEventDispatcher.partitionKey(event), k -> new ArrayList<>())
+                    .add(new Delivery(event, message));
+        }
+        batchSizeSummary.record(messages.size());
+        sagasPerBatchSummary.record(bySaga.size());
+        if (bySaga.isEmpty()) {
+            return;
+        }
+
+        List<CompletableFuture<Outcome>> groups = new ArrayList<>(bySaga.size());
+        Map<String, OrderSagaState> loaded = loadQuietly(bySaga);
+        bySaga.forEach((key, deliveries) ->
+                groups.add(dispatcher.submit(key, () -> apply(key, deliveries, loaded.get(key), channel))));
+
+        List<Outcome> outcomes = groups.stream().map(CompletableFuture::join).toList();
+        sagaWriter.requestFlush();
+        settle(outcomes, messages.size(), channel);
+    }
+
+    private SagaEvent convert(Message message) {
+        Object payload = messageConverter.fromMessage(message);
+        if (payload instanceof SagaEvent event) {
+            return event;
+        }
+        throw new MessageConversionException("Not a SAGA event: "
+                + (payload == null ? null : payload.getClass().getName()));
+    }
+
+    private Map<String, OrderSagaState> loadQuietly(Map<String, List<Delivery>> bySaga) {
+        try {
+            return orchestrator.loadSagas(bySaga.keySet());
+        } catch (RuntimeException e) {
+            // Each lane falls back to loading its own SAGA
+            logger.warn("Failed to load the SAGAs of a batch of {} events", bySaga.size(), e);
+            return Map.of();
+        }
+    }
+
+    /**
+     * Apply the events of one SAGA in order, stopping at the first failure. Events
+     * waiting behind a failed event of the SAGA are held back and settled right away.
+     * Runs on its lane.
+     */
+    private Outcome apply(String key, List<Delivery> deliveries, OrderSagaState loaded, Channel channel) {
+        List<Delivery> handled = new ArrayList<>(deliveries.size());
+        int[] applied = {0};
+        RuntimeException[] failure = {null};
+        CompletableFuture<Void> persisted = sagaWriter.deferringWaits(() -> {
+            if (loaded != null) {
+                orchestrator.adoptLoaded(loaded);
+            }
+            for (Delivery delivery : deliveries) {
+                if (failure[0] != null) {
+                    handled.add(delivery);
+                    continue;
+                }
+                if (dispatcher.holdBack(key, delivery.message(), channel)) {
+                    retriedCounter.increment();
+                    continue;
+                }
+                handled.add(delivery);
+                try {
+                    orchestrator.handleSagaEvents(delivery.event());
+                } catch (RuntimeException e) {
+                    logger.error("SAGA event {} for order {} failed, holding back the {} after it",
+                            delivery.event().getEventType(), delivery.event().getOrderId(),
+                            deliveries.size() - deliveries.indexOf(delivery) - 1, e);
+                    failure[0] = e;
+                    continue;
+                }
+                applied[0]++;
+                dispatcher.succeeded(key, delivery.messageId());
+            }
+        });
+        return new Outcome(key, handled, applied[0], failure[0], persisted);
+    }
+
+    private void settle(List<Outcome> outcomes, int batchSize, Channel channel) {
+        List<Long> acks = new ArrayList<>();
+        for (Outcome outcome : outcomes) {
+            Throwable writeFailure = outcome.awaitPersisted();
+            List<Delivery> failed;
+            Throwable error;
+            if (writeFailure == null) {
+                for (Delivery delivery : outcome.deliveries().subList(0, outcome.applied())) {
+                    deduplicator.complete(RabbitMqConfig.SAGA_EVENTS_QUEUE, delivery.messageId());
+                    acks.add(delivery.deliveryTag());
+                }
+                failed = outcome.deliveries().subList(outcome.applied(), outcome.deliveries().size());
+                error = outcome.failure();
+            } else {
+                // Nothing of the SAGA was stored
+                failed = outcome.deliveries();
+                error = writeFailure;
+            }
+            if (!failed.isEmpty()) {
+                retriedCounter.increment(failed.size());
+                dispatcher.dispatch(outcome.key(), () -> retry(outcome.key(), failed, error, channel)).join();
+            }
+        }
+        if (acks.isEmpty()) {
+            return;
+        }
+
+        // Failed and held back events were settled on their lanes, which are done by now
+        synchronized (channel) {
+            try {
+                if (acks.size() == batchSize) {
+                    // The whole batch is the only unacked work of this channel
+                    channel.basicAck(acks.stream().mapToLong(Long::longValue).max().orElseThrow(), true);
+                    return;
+                }
+                for (long tag : acks) {
+                    channel.basicAck(tag, false);
+                }
+            } catch (IOException e) {
+                logger.error("Failed to settle a batch of {} SAGA events", acks.size(), e);
+            }
+        }
+    }
+
+    /**
+     * Send the first failed event of a SAGA for another attempt and hold back the
+     * ones after it. Runs on the lane of the SAGA.
+     */
+    private void retry(String key, List<Delivery> failed, Throwable error, Channel channel) {
+        dispatcher.retry(key, failed.get(0).message(), channel, error);
+        for (Delivery delivery : failed.subList(1, failed.size())) {
+            if (!dispatcher.holdBack(key, delivery.message(), channel)) {
+                // The failed event was parked and no longer holds them: redelivered once
+                deduplicator.release(RabbitMqConfig.SAGA_EVENTS_QUEUE, delivery.messageId());
+                SagaEventDispatcher.settle(channel, delivery.message(), false);
+            }
+        }
+    }
+
+    private record Delivery(SagaEvent event, Message message) {
+        long deliveryTag() {
+            return message.getMessageProperties().getDeliveryTag();
+        }
+
+        String messageId() {
+            return message.getMessageProperties().getMessageId();
+        }
+    }
+
+    /**
+     * Result of one SAGA's events not held back: how many were applied, the failure
+     * that stopped them if any, and their pending write
+     */
+    private record Outcome(String key, List<Delivery> deliveries, int applied, RuntimeException failure,
+                           CompletableFuture<Void> persisted) {
+        /**
+         * @return why the write failed, or null once it is stored
+         */
+        Throwable awaitPersisted() {
+            try {
+                persisted.join();
+                return null;
+            } catch (CompletionException e) {
+                logger.error("Failed to persist SAGA events for order {}", key, e.getCause());
+                return e.getCause();
+            } catch (RuntimeException e) {
+                logger.error("Failed to persist SAGA events for order {}", key, e);
+                return e;
+            }
+        }
+    }
+}
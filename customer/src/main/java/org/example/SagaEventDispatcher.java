@@ -0,0 +1,265 @@
+package org.example;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Partitioned dispatcher for SAGA events.
+ *
+ * Every event is routed to a single-threaded lane chosen by hashing its order ID,
+ * so events of the same SAGA are applied strictly in arrival order (no lost
+ * read-modify-write updates), while different SAGAs are processed in parallel
+ * across all lanes. Messages are acknowledged manually once their lane is done,
+ * which is also when they are recorded with the {@link MessageDeduplicator}.
+ *
+ * A failed event goes through {@link TieredRetryRouter} instead of being requeued
+ * in place, where it would loop hot and let the SAGA's later events overtake it.
+ * Until it succeeds or is parked, later events of its order are sent to the same
+ * delay queue behind it, so they come back after it. The hold is kept in memory:
+ * after a restart, a held event may come back before the event it waited for,
+ * which the orchestrator handles as an out-of-order reply.
+ */
+@Service
+public class SagaEventDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(SagaEventDispatcher.class);
+
+    private final OrderSagaOrchestrator orchestrator;
+    private final MessageDeduplicator deduplicator;
+    private final TieredRetryRouter retryRouter;
+    private final ThreadPoolExecutor[] lanes;
+    // Order ID -> its failed event waiting in a delay queue; only touched on the order's lane
+    private final Map<String, Hold> held = new ConcurrentHashMap<>();
+
+    public SagaEventDispatcher(OrderSagaOrchestrator orchestrator,
+                               SagaTimeoutScheduler timeoutScheduler,
+                               MessageDeduplicator deduplicator,
+                               TieredRetryRouter retryRouter,
+                               MeterRegistry registry,
+                               @Value("${saga.dispatch.lanes:0}") int laneCount) {
+        this.orchestrator = orchestrator;
+        this.deduplicator = deduplicator;
+        this.retryRouter = retryRouter;
+
+        int size = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors();
+        this.lanes = new ThreadPoolExecutor[size];
+        for (int i = 0; i < size; i++) {
+            String name = "saga-lane-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(), r -> new Thread(r, name));
+        }
+
+        Gauge.builder("saga_dispatch_backlog", lanes,
+                        l -> Arrays.stream(l).mapToInt(e -> e.getQueue().size()).sum())
+                .description("SAGA events waiting in dispatch lanes")
+                .register(registry);
+        Gauge.builder("saga_dispatch_lanes", lanes, l -> l.length)
+                .description("Number of SAGA dispatch lanes")
+                .register(registry);
+        Gauge.builder("saga_dispatch_held_orders", held, Map::size)
+                .description("Orders whose events wait behind a failed event")
+                .register(registry);
+
+        // Timeouts go through the same lanes, so they never race the SAGA's events
+        timeoutScheduler.onTimeout((orderId, step) ->
+                dispatch(orderId, () -> orchestrator.handleStepTimeout(orderId, step))
+                        .whenComplete((ignored, error) -> {
+                            if (error != null) {
+                                logger.error("Timeout of step {} for order {} failed", step, orderId, error);
+                            }
+                        }));
+    }
+
+    /**
+     * One event at a time; replaced by {@link SagaEventBatchListener} when
+     * {@code saga.dispatch.batch.enabled} is set
+     */
+    @RabbitListener(id = "saga-events", queues = RabbitMqConfig.SAGA_EVENTS_QUEUE, ackMode = "MANUAL",
+            autoStartup = "#{!${saga.dispatch.batch.enabled:false}}")
+    public void onSagaEvent(SagaEvent event, Message message, Channel channel) {
+        String key = partitionKey(event);
+        dispatch(key, () -> {
+            if (holdBack(key, message, channel)) {
+                return;
+            }
+            CompletableFuture<Void> persisted;
+            try {
+                persisted = orchestrator.handleSagaEvents(event);
+            } catch (RuntimeException e) {
+                logger.error("SAGA event {} for order {} failed", event.getEventType(), event.getOrderId(), e);
+                retry(key, message, channel, e);
+                return;
+            }
+            String messageId = message.getMessageProperties().getMessageId();
+            // Later events of the SAGA build on it; should its write fail, it holds them again
+            succeeded(key, messageId);
+            // Only pending in ASYNC mode, where the lane moves on before the write
+            persisted.whenComplete((written, writeFailure) -> {
+                if (writeFailure == null) {
+                    deduplicator.complete(RabbitMqConfig.SAGA_EVENTS_QUEUE, messageId);
+                    settle(channel, message, true);
+                } else {
+                    logger.error("Changes of SAGA event {} for order {} were not stored", event.getEventType(),
+                            event.getOrderId(), writeFailure);
+                    dispatch(key, () -> retry(key, message, channel, writeFailure));
+                }
+            });
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                logger.error("SAGA event {} for order {} failed, requeueing", event.getEventType(),
+                        event.getOrderId(), error);
+                deduplicator.release(RabbitMqConfig.SAGA_EVENTS_QUEUE, message.getMessageProperties().getMessageId());
+                settle(channel, message, false);
+            }
+        });
+    }
+
+    /**
+     * Send a failed event to its delay queue, or park it, and ack it once the copy
+     * is confirmed; when that publish fails it is requeued in place as before.
+     * Until it comes back and succeeds, later events of its SAGA are held back.
+     * Runs on the lane of the key, if any: unconvertible messages have none.
+     */
+    void retry(String key, Message message, Channel channel, Throwable error) {
+        String messageId = message.getMessageProperties().getMessageId();
+        deduplicator.release(RabbitMqConfig.SAGA_EVENTS_QUEUE, messageId);
+        long delayMs;
+        try {
+            delayMs = retryRouter.reroute(message, error);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.error("Failed to reroute SAGA event {} of order {}, requeueing", messageId, key, e);
+            settle(channel, message, false);
+            return;
+        }
+        if (key != null) {
+            if (delayMs == TieredRetryRouter.PARKED || messageId == null) {
+                // Parked events no longer block their SAGA
+                held.remove(key);
+            } else {
+                held.put(key, new Hold(messageId, delayMs));
+            }
+        }
+        settle(channel, message, true);
+    }
+
+    /**
+     * When a failed event of the SAGA waits in a delay queue, send this later event
+     * to the same queue, behind it, and ack it. Runs on the lane of the key.
+     *
+     * @return whether the event was held back, or must be handled now
+     */
+    boolean holdBack(String key, Message message, Channel channel) {
+        String messageId = message.getMessageProperties().getMessageId();
+        Hold hold = held.get(key);
+        if (hold == null || hold.messageId().equals(messageId)) {
+            return false;
+        }
+        deduplicator.release(RabbitMqConfig.SAGA_EVENTS_QUEUE, messageId);
+        try {
+            retryRouter.delay(message, hold.delayMs());
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.error("Failed to hold back SAGA event {} of order {}, requeueing", messageId, key, e);
+            settle(channel, message, false);
+            return true;
+        }
+        logger.info("SAGA event {} of order {} held back behind failed event {}", messageId, key,
+                hold.messageId());
+        settle(channel, message, true);
+        return true;
+    }
+
+    /**
+     * The event was handled: if the SAGA's later events waited for it, they no longer do
+     */
+    void succeeded(String key, String messageId) {
+        Hold hold = held.get(key);
+        if (hold != null && hold.messageId().equals(messageId)) {
+            held.remove(key);
+        }
+    }
+
+    /**
+     * Run a task on the lane owning the given key.
+     */
+    public CompletableFuture<Void> dispatch(String key, Runnable task) {
+        return CompletableFuture.runAsync(task, laneFor(key));
+    }
+
+    /**
+     * Run a task producing a result on the lane owning the given key.
+     */
+    public <T> CompletableFuture<T> submit(String key, Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, laneFor(key));
+    }
+
+    int laneCount() {
+        return lanes.length;
+    }
+
+    private ThreadPoolExecutor laneFor(String key) {
+        int hash = key == null ? 0 : key.hashCode();
+        return lanes[Math.floorMod(hash, lanes.length)];
+    }
+
+    /**
+     * Producers do not always know the SAGA ID (delivery and drone send "unknown"),
+     * so the order ID is the stable key for a SAGA.
+     */
+    static String partitionKey(SagaEvent event) {
+        return event.getOrderId() != null ? event.getOrderId() : event.getSagaId();
+    }
+
+    static void settle(Channel channel, Message message, boolean success) {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        // Lanes ack concurrently on the consumer channel; keep frames serialized
+        synchronized (channel) {
+            try {
+                if (success) {
+                    channel.basicAck(deliveryTag, false);
+                } else {
+                    channel.basicNack(deliveryTag, false, true);
+                }
+            } catch (IOException e) {
+                logger.error("Failed to settle delivery {}", deliveryTag, e);
+            }
+        }
+    }
+
+    private record Hold(String messageId, long delayMs) {
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        for (ThreadPoolExecutor lane : lanes) {
+            if (!lane.awaitTermination(10, TimeUnit.SECONDS)) {
+                lane.shutdownNow();
+            }
+        }
+    }
+}
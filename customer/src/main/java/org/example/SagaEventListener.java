@@ -14,7 +14,7 @@ public class SagaEventListener {
         this.sagaRepository = sagaRepository;
     }
 
-    @RabbitListener(queues = RabbitMqConfig.SAGA_COMPENSATION_QUEUE)
+    @RabbitListener(id = "order-compensation", queues = RabbitMqConfig.SAGA_COMPENSATION_QUEUE)
     public void handleCompensateOrder(CompensateOrderEvent event) {
         logger.warn("❌ Starting Order compensation {} for SAGA {}. Reason: {}",
                 event.getOrderId(), event.getSagaId(), event.getReason());
@@ -0,0 +1,62 @@
+package org.example;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Ensures the indexes declared on {@link OrderSagaState} exist before the service
+ * starts consuming, and reports indexes on {@code order_sagas} that are no longer
+ * declared (dropping them when {@code saga.indexes.drop-undeclared} is set).
+ */
+@Component
+public class SagaIndexInitializer {
+    private static final Logger logger = LoggerFactory.getLogger(SagaIndexInitializer.class);
+    private static final String ID_INDEX = "_id_";
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean dropUndeclared;
+
+    public SagaIndexInitializer(MongoTemplate mongoTemplate,
+                                @Value("${saga.indexes.drop-undeclared:false}") boolean dropUndeclared) {
+        this.mongoTemplate = mongoTemplate;
+        this.dropUndeclared = dropUndeclared;
+    }
+
+    @PostConstruct
+    public void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(OrderSagaState.class);
+        MongoPersistentEntityIndexResolver resolver =
+                new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+
+        Set<String> declared = new HashSet<>();
+        declared.add(ID_INDEX);
+        for (IndexDefinition index : resolver.resolveIndexFor(OrderSagaState.class)) {
+            String name = indexOps.ensureIndex(index);
+            declared.add(name);
+            logger.info("Ensured index {} {} on order_sagas", name, index.getIndexKeys().toJson());
+        }
+
+        for (IndexInfo existing : indexOps.getIndexInfo()) {
+            if (declared.contains(existing.getName())) {
+                continue;
+            }
+            if (dropUndeclared) {
+                indexOps.dropIndex(existing.getName());
+                logger.warn("Dropped undeclared index {} on order_sagas", existing.getName());
+            } else {
+                logger.warn("Index {} on order_sagas is not declared on OrderSagaState", existing.getName());
+            }
+        }
+    }
+}
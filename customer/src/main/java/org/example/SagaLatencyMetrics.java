@@ -0,0 +1,66 @@
+package org.example;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Latency timers of the order SAGA, published with percentile histograms so
+ * p50/p95/p99 can be aggregated across instances.
+ *
+ * - saga_step_duration{step, outcome}: time spent in each step
+ * - saga_duration{outcome}: SAGA start to completion or end of compensation
+ * - saga_compensation_duration{outcome}: start to end of compensation
+ * - saga_drone_assigned_to_completion{outcome}: DroneAssignedEvent to completeOrderSaga
+ */
+class SagaLatencyMetrics {
+    static final String SUCCESS = "success";
+    static final String FAILURE = "failure";
+    static final String COMPLETED = "completed";
+    static final String COMPENSATED = "compensated";
+
+    private final MeterRegistry registry;
+
+    SagaLatencyMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    void recordStep(SagaStep step, String outcome, LocalDateTime startedAt, LocalDateTime endedAt) {
+        record(Timer.builder("saga_step_duration")
+                .tag("step", step.name())
+                .tag("outcome", outcome)
+                .description("Time spent in a SAGA step"), startedAt, endedAt);
+    }
+
+    void recordSaga(String outcome, LocalDateTime startedAt, LocalDateTime endedAt) {
+        record(Timer.builder("saga_duration")
+                .tag("outcome", outcome)
+                .description("End-to-end SAGA duration"), startedAt, endedAt);
+    }
+
+    void recordCompensation(String outcome, LocalDateTime startedAt, LocalDateTime endedAt) {
+        record(Timer.builder("saga_compensation_duration")
+                .tag("outcome", outcome)
+                .description("Time to run the compensating transactions of a SAGA"), startedAt, endedAt);
+    }
+
+    void recordDroneAssignedToCompletion(String outcome, LocalDateTime assignedAt, LocalDateTime completedAt) {
+        record(Timer.builder("saga_drone_assigned_to_completion")
+                .tag("outcome", outcome)
+                .description("Time from the drone assignment event to SAGA completion"), assignedAt, completedAt);
+    }
+
+    /**
+     * Timestamps missing on SAGAs stored before they were recorded are skipped
+     */
+    private void record(Timer.Builder timer, LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null) {
+            return;
+        }
+        timer.publishPercentileHistogram()
+                .register(registry)
+                .record(Duration.between(from, to));
+    }
+}
@@ -0,0 +1,101 @@
+package org.example;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The {@code saga_outbox} collection: messages written in the same transaction as
+ * the SAGA change that produced them, waiting for {@link SagaOutboxRelay}.
+ *
+ * Messages are stored already converted, as the AMQP body and properties, so the
+ * relay sends them as-is. Their {@code _id} is generated when they are written,
+ * which keeps them in write order, and doubles as message ID: a message relayed
+ * twice is recognized as a duplicate by its consumers.
+ */
+@Service
+public class SagaOutbox {
+    public static final String COLLECTION = "saga_outbox";
+
+    private final MongoTemplate mongoTemplate;
+    private final MessageConverter messageConverter;
+
+    public SagaOutbox(MongoTemplate mongoTemplate, MessageConverter messageConverter) {
+        this.mongoTemplate = mongoTemplate;
+        this.messageConverter = messageConverter;
+    }
+
+    /**
+     * Outbox documents of the given messages, in order
+     */
+    public List<Document> toDocuments(Collection<OutboxMessage> messages) {
+        Date now = new Date();
+        return messages.stream().map(message -> toDocument(message, now)).toList();
+    }
+
+    private Document toDocument(OutboxMessage outgoing, Date createdAt) {
+        Message message = messageConverter.toMessage(outgoing.payload(), new MessageProperties());
+        MessageProperties properties = message.getMessageProperties();
+        return new Document("_id", new ObjectId())
+                .append("key", outgoing.key())
+                .append("exchange", outgoing.exchange())
+                .append("routingKey", outgoing.routingKey())
+                .append("contentType", properties.getContentType())
+                .append("contentEncoding", properties.getContentEncoding())
+                .append("headers", new Document(properties.getHeaders()))
+                .append("body", new Binary(message.getBody()))
+                .append("createdAt", createdAt);
+    }
+
+    /**
+     * Write outbox documents; joins the transaction of the caller, if any
+     */
+    public void insert(List<Document> documents) {
+        mongoTemplate.insert(documents, COLLECTION);
+    }
+
+    /**
+     * Oldest messages waiting to be published
+     */
+    public List<Document> findBatch(int limit) {
+        Query query = new Query().with(Sort.by("_id")).limit(limit);
+        return mongoTemplate.find(query, Document.class, COLLECTION);
+    }
+
+    /**
+     * Remove published messages
+     */
+    public void delete(Collection<Object> ids) {
+        if (!ids.isEmpty()) {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), COLLECTION);
+        }
+    }
+
+    /**
+     * AMQP message stored in an outbox document
+     */
+    public static Message toMessage(Document document) {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(String.valueOf(document.get("_id")));
+        properties.setContentType(document.getString("contentType"));
+        properties.setContentEncoding(document.getString("contentEncoding"));
+        Document headers = document.get("headers", Document.class);
+        if (headers != null) {
+            headers.forEach(properties::setHeader);
+        }
+        Object body = document.get("body");
+        return new Message(body instanceof Binary binary ? binary.getData() : (byte[]) body, properties);
+    }
+}
@@ -0,0 +1,170 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publishes the messages of the {@link SagaOutbox}.
+ *
+ * The outbox is tailed by polling, oldest message first, up to {@code batch-size}
+ * messages at a time. A batch is published through {@link ConfirmingPublisher}
+ * without waiting between orders; once the broker confirmed them, the confirmed
+ * messages are deleted with one query. Messages that could not be published stay
+ * in the outbox and are retried with the next poll.
+ *
+ * Messages of the same order go out in outbox order: an order's next message is
+ * only published once the previous one is confirmed, so after a nack or a confirm
+ * timeout its later messages are held back too, instead of overtaking it. A full batch is followed by the
+ * next one right away, so a backlog is drained without waiting for the poll interval.
+ *
+ * Delivery is at-least-once: a crash between the confirm and the delete publishes
+ * the batch again after restart.
+ */
+@Service
+public class SagaOutboxRelay {
+    private static final Logger logger = LoggerFactory.getLogger(SagaOutboxRelay.class);
+
+    private final SagaOutbox outbox;
+    private final ConfirmingPublisher publisher;
+    private final int batchSize;
+    private final long pollIntervalMs;
+    private final long confirmTimeoutMs;
+    private ScheduledExecutorService poller;
+
+    private final Counter relayedCounter;
+    private final Counter failedCounter;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer delayTimer;
+
+    public SagaOutboxRelay(SagaOutbox outbox,
+                           ConfirmingPublisher publisher,
+                           MeterRegistry registry,
+                           @Value("${saga.outbox.batch-size:500}") int batchSize,
+                           @Value("${saga.outbox.poll-interval-ms:20}") long pollIntervalMs,
+                           @Value("${saga.outbox.confirm-timeout-ms:30000}") long confirmTimeoutMs) {
+        this.outbox = outbox;
+        this.publisher = publisher;
+        this.batchSize = batchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+
+        this.relayedCounter = Counter.builder("saga_outbox_relayed_total")
+                .description("Outbox messages published and confirmed")
+                .register(registry);
+        this.failedCounter = Counter.builder("saga_outbox_relay_failures_total")
+                .description("Outbox messages left for the next poll after a failed publish")
+                .register(registry);
+        this.batchSizeSummary = DistributionSummary.builder("saga_outbox_relay_batch_size")
+                .description("Outbox messages published per batch")
+                .register(registry);
+        this.delayTimer = Timer.builder("saga_outbox_delay")
+                .description("Time from the outbox write to the broker confirm")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        poller = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "saga-outbox-relay"));
+        poller.scheduleWithFixedDelay(this::relayQuietly, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void relayQuietly() {
+        try {
+            while (relayBatch() == batchSize) {
+                // Backlog: keep draining
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.error("Outbox relay failed, retrying with the next poll", e);
+        }
+    }
+
+    /**
+     * Publish the oldest outbox messages and delete those the broker confirmed
+     *
+     * @return the number of messages confirmed
+     */
+    int relayBatch() throws InterruptedException {
+        List<Document> batch = outbox.findBatch(batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        // Per order, oldest first; each round publishes the next message of every order
+        Map<String, Deque<Document>> byOrder = new LinkedHashMap<>();
+        for (Document message : batch) {
+            byOrder.computeIfAbsent(message.getString("key"), k -> new ArrayDeque<>()).add(message);
+        }
+        List<Document> round = byOrder.values().stream().map(Deque::poll).toList();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        List<Object> confirmed = new ArrayList<>(batch.size());
+        while (!round.isEmpty()) {
+            List<CompletableFuture<Void>> confirms = new ArrayList<>(round.size());
+            for (Document message : round) {
+                confirms.add(publisher.publish(message.getString("key"), message.getString("exchange"),
+                        message.getString("routingKey"), SagaOutbox.toMessage(message)));
+            }
+
+            List<Document> next = new ArrayList<>();
+            for (int i = 0; i < round.size(); i++) {
+                Document message = round.get(i);
+                Deque<Document> later = byOrder.get(message.getString("key"));
+                try {
+                    confirms.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    confirmed.add(message.get("_id"));
+                    Date createdAt = message.getDate("createdAt");
+                    if (createdAt != null) {
+                        delayTimer.record(System.currentTimeMillis() - createdAt.getTime(), TimeUnit.MILLISECONDS);
+                    }
+                    if (!later.isEmpty()) {
+                        next.add(later.poll());
+                    }
+                } catch (ExecutionException | TimeoutException e) {
+                    failedCounter.increment();
+                    logger.warn("Outbox message {} for order {} not published, keeping it and the {} after it: {}",
+                            message.get("_id"), message.getString("key"), later.size(), e.getMessage());
+                }
+            }
+            round = next;
+        }
+
+        outbox.delete(confirmed);
+        relayedCounter.increment(confirmed.size());
+        batchSizeSummary.record(batch.size());
+        return confirmed.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.example;
+
+/**
+ * What to do with a SAGA found in flight after a restart
+ */
+public enum SagaRecoveryAction {
+    RESEND,         // Publish the request of the current step again
+    WAIT,           // Reply may still come: re-arm the step deadline
+    COMPENSATE      // Too late or already failing: roll back
+}
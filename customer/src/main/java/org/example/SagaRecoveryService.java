@@ -0,0 +1,175 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Resumes the SAGAs a previous run left in flight.
+ *
+ * Non-terminal SAGAs are streamed from {@code order_sagas} through a cursor in
+ * batches of {@code batch-size}, never materialized as a whole. Each one is resent,
+ * left waiting on its step deadline or compensated, on the dispatch lane owning its
+ * order so recovery never races live events of the same SAGA. At most
+ * {@code max-in-flight} SAGAs are queued on the lanes at once: the cursor is only
+ * advanced as fast as the lanes drain.
+ */
+@Service
+public class SagaRecoveryService {
+    private static final Logger logger = LoggerFactory.getLogger(SagaRecoveryService.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final OrderSagaOrchestrator orchestrator;
+    private final SagaEventDispatcher dispatcher;
+    private final SagaTimeoutScheduler timeoutScheduler;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final Duration resendAfter;
+
+    private final Timer durationTimer;
+    private final Map<SagaRecoveryAction, Counter> actionCounters = new EnumMap<>(SagaRecoveryAction.class);
+    private final Counter skippedCounter;
+    private final Counter failedCounter;
+    private volatile double lastThroughput;
+
+    public SagaRecoveryService(MongoTemplate mongoTemplate,
+                               OrderSagaOrchestrator orchestrator,
+                               SagaEventDispatcher dispatcher,
+                               SagaTimeoutScheduler timeoutScheduler,
+                               MeterRegistry registry,
+                               @Value("${saga.recovery.batch-size:500}") int batchSize,
+                               @Value("${saga.recovery.max-in-flight:1000}") int maxInFlight,
+                               @Value("${saga.recovery.resend-after-seconds:30}") long resendAfterSeconds) {
+        this.mongoTemplate = mongoTemplate;
+        this.orchestrator = orchestrator;
+        this.dispatcher = dispatcher;
+        this.timeoutScheduler = timeoutScheduler;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.resendAfter = Duration.ofSeconds(resendAfterSeconds);
+
+        this.durationTimer = Timer.builder("saga_recovery_duration")
+                .description("Time to resume all SAGAs left in flight at startup")
+                .register(registry);
+        for (SagaRecoveryAction action : SagaRecoveryAction.values()) {
+            actionCounters.put(action, Counter.builder("saga_recovery_sagas_total")
+                    .tag("action", action.name())
+                    .description("SAGAs resumed at startup")
+                    .register(registry));
+        }
+        this.skippedCounter = Counter.builder("saga_recovery_sagas_total")
+                .tag("action", "SKIPPED")
+                .description("SAGAs resumed at startup")
+                .register(registry);
+        this.failedCounter = Counter.builder("saga_recovery_failures_total")
+                .description("SAGAs that could not be resumed at startup")
+                .register(registry);
+        Gauge.builder("saga_recovery_throughput", this, s -> s.lastThroughput)
+                .description("SAGAs per second resumed by the last recovery")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread thread = new Thread(this::recover, "saga-recovery");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stream every non-terminal SAGA and resume it
+     *
+     * @return number of SAGAs handed to the lanes
+     */
+    public long recover() {
+        Query query = Query.query(Criteria.where("status").in(
+                SagaStatus.STARTED, SagaStatus.IN_PROGRESS, SagaStatus.FAILED, SagaStatus.COMPENSATING));
+        query.cursorBatchSize(batchSize);
+
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicLong resumed = new AtomicLong();
+        long started = System.nanoTime();
+        logger.info("Recovering in-flight SAGAs");
+
+        try (Stream<OrderSagaState> sagas = mongoTemplate.stream(query, OrderSagaState.class)) {
+            Iterator<OrderSagaState> cursor = sagas.iterator();
+            while (cursor.hasNext()) {
+                OrderSagaState saga = cursor.next();
+                SagaRecoveryAction action = decide(saga, LocalDateTime.now());
+                inFlight.acquireUninterruptibly();
+                dispatcher.dispatch(saga.getOrderId(), () -> {
+                    if (orchestrator.resumeSaga(saga, action)) {
+                        actionCounters.get(action).increment();
+                    } else {
+                        skippedCounter.increment();
+                    }
+                }).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        failedCounter.increment();
+                        logger.error("Failed to recover SAGA {} for order {}",
+                                saga.getSagaId(), saga.getOrderId(), error);
+                    }
+                    inFlight.release();
+                });
+                resumed.incrementAndGet();
+            }
+        }
+
+        // Wait for the lanes to finish the tail
+        inFlight.acquireUninterruptibly(maxInFlight);
+        long elapsed = System.nanoTime() - started;
+        durationTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        double perSecond = resumed.get() / Math.max(elapsed / 1e9, 1e-3);
+        lastThroughput = perSecond;
+
+        logger.info("Recovered {} SAGAs in {} ms ({} SAGAs/s)",
+                resumed.get(), TimeUnit.NANOSECONDS.toMillis(elapsed), Math.round(perSecond));
+        return resumed.get();
+    }
+
+    /**
+     * Decide how to resume a SAGA from how long it has been waiting on its step
+     */
+    SagaRecoveryAction decide(OrderSagaState saga, LocalDateTime now) {
+        if (saga.getStatus() == SagaStatus.FAILED || saga.getStatus() == SagaStatus.COMPENSATING) {
+            return SagaRecoveryAction.COMPENSATE;
+        }
+        SagaStep step = saga.getCurrentStep();
+        if (step == SagaStep.ORDER_VALIDATION) {
+            // Validation is local and was interrupted before its outcome was published
+            return SagaRecoveryAction.RESEND;
+        }
+
+        Duration waited = Duration.between(SagaTimeoutScheduler.stepStartedAt(saga), now);
+        Optional<Duration> timeout = timeoutScheduler.stepTimeout(step);
+        if (timeout.isPresent() && waited.compareTo(timeout.get()) >= 0) {
+            return SagaRecoveryAction.COMPENSATE;
+        }
+        // Drone assignment is requested by the Delivery Service, only the delivery request can be resent
+        if (step == SagaStep.DELIVERY_SCHEDULING && waited.compareTo(resendAfter) >= 0) {
+            return SagaRecoveryAction.RESEND;
+        }
+        return SagaRecoveryAction.WAIT;
+    }
+}
@@ -0,0 +1,177 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded in-memory cache of SAGA state, indexed by order ID and SAGA ID.
+ *
+ * In-flight SAGAs live in an LRU tier holding the same objects the orchestrator
+ * mutates, kept current by writing through after every persisted transition.
+ * Once a SAGA reaches a terminal status it moves to a second tier as a frozen
+ * copy that expires after a short TTL: status polls are served from memory while
+ * the SAGA is still being looked at, without pinning finished SAGAs forever.
+ */
+@Service
+public class SagaStateCache {
+    private final int maxLive;
+    private final int maxTerminal;
+    private final long terminalTtlMillis;
+
+    private final Counter liveHits;
+    private final Counter terminalHits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter expirations;
+
+    // All guarded by "this"
+    private final LinkedHashMap<String, OrderSagaState> live = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Frozen> terminal = new LinkedHashMap<>();
+    private final Map<String, String> orderIdBySagaId = new HashMap<>();
+
+    public SagaStateCache(MeterRegistry registry,
+                          @Value("${saga.cache.max-live:10000}") int maxLive,
+                          @Value("${saga.cache.max-terminal:10000}") int maxTerminal,
+                          @Value("${saga.cache.terminal-ttl-seconds:30}") long terminalTtlSeconds) {
+        this.maxLive = maxLive;
+        this.maxTerminal = maxTerminal;
+        this.terminalTtlMillis = terminalTtlSeconds * 1000;
+
+        this.liveHits = Counter.builder("saga_cache_hits_total")
+                .tag("tier", "live")
+                .description("SAGA lookups served from memory")
+                .register(registry);
+        this.terminalHits = Counter.builder("saga_cache_hits_total")
+                .tag("tier", "terminal")
+                .description("SAGA lookups served from memory")
+                .register(registry);
+        this.misses = Counter.builder("saga_cache_misses_total")
+                .description("SAGA lookups that had to go to MongoDB")
+                .register(registry);
+        this.sizeEvictions = Counter.builder("saga_cache_evictions_total")
+                .tag("reason", "size")
+                .description("SAGAs dropped from the cache")
+                .register(registry);
+        this.expirations = Counter.builder("saga_cache_evictions_total")
+                .tag("reason", "expired")
+                .description("SAGAs dropped from the cache")
+                .register(registry);
+        Gauge.builder("saga_cache_size", this, c -> c.size(false))
+                .tag("tier", "live")
+                .description("SAGAs held in memory")
+                .register(registry);
+        Gauge.builder("saga_cache_size", this, c -> c.size(true))
+                .tag("tier", "terminal")
+                .description("SAGAs held in memory")
+                .register(registry);
+    }
+
+    /**
+     * Cached SAGA for an order. Terminal SAGAs are returned as detached copies.
+     */
+    public synchronized Optional<OrderSagaState> getByOrderId(String orderId) {
+        OrderSagaState saga = live.get(orderId);
+        if (saga != null) {
+            liveHits.increment();
+            return Optional.of(saga);
+        }
+
+        Frozen frozen = terminal.get(orderId);
+        if (frozen != null) {
+            if (frozen.expiresAt() > System.currentTimeMillis()) {
+                terminalHits.increment();
+                return Optional.of(frozen.saga().copy());
+            }
+            removeTerminal(orderId);
+            expirations.increment();
+        }
+
+        misses.increment();
+        return Optional.empty();
+    }
+
+    public synchronized Optional<OrderSagaState> getBySagaId(String sagaId) {
+        String orderId = orderIdBySagaId.get(sagaId);
+        if (orderId == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        return getByOrderId(orderId);
+    }
+
+    /**
+     * Record the latest state of a SAGA (write-through after it was persisted)
+     */
+    public synchronized void put(OrderSagaState saga) {
+        String orderId = saga.getOrderId();
+        orderIdBySagaId.put(saga.getSagaId(), orderId);
+
+        if (saga.getStatus().isTerminal()) {
+            live.remove(orderId);
+            terminal.remove(orderId);
+            terminal.put(orderId, new Frozen(saga.copy(), System.currentTimeMillis() + terminalTtlMillis));
+            trimTerminal();
+        } else {
+            terminal.remove(orderId);
+            live.put(orderId, saga);
+            trimLive();
+        }
+    }
+
+    public synchronized void invalidate(String orderId) {
+        OrderSagaState saga = live.remove(orderId);
+        if (saga != null) {
+            orderIdBySagaId.remove(saga.getSagaId());
+        }
+        removeTerminal(orderId);
+    }
+
+    private void trimLive() {
+        Iterator<OrderSagaState> eldest = live.values().iterator();
+        while (live.size() > maxLive && eldest.hasNext()) {
+            orderIdBySagaId.remove(eldest.next().getSagaId());
+            eldest.remove();
+            sizeEvictions.increment();
+        }
+    }
+
+    /**
+     * Entries share one TTL, so insertion order is also expiry order
+     */
+    private void trimTerminal() {
+        long now = System.currentTimeMillis();
+        Iterator<Frozen> eldest = terminal.values().iterator();
+        while (eldest.hasNext()) {
+            Frozen frozen = eldest.next();
+            boolean expired = frozen.expiresAt() <= now;
+            if (!expired && terminal.size() <= maxTerminal) {
+                break;
+            }
+            orderIdBySagaId.remove(frozen.saga().getSagaId());
+            eldest.remove();
+            (expired ? expirations : sizeEvictions).increment();
+        }
+    }
+
+    private void removeTerminal(String orderId) {
+        Frozen frozen = terminal.remove(orderId);
+        if (frozen != null) {
+            orderIdBySagaId.remove(frozen.saga().getSagaId());
+        }
+    }
+
+    private synchronized int size(boolean terminalTier) {
+        return terminalTier ? terminal.size() : live.size();
+    }
+
+    private record Frozen(OrderSagaState saga, long expiresAt) {}
+}
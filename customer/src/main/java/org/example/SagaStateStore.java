@@ -0,0 +1,256 @@
+package org.example;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Field-level persistence of SAGA state on top of {@link MongoTemplate}.
+ *
+ * New SAGAs are written as full documents; every later transition only sends the
+ * fields it changed, guarded by the document version. A version mismatch means
+ * another writer got there first: the transition was computed from stale state,
+ * so it is rejected with an {@link OptimisticLockingFailureException} instead of
+ * overwriting the concurrent change. The caller drops its copy of the SAGA and
+ * handles the event again on the stored state.
+ *
+ * Messages produced by a change are written to the {@link SagaOutbox} in the same
+ * transaction as the change itself, see {@link MongoConfig} for the replica set
+ * this needs. Changes without messages are written without a transaction.
+ */
+@Service
+public class SagaStateStore {
+    private static final Logger logger = LoggerFactory.getLogger(SagaStateStore.class);
+
+    // Everything the event handlers read; skips order details
+    private static final String[] EVENT_FIELDS = {
+            "orderId", "status", "currentStep", "stepStartedAt", "completedSteps", "stepCompletedAt",
+            "compensationStartedAt", "failureReason", "startTime", "endTime", "deliveryId", "droneId",
+            "version"
+    };
+
+    private final MongoTemplate mongoTemplate;
+    private final SagaOutbox outbox;
+    private final TransactionTemplate transactions;
+    private final Counter conflictCounter;
+
+    public SagaStateStore(MongoTemplate mongoTemplate,
+                          SagaOutbox outbox,
+                          MongoTransactionManager transactionManager,
+                          MeterRegistry registry) {
+        this.mongoTemplate = mongoTemplate;
+        this.outbox = outbox;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.conflictCounter = Counter.builder("saga_persist_conflicts_total")
+                .description("SAGA transitions rejected after a concurrent update")
+                .register(registry);
+    }
+
+    /**
+     * Full document of a SAGA, as it would be stored
+     */
+    public Document toDocument(OrderSagaState saga) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(saga, document);
+        return document;
+    }
+
+    /**
+     * Create or overwrite a SAGA document
+     */
+    public void upsert(Document document) {
+        mongoTemplate.save(document, mongoTemplate.getCollectionName(OrderSagaState.class));
+    }
+
+    /**
+     * Create or overwrite a SAGA document together with its outbox messages
+     */
+    public void upsert(Document document, List<OutboxMessage> messages) {
+        withOutbox(messages, () -> {
+            upsert(document);
+            return null;
+        });
+    }
+
+    /**
+     * Insert new SAGAs with a single insertMany, along with their queued outbox
+     * messages. Their versions are initialized and their pending changes dropped,
+     * as they are now stored in full.
+     */
+    public void insertAll(Collection<OrderSagaState> sagas) {
+        List<OutboxMessage> messages = sagas.stream()
+                .flatMap(saga -> saga.drainOutbox().stream())
+                .toList();
+        withOutbox(messages, () -> mongoTemplate.insert(sagas, OrderSagaState.class));
+        sagas.forEach(OrderSagaState::clearChanges);
+    }
+
+    /**
+     * Apply a transition together with its outbox messages; the transition may be
+     * empty when a change only publishes
+     */
+    public void apply(SagaTransition transition, List<OutboxMessage> messages) {
+        withOutbox(messages, () -> {
+            if (!transition.isEmpty()) {
+                apply(transition);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Apply a transition guarded by its expected version
+     *
+     * @throws OptimisticLockingFailureException if the SAGA was changed concurrently
+     */
+    public void apply(SagaTransition transition) {
+        UpdateResult result = mongoTemplate.updateFirst(
+                transition.toQuery(), transition.toUpdate(), OrderSagaState.class);
+        if (result.getMatchedCount() == 0) {
+            Set<String> conflicts = findConflicts(List.of(transition));
+            if (!conflicts.isEmpty()) {
+                throw new ConflictException(conflicts);
+            }
+        }
+    }
+
+    /**
+     * Write new SAGA documents, transitions and their outbox messages as one bulk
+     * operation. The outbox messages are only kept if every transition applies.
+     *
+     * @throws ConflictException naming the SAGAs that were changed concurrently;
+     *                           with outbox messages nothing of the batch is written
+     */
+    public BulkWriteResult writeBatch(Collection<Document> documents, Collection<SagaTransition> transitions,
+                                      List<OutboxMessage> messages) {
+        return withOutbox(messages, () -> {
+            BulkWriteResult result = writeBatch(documents, transitions);
+            if (result.getMatchedCount() + result.getUpserts().size() < documents.size() + transitions.size()) {
+                Set<String> conflicts = findConflicts(transitions);
+                if (!conflicts.isEmpty()) {
+                    throw new ConflictException(conflicts);
+                }
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Write new SAGA documents and transitions in one ordered bulk operation:
+     * a transition made after a retried insert applies on top of its document
+     */
+    public BulkWriteResult writeBatch(Collection<Document> documents, Collection<SagaTransition> transitions) {
+        if (documents.isEmpty() && transitions.isEmpty()) {
+            return BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of());
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, OrderSagaState.class);
+        for (Document document : documents) {
+            bulk.replaceOne(Query.query(Criteria.where("_id").is(document.get("_id"))),
+                    document, FindAndReplaceOptions.options().upsert());
+        }
+        for (SagaTransition transition : transitions) {
+            bulk.updateOne(transition.toQuery(), transition.toUpdate());
+        }
+        return bulk.execute();
+    }
+
+    /**
+     * Run a SAGA write and insert the outbox documents of its messages in one transaction
+     */
+    private <T> T withOutbox(List<OutboxMessage> messages, Supplier<T> write) {
+        if (messages.isEmpty()) {
+            return write.get();
+        }
+        // Converted before the transaction opens, to keep it short
+        List<Document> documents = outbox.toDocuments(messages);
+        return transactions.execute(status -> {
+            T result = write.get();
+            outbox.insert(documents);
+            return result;
+        });
+    }
+
+    /**
+     * SAGAs whose stored version is not the one the given transitions lead to:
+     * they were changed by another writer rather than by an earlier attempt
+     */
+    private Set<String> findConflicts(Collection<SagaTransition> transitions) {
+        Query query = Query.query(Criteria.where("_id").in(
+                transitions.stream().map(SagaTransition::sagaId).toList()));
+        query.fields().include("version");
+        Map<String, Long> stored = mongoTemplate.find(query, OrderSagaState.class).stream()
+                .collect(Collectors.toMap(OrderSagaState::getSagaId, OrderSagaState::getVersion));
+
+        Set<String> conflicts = new HashSet<>();
+        for (SagaTransition transition : transitions) {
+            if (!transition.isAppliedAt(stored.get(transition.sagaId()))) {
+                conflictCounter.increment();
+                logger.warn("SAGA {}: version conflict (expected {}, stored {})",
+                        transition.sagaId(), transition.expectedVersion(), stored.get(transition.sagaId()));
+                conflicts.add(transition.sagaId());
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * SAGAs of several orders with one {@code $in} query, with only the fields
+     * needed to handle their events; marked as without order details
+     */
+    public List<OrderSagaState> findAllForEvents(Collection<String> orderIds) {
+        Query query = Query.query(Criteria.where("orderId").in(orderIds));
+        query.fields().include(EVENT_FIELDS);
+        return mongoTemplate.find(query, OrderSagaState.class).stream()
+                .map(OrderSagaState::withoutOrderDetails)
+                .toList();
+    }
+
+    /**
+     * SAGA for an order with only the fields needed to handle its events; marked
+     * as without order details
+     */
+    public Optional<OrderSagaState> findForEvent(String orderId) {
+        Query query = Query.query(Criteria.where("orderId").is(orderId));
+        query.fields().include(EVENT_FIELDS);
+        return Optional.ofNullable(mongoTemplate.findOne(query, OrderSagaState.class))
+                .map(OrderSagaState::withoutOrderDetails);
+    }
+
+    /**
+     * Transitions rejected because their SAGAs were changed by another writer
+     */
+    public static class ConflictException extends OptimisticLockingFailureException {
+        private final Set<String> sagaIds;
+
+        public ConflictException(Set<String> sagaIds) {
+            super("SAGAs changed concurrently: " + sagaIds);
+            this.sagaIds = sagaIds;
+        }
+
+        public Set<String> getSagaIds() {
+            return sagaIds;
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence for SAGA state.
+ *
+ * A new SAGA is written as a full document, every later write as the field-level
+ * {@link SagaTransition} drained from the SAGA. Consecutive writes of the same SAGA
+ * are coalesced (a pending insert absorbs later changes, pending transitions are
+ * merged) and flushed to {@code order_sagas} as a single bulk write, either when
+ * the buffer reaches {@code batch-size} or every {@code flush-interval-ms}.
+ * Buffered SAGAs stay readable through {@link #findPending(String)} until their
+ * batch is acknowledged by MongoDB.
+ *
+ * A batch that fails to write is either retried or reported, never both: ASYNC
+ * writes are put back in the buffer, while writes someone waits for are dropped,
+ * along with the cached state of their SAGAs, and fail their callers. Changes of
+ * SAGAs updated concurrently by another writer are always dropped that way; under
+ * ASYNC too, their events are only acked once written (see {@link #writingOnce}),
+ * so such events are retried rather than lost.
+ *
+ * Messages queued on a SAGA through {@link OrderSagaState#publish} travel with its
+ * changes and are written to the outbox in the same transaction.
+ */
+@Service
+public class SagaStateWriter {
+    private static final Logger logger = LoggerFactory.getLogger(SagaStateWriter.class);
+
+    private final SagaStateStore sagaStore;
+    private final SagaStateCache sagaCache;
+    private final SagaDurabilityMode mode;
+    private final int batchSize;
+    private final ScheduledExecutorService flusher;
+
+    private final Counter writeCounter;
+    private final Counter coalescedCounter;
+    private final DistributionSummary batchSizeSummary;
+
+    // Keyed by order ID, guarded by "this"
+    private Map<String, Pending> pending = new LinkedHashMap<>();
+    // Batch being written; only touched by the flusher thread, read by lookups
+    private volatile Map<String, Pending> inFlight = Map.of();
+    // Writes of GROUP_COMMIT callers on the current thread that were told not to wait
+    private final ThreadLocal<Deferral> deferred = new ThreadLocal<>();
+
+    public SagaStateWriter(SagaStateStore sagaStore,
+                           SagaStateCache sagaCache,
+                           MeterRegistry registry,
+                           @Value("${saga.persistence.mode:GROUP_COMMIT}") SagaDurabilityMode mode,
+                           @Value("${saga.persistence.batch-size:200}") int batchSize,
+                           @Value("${saga.persistence.flush-interval-ms:10}") long flushIntervalMs) {
+        this.sagaStore = sagaStore;
+        this.sagaCache = sagaCache;
+        this.mode = mode;
+        this.batchSize = batchSize;
+
+        this.writeCounter = Counter.builder("saga_persist_writes_total")
+                .description("SAGA state transitions submitted for persistence")
+                .register(registry);
+        this.coalescedCounter = Counter.builder("saga_persist_coalesced_total")
+                .description("SAGA state transitions merged into a pending write")
+                .register(registry);
+        this.batchSizeSummary = DistributionSummary.builder("saga_persist_batch_size")
+                .description("SAGA documents per bulk write")
+                .register(registry);
+
+        if (mode == SagaDurabilityMode.SYNC) {
+            this.flusher = null;
+        } else {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "saga-write-behind"));
+            this.flusher.scheduleWithFixedDelay(this::flushQuietly,
+                    flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Persist the changes of a SAGA according to the configured durability mode.
+     * Must be called by the thread owning the SAGA.
+     */
+    public void write(OrderSagaState saga) {
+        List<OutboxMessage> messages = saga.drainOutbox();
+        Pending write;
+        if (saga.getVersion() == null) {
+            saga.clearChanges();
+            saga.setVersion(0L);
+            write = new Pending(saga, sagaStore.toDocument(saga), null, messages, new CompletableFuture<>());
+        } else {
+            SagaTransition transition = saga.drainChanges();
+            if (transition.isEmpty() && messages.isEmpty()) {
+                return;
+            }
+            write = new Pending(saga, null, transition, messages, new CompletableFuture<>());
+        }
+        writeCounter.increment();
+
+        if (mode == SagaDurabilityMode.SYNC) {
+            if (write.document() != null) {
+                sagaStore.upsert(write.document(), write.messages());
+            } else {
+                sagaStore.apply(write.transition(), write.messages());
+            }
+            return;
+        }
+
+        Deferral deferral = deferred.get();
+        CompletableFuture<Void> persisted;
+        boolean full;
+        synchronized (this) {
+            if (deferral != null) {
+                // Failed writes are discarded under this lock: nothing may build on them
+                deferral.rethrowFailure();
+            }
+            Pending existing = pending.get(saga.getOrderId());
+            if (existing != null) {
+                coalescedCounter.increment();
+                // A SAGA that is not inserted yet simply gets a fresher snapshot
+                write = existing.transition() == null
+                        ? new Pending(saga, sagaStore.toDocument(saga), null,
+                                concat(existing.messages(), write.messages()), existing.persisted())
+                        : existing.followedBy(write);
+            }
+            pending.put(saga.getOrderId(), write);
+            persisted = write.persisted();
+            full = pending.size() >= batchSize;
+        }
+
+        if (full) {
+            flusher.execute(this::flushQuietly);
+        }
+        if (deferral != null) {
+            deferral.waits().add(persisted);
+        } else if (mode == SagaDurabilityMode.GROUP_COMMIT) {
+            persisted.join();
+        }
+    }
+
+    /**
+     * Run work whose writes do not wait for their batch to be flushed, so many
+     * writes can share one bulk write. The returned future completes once all of
+     * them are persisted; call {@link #requestFlush()} to not wait for the interval.
+     * Nested in another such call, the writes are waited for by the outer one too.
+     * Once one of these writes failed, the later ones throw its failure instead of
+     * building on the changes that were lost.
+     */
+    public CompletableFuture<Void> deferringWaits(Runnable work) {
+        Deferral outer = deferred.get();
+        Deferral deferral = new Deferral(new ArrayList<>(), outer);
+        deferred.set(deferral);
+        try {
+            work.run();
+        } finally {
+            if (outer != null) {
+                outer.waits().addAll(deferral.waits());
+                deferred.set(outer);
+            } else {
+                deferred.remove();
+            }
+        }
+        return CompletableFuture.allOf(deferral.waits().toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Run one handling of an event, which may write its SAGA several times. Under
+     * GROUP_COMMIT its writes are waited for once at the end rather than once per
+     * write; under ASYNC they are not waited for, but the returned future completes
+     * once they are persisted, so the event is only acked then. Inside
+     * {@link #deferringWaits} the waiting is left to that caller.
+     */
+    public CompletableFuture<Void> writingOnce(Runnable work) {
+        if (mode == SagaDurabilityMode.SYNC || deferred.get() != null) {
+            work.run();
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> persisted = deferringWaits(work);
+        if (mode == SagaDurabilityMode.GROUP_COMMIT) {
+            persisted.join();
+        }
+        return persisted;
+    }
+
+    /**
+     * Run an action, such as recording a metric, once the writes made so far by the
+     * current thread are persisted: right away, unless they are deferred with
+     * {@link #deferringWaits}. Then it runs once they all succeed, and never if one fails
+     * and the event is retried.
+     */
+    public void afterWrites(Runnable action) {
+        Deferral deferral = deferred.get();
+        if (deferral == null || deferral.waits().isEmpty()) {
+            action.run();
+            return;
+        }
+        CompletableFuture.allOf(deferral.waits().toArray(CompletableFuture[]::new)).thenRun(action);
+    }
+
+    /**
+     * Flush the buffer on the write-behind thread now
+     */
+    public void requestFlush() {
+        if (flusher != null && !flusher.isShutdown()) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Latest not-yet-persisted state of the SAGA for an order, if any
+     */
+    public Optional<OrderSagaState> findPending(String orderId) {
+        synchronized (this) {
+            Optional<OrderSagaState> buffered = lookup(pending, orderId);
+            if (buffered.isPresent()) {
+                return buffered;
+            }
+        }
+        return lookup(inFlight, orderId);
+    }
+
+    /**
+     * Write all buffered SAGAs to MongoDB as one bulk operation
+     */
+    public void flush() {
+        Map<String, Pending> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            inFlight = batch;
+        }
+
+        try {
+            List<Document> documents = new ArrayList<>();
+            List<SagaTransition> transitions = new ArrayList<>();
+            List<OutboxMessage> messages = new ArrayList<>();
+            for (Pending entry : batch.values()) {
+                messages.addAll(entry.messages());
+                if (entry.document() != null) {
+                    documents.add(entry.document());
+                }
+                // Written after all documents, so also on top of a retried insert
+                if (entry.transition() != null && !entry.transition().isEmpty()) {
+                    transitions.add(entry.transition());
+                }
+            }
+
+            sagaStore.writeBatch(documents, transitions, messages);
+
+            batchSizeSummary.record(batch.size());
+            batch.values().forEach(entry -> entry.persisted().complete(null));
+        } catch (SagaStateStore.ConflictException e) {
+            // Changes made on stale state cannot succeed; the rest of the batch is
+            // retried, its writes that did get through are recognized as applied
+            Map<String, Pending> conflicting = new LinkedHashMap<>();
+            Map<String, Pending> rest = new LinkedHashMap<>();
+            batch.forEach((orderId, entry) ->
+                    (e.getSagaIds().contains(entry.saga().getSagaId()) ? conflicting : rest).put(orderId, entry));
+            logger.error("{} SAGA states were changed concurrently, discarding them and retrying {}",
+                    conflicting.size(), rest.size(), e);
+            requeue(rest);
+            discard(conflicting, e);
+            requestFlush();
+        } catch (RuntimeException e) {
+            if (mode == SagaDurabilityMode.ASYNC) {
+                // Nobody waits for an ASYNC write: keep it for the next batch
+                logger.error("Failed to flush {} SAGA states, retrying with the next batch", batch.size(), e);
+                requeue(batch);
+            } else {
+                // The writers are told and their events redelivered, which must start over
+                // from the stored state rather than re-apply on top of the lost changes
+                logger.error("Failed to flush {} SAGA states, discarding them", batch.size(), e);
+                discard(batch, e);
+            }
+        } finally {
+            inFlight = Map.of();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("SAGA write-behind flush failed", e);
+        }
+    }
+
+    /**
+     * Put a failed batch back in front of the transitions buffered since
+     */
+    private synchronized void requeue(Map<String, Pending> batch) {
+        Map<String, Pending> merged = new LinkedHashMap<>(batch);
+        pending.forEach((orderId, newer) -> merged.merge(orderId, newer, (failed, later) -> {
+            // The merged write settles with the failed one
+            failed.persisted().whenComplete((ignored, error) -> {
+                if (error != null) {
+                    later.persisted().completeExceptionally(error);
+                } else {
+                    later.persisted().complete(null);
+                }
+            });
+            return failed.followedBy(later);
+        }));
+        pending = merged;
+    }
+
+    /**
+     * Drop a failed batch and fail its writers. Changes buffered since for the same
+     * SAGAs were made on top of the lost ones, so they are dropped and failed too.
+     */
+    private void discard(Map<String, Pending> batch, RuntimeException cause) {
+        List<Pending> failed = new ArrayList<>(batch.values());
+        synchronized (this) {
+            for (String orderId : batch.keySet()) {
+                Pending later = pending.remove(orderId);
+                if (later != null) {
+                    failed.add(later);
+                }
+            }
+            inFlight = Map.of();
+            // Evicted before the writers wake up, so they cannot read the lost changes back
+            batch.keySet().forEach(sagaCache::invalidate);
+            failed.forEach(entry -> entry.persisted().completeExceptionally(cause));
+        }
+    }
+
+    private static List<OutboxMessage> concat(List<OutboxMessage> first, List<OutboxMessage> then) {
+        List<OutboxMessage> messages = new ArrayList<>(first);
+        messages.addAll(then);
+        return messages;
+    }
+
+    private static Optional<OrderSagaState> lookup(Map<String, Pending> entries, String orderId) {
+        return Optional.ofNullable(entries.get(orderId)).map(Pending::saga);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+    }
+
+    /**
+     * Writes of a {@link #deferringWaits} call, within the enclosing call if any
+     */
+    private record Deferral(List<CompletableFuture<Void>> waits, Deferral outer) {
+        void rethrowFailure() {
+            for (Deferral deferral = this; deferral != null; deferral = deferral.outer()) {
+                for (CompletableFuture<Void> write : deferral.waits()) {
+                    if (write.isCompletedExceptionally()) {
+                        write.join();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A buffered write: a full document for a new SAGA, a transition for a stored
+     * one, or both when changes were made while the insert was retried; plus the
+     * messages to write to the outbox with it, and what its writers wait for
+     */
+    private record Pending(OrderSagaState saga, Document document, SagaTransition transition,
+                           List<OutboxMessage> messages, CompletableFuture<Void> persisted) {
+        Pending followedBy(Pending next) {
+            return new Pending(saga, document,
+                    transition == null ? next.transition() : transition.merge(next.transition()),
+                    concat(messages, next.messages()), persisted);
+        }
+    }
+}
@@ -9,5 +9,12 @@ public enum SagaStatus {
     COMPLETED,      // All steps completed successfully
     FAILED,         // A step failed
     COMPENSATING,   // Rolling back completed steps
-    COMPENSATED     // Rollback completed
+    COMPENSATED;    // Rollback completed
+
+    /**
+     * A terminal SAGA never changes again
+     */
+    public boolean isTerminal() {
+        return this == COMPLETED || this == COMPENSATED;
+    }
 }
@@ -0,0 +1,169 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Per-step deadlines of in-flight SAGAs.
+ *
+ * Every persisted transition re-arms the deadline of the SAGA's current step in a
+ * {@link HierarchicalTimingWheel}, so arming and disarming stay O(1) however many
+ * SAGAs are waiting. A ticker thread advances the wheel and hands overrun steps to
+ * the registered handler. Deadlines only live in memory: on startup they are
+ * re-armed by {@link SagaRecoveryService} while it streams the in-flight SAGAs.
+ */
+@Service
+public class SagaTimeoutScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(SagaTimeoutScheduler.class);
+
+    private final long tickMillis;
+    private final Map<SagaStep, Duration> stepTimeouts = new EnumMap<>(SagaStep.class);
+    private final Map<SagaStep, Counter> firedCounters = new EnumMap<>(SagaStep.class);
+
+    // Both guarded by "this"
+    private final HierarchicalTimingWheel<Deadline> wheel;
+    private final Map<String, HierarchicalTimingWheel.Timeout<Deadline>> armed = new HashMap<>();
+
+    private volatile BiConsumer<String, SagaStep> handler = (orderId, step) -> {};
+    private ScheduledExecutorService ticker;
+
+    public SagaTimeoutScheduler(MeterRegistry registry,
+                                @Value("${saga.timeouts.tick-ms:100}") long tickMillis,
+                                @Value("${saga.timeouts.delivery-scheduling-seconds:60}") long deliverySeconds,
+                                @Value("${saga.timeouts.drone-assignment-seconds:120}") long droneSeconds) {
+        this.tickMillis = tickMillis;
+        // 64 slots x 4 levels covers 2^24 ticks, longer deadlines simply go round again
+        this.wheel = new HierarchicalTimingWheel<>(tickMillis, 64, 4, System.currentTimeMillis());
+
+        stepTimeouts.put(SagaStep.DELIVERY_SCHEDULING, Duration.ofSeconds(deliverySeconds));
+        stepTimeouts.put(SagaStep.DRONE_ASSIGNMENT, Duration.ofSeconds(droneSeconds));
+        for (SagaStep step : stepTimeouts.keySet()) {
+            firedCounters.put(step, Counter.builder("saga_timeouts_fired_total")
+                    .tag("step", step.name())
+                    .description("SAGA steps that overran their deadline")
+                    .register(registry));
+        }
+        Gauge.builder("saga_timeouts_pending", this, SagaTimeoutScheduler::pending)
+                .description("SAGA step deadlines currently armed")
+                .register(registry);
+    }
+
+    /**
+     * Set the callback invoked, on the ticker thread, for every overrun step
+     */
+    public void onTimeout(BiConsumer<String, SagaStep> handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Arm the deadline of the SAGA's current step, replacing any previous one,
+     * or disarm it when the SAGA is no longer waiting on another service
+     */
+    public void track(OrderSagaState saga) {
+        Duration timeout = timeoutFor(saga.getStatus(), saga.getCurrentStep());
+        synchronized (this) {
+            HierarchicalTimingWheel.Timeout<Deadline> previous = armed.remove(saga.getOrderId());
+            if (previous != null) {
+                wheel.cancel(previous);
+            }
+            if (timeout != null) {
+                arm(saga.getOrderId(), saga.getCurrentStep(), stepStartedAt(saga), timeout);
+            }
+        }
+    }
+
+    /**
+     * Whether the SAGA is still waiting on the given step
+     */
+    public static boolean isWaitingOn(OrderSagaState saga, SagaStep step) {
+        return saga.getCurrentStep() == step
+                && (saga.getStatus() == SagaStatus.STARTED || saga.getStatus() == SagaStatus.IN_PROGRESS);
+    }
+
+    /**
+     * When the SAGA entered its current step; documents written before step
+     * timestamps existed fall back to the SAGA start
+     */
+    public static LocalDateTime stepStartedAt(OrderSagaState saga) {
+        return saga.getStepStartedAt() != null ? saga.getStepStartedAt() : saga.getStartTime();
+    }
+
+    /**
+     * How long a SAGA may wait on a step, if that step is timed at all
+     */
+    public Optional<Duration> stepTimeout(SagaStep step) {
+        return Optional.ofNullable(stepTimeouts.get(step));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "saga-timeouts"));
+        ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Advance the wheel to the current time and fire the overrun steps
+     */
+    void tick() {
+        List<Deadline> expired;
+        synchronized (this) {
+            expired = wheel.advanceTo(System.currentTimeMillis());
+            expired.forEach(deadline -> armed.remove(deadline.orderId()));
+        }
+        for (Deadline deadline : expired) {
+            logger.warn("SAGA for order {}: step {} timed out", deadline.orderId(), deadline.step());
+            firedCounters.get(deadline.step()).increment();
+            try {
+                handler.accept(deadline.orderId(), deadline.step());
+            } catch (RuntimeException e) {
+                logger.error("Failed to handle timeout of order {}", deadline.orderId(), e);
+            }
+        }
+    }
+
+    private void arm(String orderId, SagaStep step, LocalDateTime startedAt, Duration timeout) {
+        long deadline = startedAt.plus(timeout).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        armed.put(orderId, wheel.schedule(new Deadline(orderId, step), deadline));
+    }
+
+    private Duration timeoutFor(SagaStatus status, SagaStep step) {
+        if (status != SagaStatus.STARTED && status != SagaStatus.IN_PROGRESS) {
+            return null;
+        }
+        return stepTimeouts.get(step);
+    }
+
+    private synchronized int pending() {
+        return armed.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    private record Deadline(String orderId, SagaStep step) {}
+}
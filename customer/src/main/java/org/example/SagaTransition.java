@@ -0,0 +1,78 @@
+package org.example;
+
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Field-level change of a persisted SAGA.
+ * Applied as a single {@code $set}/{@code $push}/{@code $inc} update guarded by the
+ * version the change was made against.
+ *
+ * @param expectedVersion version of the stored document the change applies to
+ * @param changes         fields to overwrite
+ * @param completedSteps  steps to append to {@code completedSteps}
+ * @param increments      number of in-memory transitions folded into this one
+ */
+public record SagaTransition(String sagaId, String orderId, long expectedVersion,
+                             Map<String, Object> changes, List<SagaStep> completedSteps,
+                             int increments) {
+
+    public boolean isEmpty() {
+        return changes.isEmpty() && completedSteps.isEmpty();
+    }
+
+    /**
+     * Version of the document once this transition is applied
+     */
+    public long resultingVersion() {
+        return expectedVersion + increments;
+    }
+
+    /**
+     * Fold a later transition of the same SAGA into this one
+     */
+    public SagaTransition merge(SagaTransition next) {
+        // An empty transition did not advance the version: nothing to fold
+        if (next.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return next;
+        }
+        Map<String, Object> mergedChanges = new LinkedHashMap<>(changes);
+        mergedChanges.putAll(next.changes);
+        List<SagaStep> mergedSteps = new ArrayList<>(completedSteps);
+        mergedSteps.addAll(next.completedSteps);
+        return new SagaTransition(sagaId, orderId, expectedVersion,
+                mergedChanges, mergedSteps, increments + next.increments);
+    }
+
+    /**
+     * Whether a stored document that did not match {@link #toQuery()} is at the version
+     * this transition leads to, i.e. it was already applied by an earlier attempt.
+     * Any other version means another writer changed the SAGA concurrently.
+     */
+    public boolean isAppliedAt(Long storedVersion) {
+        return storedVersion != null && storedVersion == resultingVersion();
+    }
+
+    public Query toQuery() {
+        return Query.query(Criteria.where("_id").is(sagaId).and("version").is(expectedVersion));
+    }
+
+    public Update toUpdate() {
+        Update update = new Update();
+        changes.forEach(update::set);
+        if (!completedSteps.isEmpty()) {
+            update.push("completedSteps").each(completedSteps.toArray());
+        }
+        update.inc("version", increments);
+        return update;
+    }
+}
@@ -0,0 +1,63 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HierarchicalTimingWheelTest {
+
+    @Test
+    void testDeadlinesFireOnTheirTickAcrossLevels() {
+        // 8 slots x 4 levels at 10ms: forces cascades through every level
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(10, 8, 4, 0);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            long deadline = 10 + random.nextInt(60_000);
+            deadlines.add(deadline);
+            wheel.schedule(deadline, deadline);
+        }
+
+        int fired = 0;
+        for (long now = 0; now <= 60_010; now += 10) {
+            for (long deadline : wheel.advanceTo(now)) {
+                // Deadlines are rounded up to the next tick
+                assertTrue(deadline <= now && now - deadline < 10, deadline + " fired at " + now);
+                fired++;
+            }
+        }
+
+        assertEquals(deadlines.size(), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testCancelledDeadlinesNeverFire() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(100, 64, 4, 0);
+        HierarchicalTimingWheel.Timeout<String> kept = wheel.schedule("kept", 5_000);
+        HierarchicalTimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 5_000);
+
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+
+        Set<String> fired = new HashSet<>(wheel.advanceTo(10_000));
+        assertEquals(Set.of("kept"), fired);
+        assertFalse(wheel.cancel(kept));
+    }
+
+    @Test
+    void testOverdueDeadlineFiresOnNextTick() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(100, 64, 4, 10_000);
+        wheel.schedule("overdue", 2_000);
+
+        assertEquals(List.of("overdue"), wheel.advanceTo(10_100));
+    }
+}
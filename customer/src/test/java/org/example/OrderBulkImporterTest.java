@@ -0,0 +1,79 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class OrderBulkImporterTest {
+
+    private static final String VALID = "{\"customerId\":\"c1\",\"fromAddress\":\"A\",\"toAddress\":\"B\","
+            + "\"packageWeight\":2.0,\"maxDeliveryTimeMinutes\":30}";
+    private static final String NO_WEIGHT = "{\"customerId\":\"c1\",\"fromAddress\":\"A\",\"toAddress\":\"B\","
+            + "\"packageWeight\":0,\"maxDeliveryTimeMinutes\":30}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private OrderSagaOrchestrator orchestrator;
+    private OrderBulkImporter importer;
+
+    @BeforeEach
+    void setUp() {
+        orchestrator = mock(OrderSagaOrchestrator.class);
+        importer = new OrderBulkImporter(orchestrator, objectMapper, new SimpleMeterRegistry(), 2);
+    }
+
+    @Test
+    void testNdjsonIsStartedInChunks() throws Exception {
+        List<JsonNode> results = run(String.join("\n", VALID, NO_WEIGHT, VALID, VALID) + "\n");
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).has("sagaId"));
+        assertEquals("Invalid package weight", results.get(1).get("error").asText());
+        assertEquals(4, results.get(3).get("line").asInt());
+        // Chunks of 2 lines: [valid, invalid], [valid, valid]
+        verify(orchestrator, times(2)).startValidatedSagas(anyList());
+    }
+
+    @Test
+    void testJsonArrayIsAccepted() throws Exception {
+        List<JsonNode> results = run("[" + VALID + "," + VALID + "," + VALID + "]");
+
+        assertEquals(3, results.size());
+        results.forEach(result -> assertFalse(result.has("error")));
+    }
+
+    @Test
+    void testMalformedInputStopsWithError() throws Exception {
+        List<JsonNode> results = run(VALID + "\n{\"customerId\": ");
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).has("orderId"));
+        assertTrue(results.get(1).get("error").asText().startsWith("Malformed order"));
+    }
+
+    private List<JsonNode> run(String body) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        importer.importOrders(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), output);
+        return output.toString(StandardCharsets.UTF_8).lines()
+                .map(line -> {
+                    try {
+                        return objectMapper.readTree(line);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .toList();
+    }
+}
@@ -0,0 +1,46 @@
+package org.example;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderIntakeQueueTest {
+
+    @Test
+    void testRejectsWhenQueueIsFull() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OrderIntakeQueue queue = new OrderIntakeQueue(registry, 1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+
+        // One task busy on the worker, two waiting in the queue
+        for (int i = 0; i < 3; i++) {
+            queue.submit(() -> {
+                await(release);
+                done.countDown();
+            });
+        }
+
+        assertThrows(RejectedExecutionException.class, () -> queue.submit(() -> {}));
+        assertEquals(1.0, registry.get("order_intake_rejected_total").counter().count());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        queue.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
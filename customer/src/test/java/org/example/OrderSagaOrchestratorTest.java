@@ -1,31 +1,49 @@
 package org.example;
 
+import com.mongodb.bulk.BulkWriteResult;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.mockito.ArgumentCaptor;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
 class OrderSagaOrchestratorTest {
 
     private OrderSagaRepository sagaRepository;
-    private RabbitTemplate rabbitTemplate;
+    private SagaStateStore sagaStore;
+    private SagaTimeoutScheduler timeoutScheduler;
+    private SimpleMeterRegistry meterRegistry;
+    private SagaStateCache sagaCache;
     private OrderSagaOrchestrator orchestrator;
 
     @BeforeEach
     void setUp() {
         // Mock dependencies
         sagaRepository = mock(OrderSagaRepository.class);
-        rabbitTemplate = mock(RabbitTemplate.class);
+        sagaStore = mock(SagaStateStore.class);
+        timeoutScheduler = mock(SagaTimeoutScheduler.class);
         // Use a SimpleMeterRegistry so metrics don't crash
-        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        meterRegistry = new SimpleMeterRegistry();
 
-        orchestrator = new OrderSagaOrchestrator(sagaRepository, rabbitTemplate, meterRegistry);
+        sagaCache = new SagaStateCache(meterRegistry, 100, 100, 30);
+
+        // SYNC mode writes straight through the store
+        SagaStateWriter sagaWriter = new SagaStateWriter(sagaStore, sagaCache, meterRegistry,
+                SagaDurabilityMode.SYNC, 1, 1);
+
+        orchestrator = new OrderSagaOrchestrator(sagaRepository, sagaStore, sagaWriter, sagaCache,
+                timeoutScheduler, meterRegistry);
     }
 
     @Test
@@ -39,8 +57,11 @@ class OrderSagaOrchestratorTest {
         );
 
         mockSaga.setCurrentStep(SagaStep.DELIVERY_SCHEDULING);
+        // Simulate a SAGA loaded from the store
+        mockSaga.setVersion(2L);
+        mockSaga.clearChanges();
 
-        when(sagaRepository.findByOrderId(orderId)).thenReturn(Optional.of(mockSaga));
+        when(sagaStore.findForEvent(orderId)).thenReturn(Optional.of(mockSaga));
 
         DeliveryScheduledEvent event = new DeliveryScheduledEvent(
                 "saga-1", orderId, deliveryId, LocalDateTime.now()
@@ -53,7 +74,213 @@ class OrderSagaOrchestratorTest {
         assertEquals(deliveryId, mockSaga.getDeliveryId());
         assertEquals(SagaStep.DRONE_ASSIGNMENT, mockSaga.getCurrentStep());
 
-        // Verify repository saved the updated state
-        verify(sagaRepository, times(1)).save(mockSaga);
+        // Verify only the changed fields were persisted, guarded by the loaded version
+        ArgumentCaptor<SagaTransition> transition = ArgumentCaptor.forClass(SagaTransition.class);
+        verify(sagaStore, times(1)).apply(transition.capture(), eq(List.of()));
+        assertEquals(2L, transition.getValue().expectedVersion());
+        assertEquals(deliveryId, transition.getValue().changes().get("deliveryId"));
+        assertEquals(SagaStep.DRONE_ASSIGNMENT, transition.getValue().changes().get("currentStep"));
+        assertEquals(List.of(SagaStep.DELIVERY_SCHEDULING), transition.getValue().completedSteps());
+
+        // Time spent waiting for the Delivery Service
+        assertEquals(1, meterRegistry.get("saga_step_duration")
+                .tag("step", "DELIVERY_SCHEDULING").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void testSagaLoadedForEventsIsReadWithItsOrderDetails() {
+        String orderId = "order-21";
+        OrderSagaState stored = new OrderSagaState(
+                "saga-21", orderId, "cust-1", "A", "B", 10.0, LocalDateTime.now(), 60
+        );
+        stored.setCurrentStep(SagaStep.DELIVERY_SCHEDULING);
+        stored.setVersion(2L);
+        stored.clearChanges();
+        // The projection leaves the order details out
+        OrderSagaState projected = new OrderSagaState("saga-21", orderId, null, null, null, 0, null, 0);
+        projected.setCurrentStep(SagaStep.DELIVERY_SCHEDULING);
+        projected.setVersion(2L);
+        projected.clearChanges();
+        when(sagaStore.findForEvent(orderId)).thenReturn(Optional.of(projected.withoutOrderDetails()));
+        when(sagaRepository.findById("saga-21")).thenReturn(Optional.of(stored));
+
+        orchestrator.handleSagaEvents(new DeliveryScheduledEvent("saga-21", orderId, "del-1", LocalDateTime.now()));
+
+        OrderSagaState read = orchestrator.getSagaByOrderId(orderId);
+        assertEquals("cust-1", read.getCustomerId());
+        assertEquals("A", read.getFromAddress());
+        assertEquals(10.0, read.getPackageWeight());
+        // Along with the latest state held in memory
+        assertEquals("del-1", read.getDeliveryId());
+        assertEquals(SagaStep.DRONE_ASSIGNMENT, read.getCurrentStep());
+        assertEquals("cust-1", orchestrator.getSagaState("saga-21").getCustomerId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testHandleStepTimeout_CompensatesStalledDroneAssignment() {
+        String orderId = "order-9";
+        OrderSagaState saga = new OrderSagaState(
+                "saga-9", orderId, "cust-1", "A", "B", 10.0, LocalDateTime.now(), 60
+        );
+        saga.markStepCompleted(SagaStep.ORDER_VALIDATION);
+        saga.markStepCompleted(SagaStep.DELIVERY_SCHEDULING);
+        saga.setCurrentStep(SagaStep.DRONE_ASSIGNMENT);
+        saga.setVersion(3L);
+        saga.clearChanges();
+
+        when(sagaStore.findForEvent(orderId)).thenReturn(Optional.of(saga));
+
+        orchestrator.handleStepTimeout(orderId, SagaStep.DRONE_ASSIGNMENT);
+
+        assertEquals(SagaStatus.COMPENSATED, saga.getStatus());
+        // Each message is written to the outbox with the change that produced it
+        ArgumentCaptor<List<OutboxMessage>> messages = ArgumentCaptor.forClass(List.class);
+        verify(sagaStore, times(3)).apply(any(SagaTransition.class), messages.capture());
+        OutboxMessage failed = messages.getAllValues().get(0).get(0);
+        assertEquals(orderId, failed.key());
+        assertEquals(RabbitMqConfig.NOTIFICATIONS_EXCHANGE, failed.exchange());
+        assertEquals("saga.drone_assignment_failed", failed.routingKey());
+        assertInstanceOf(DroneAssignmentFailedEvent.class, failed.payload());
+        assertEquals(List.of(SagaTopology.COMPENSATE_DELIVERY, SagaTopology.COMPENSATE_ORDER, "saga.order_cancelled"),
+                messages.getAllValues().get(2).stream().map(OutboxMessage::routingKey).toList());
+        verify(timeoutScheduler, atLeastOnce()).track(saga);
+        assertEquals(1, meterRegistry.get("saga_compensation_duration").timer().count());
+        assertEquals(1, meterRegistry.get("saga_step_duration")
+                .tag("step", "DRONE_ASSIGNMENT").tag("outcome", "failure").timer().count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testLateDroneAssignmentAfterTimeoutIsReleased() {
+        String orderId = "order-12";
+        OrderSagaState saga = new OrderSagaState(
+                "saga-12", orderId, "cust-1", "A", "B", 10.0, LocalDateTime.now(), 60
+        );
+        saga.markStepCompleted(SagaStep.ORDER_VALIDATION);
+        saga.markStepCompleted(SagaStep.DELIVERY_SCHEDULING);
+        saga.setCurrentStep(SagaStep.DRONE_ASSIGNMENT);
+        saga.setVersion(3L);
+        saga.clearChanges();
+        when(sagaStore.findForEvent(orderId)).thenReturn(Optional.of(saga));
+
+        orchestrator.handleStepTimeout(orderId, SagaStep.DRONE_ASSIGNMENT);
+        orchestrator.handleSagaEvents(new DroneAssignedEvent("unknown", orderId, "drone-7", LocalDateTime.now()));
+
+        OrderSagaState after = orchestrator.getSagaByOrderId(orderId);
+        assertEquals(SagaStatus.COMPENSATED, after.getStatus());
+        assertEquals(List.of(SagaStep.ORDER_VALIDATION, SagaStep.DELIVERY_SCHEDULING), after.getCompletedSteps());
+        assertEquals(0, meterRegistry.get("saga_completed_total").counter().count());
+
+        // The late assignment only gives the drone back
+        ArgumentCaptor<List<OutboxMessage>> messages = ArgumentCaptor.forClass(List.class);
+        verify(sagaStore, times(4)).apply(any(SagaTransition.class), messages.capture());
+        List<OutboxMessage> released = messages.getAllValues().get(3);
+        assertEquals(1, released.size());
+        CompensateDroneEvent compensation = assertInstanceOf(CompensateDroneEvent.class, released.get(0).payload());
+        assertEquals("drone-7", compensation.getDroneId());
+    }
+
+    @Test
+    void testHandleStepTimeout_IgnoresCompletedStep() {
+        String orderId = "order-10";
+        OrderSagaState saga = new OrderSagaState(
+                "saga-10", orderId, "cust-1", "A", "B", 10.0, LocalDateTime.now(), 60
+        );
+        saga.setCurrentStep(SagaStep.DRONE_ASSIGNMENT);
+        saga.setVersion(1L);
+        saga.clearChanges();
+
+        when(sagaStore.findForEvent(orderId)).thenReturn(Optional.of(saga));
+
+        orchestrator.handleStepTimeout(orderId, SagaStep.DELIVERY_SCHEDULING);
+
+        assertEquals(SagaStatus.STARTED, saga.getStatus());
+        verify(sagaStore, never()).apply(any(SagaTransition.class), anyList());
+    }
+
+    @Test
+    void testFailedGroupCommitIsDroppedBeforeTheEventIsRedelivered() throws Exception {
+        String orderId = "order-11";
+        SagaStateWriter groupCommit = new SagaStateWriter(sagaStore, sagaCache, meterRegistry,
+                SagaDurabilityMode.GROUP_COMMIT, 1, 1);
+        orchestrator = new OrderSagaOrchestrator(sagaRepository, sagaStore, groupCommit, sagaCache,
+                timeoutScheduler, meterRegistry);
+
+        // Every lookup reads the stored document afresh
+        when(sagaStore.findForEvent(orderId)).thenAnswer(invocation -> {
+            OrderSagaState stored = new OrderSagaState(
+                    "saga-11", orderId, "cust-1", "A", "B", 10.0, LocalDateTime.now(), 60
+            );
+            stored.markStepCompleted(SagaStep.ORDER_VALIDATION);
+            stored.markStepCompleted(SagaStep.DELIVERY_SCHEDULING);
+            stored.setCurrentStep(SagaStep.DRONE_ASSIGNMENT);
+            stored.setVersion(3L);
+            stored.clearChanges();
+            return Optional.of(stored);
+        });
+        when(sagaStore.writeBatch(anyCollection(), anyCollection(), anyList()))
+                .thenThrow(new IllegalStateException("primary stepped down"))
+                .thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of()));
+
+        DroneAssignedEvent event = new DroneAssignedEvent("unknown", orderId, "drone-1", LocalDateTime.now());
+        try {
+            assertThrows(CompletionException.class, () -> orchestrator.handleSagaEvents(event));
+            // Redelivered after the nack
+            orchestrator.handleSagaEvents(event);
+        } finally {
+            groupCommit.shutdown();
+        }
+
+        OrderSagaState saga = orchestrator.getSagaByOrderId(orderId);
+        assertEquals(SagaStatus.COMPLETED, saga.getStatus());
+        assertEquals(List.of(SagaStep.ORDER_VALIDATION, SagaStep.DELIVERY_SCHEDULING, SagaStep.DRONE_ASSIGNMENT),
+                saga.getCompletedSteps());
+        verify(sagaStore, times(2)).findForEvent(orderId);
+        assertEquals(1, meterRegistry.get("saga_completed_total").counter().count());
+    }
+
+    @Test
+    void testWritesOfOneEventAreAwaitedOnce() throws Exception {
+        String orderId = "order-12";
+        // Flushed on request only
+        SagaStateWriter groupCommit = new SagaStateWriter(sagaStore, sagaCache, meterRegistry,
+                SagaDurabilityMode.GROUP_COMMIT, 100, 60_000);
+        orchestrator = new OrderSagaOrchestrator(sagaRepository, sagaStore, groupCommit, sagaCache,
+                timeoutScheduler, meterRegistry);
+
+        OrderSagaState stored = new OrderSagaState(
+                "saga-12", orderId, "cust-1", "A", "B", 10.0, LocalDateTime.now(), 60
+        );
+        stored.markStepCompleted(SagaStep.ORDER_VALIDATION);
+        stored.markStepCompleted(SagaStep.DELIVERY_SCHEDULING);
+        stored.setCurrentStep(SagaStep.DRONE_ASSIGNMENT);
+        stored.setVersion(3L);
+        stored.clearChanges();
+        when(sagaStore.findForEvent(orderId)).thenReturn(Optional.of(stored));
+        when(sagaStore.writeBatch(anyCollection(), anyCollection(), anyList()))
+                .thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of()));
+
+        // Assigning the drone and completing the SAGA are two writes of one event
+        DroneAssignedEvent event = new DroneAssignedEvent("unknown", orderId, "drone-1", LocalDateTime.now());
+        CompletableFuture<Void> handled = CompletableFuture.runAsync(() -> orchestrator.handleSagaEvents(event));
+        try {
+            // Both writes are buffered before either is flushed
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (coalesced() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(1.0, coalesced());
+            groupCommit.requestFlush();
+            handled.get(5, TimeUnit.SECONDS);
+        } finally {
+            groupCommit.shutdown();
+        }
+
+        verify(sagaStore, times(1)).writeBatch(anyCollection(), anyCollection(), anyList());
+    }
+
+    private double coalesced() {
+        return meterRegistry.get("saga_persist_coalesced_total").counter().count();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+package org.example;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.lang.reflect.Method;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataMongoTest(properties = "de.flapdoodle.mongodb.embedded.version=6.0.10")
+@Import(SagaIndexInitializer.class)
+class OrderSagaQueryPlanTest {
+
+    // Filter issued by each query method of OrderSagaRepository
+    private static final Map<String, Document> REPOSITORY_QUERIES = Map.of(
+            "findByOrderId", new Document("orderId", "order-7"),
+            "findByStatus", new Document("status", "STARTED"),
+            "findByStatusIn", new Document("status",
+                    new Document("$in", List.of("STARTED", "COMPENSATING")))
+    );
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private SagaIndexInitializer indexInitializer;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(OrderSagaState.class);
+        indexInitializer.ensureIndexes();
+        for (int i = 0; i < 50; i++) {
+            mongoTemplate.insert(new OrderSagaState(
+                    "saga-" + i, "order-" + i, "cust-" + (i % 5), "A", "B", 1.0, LocalDateTime.now(), 30
+            ));
+        }
+    }
+
+    @Test
+    void testEveryRepositoryQueryIsCovered() {
+        for (Method method : OrderSagaRepository.class.getDeclaredMethods()) {
+            assertTrue(REPOSITORY_QUERIES.containsKey(method.getName()),
+                    "Add a query plan check for OrderSagaRepository." + method.getName());
+        }
+    }
+
+    @Test
+    void testRepositoryQueriesUseIndexes() {
+        REPOSITORY_QUERIES.forEach((method, filter) ->
+                assertFalse(isCollectionScan(filter), method + " falls back to COLLSCAN"));
+    }
+
+    @Test
+    void testCustomerLookupUsesIndex() {
+        assertFalse(isCollectionScan(new Document("customerId", "cust-1")));
+    }
+
+    private boolean isCollectionScan(Document filter) {
+        Document explain = mongoTemplate.getCollection("order_sagas").find(filter).explain();
+        Document winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+        return containsStage(winningPlan, "COLLSCAN");
+    }
+
+    private static boolean containsStage(Object node, String stage) {
+        if (node instanceof Document document) {
+            if (stage.equals(document.get("stage"))) {
+                return true;
+            }
+            return document.values().stream().anyMatch(value -> containsStage(value, stage));
+        }
+        if (node instanceof List<?> list) {
+            return list.stream().anyMatch(value -> containsStage(value, stage));
+        }
+        return false;
+    }
+}
@@ -0,0 +1,213 @@
+package org.example;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+class SagaEventBatchListenerTest {
+
+    private OrderSagaOrchestrator orchestrator;
+    private TieredRetryRouter retryRouter;
+    private MessageConverter messageConverter;
+    private SagaEventDispatcher dispatcher;
+    private Channel channel;
+    private SimpleMeterRegistry registry;
+    private SagaEventBatchListener listener;
+
+    @BeforeEach
+    void setUp() {
+        orchestrator = mock(OrderSagaOrchestrator.class);
+        when(orchestrator.handleSagaEvents(any())).thenReturn(CompletableFuture.completedFuture(null));
+        retryRouter = mock(TieredRetryRouter.class);
+        messageConverter = mock(MessageConverter.class);
+        registry = new SimpleMeterRegistry();
+        dispatcher = new SagaEventDispatcher(orchestrator, mock(SagaTimeoutScheduler.class),
+                mock(MessageDeduplicator.class), retryRouter, registry, 4);
+        SagaStateWriter sagaWriter = new SagaStateWriter(mock(SagaStateStore.class),
+                new SagaStateCache(registry, 100, 100, 30), registry,
+                SagaDurabilityMode.SYNC, 1, 1);
+        channel = mock(Channel.class);
+        listener = new SagaEventBatchListener(dispatcher, orchestrator, sagaWriter,
+                mock(MessageDeduplicator.class), messageConverter, registry);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testBatchIsLoadedOnceAndAckedAtOnce() throws Exception {
+        OrderSagaState stored = new OrderSagaState("saga-1", "order-1", "cust-1", "A", "B", 1.0,
+                LocalDateTime.now(), 60);
+        when(orchestrator.loadSagas(anyCollection())).thenReturn(Map.of("order-1", stored));
+
+        DeliveryScheduledEvent scheduled = new DeliveryScheduledEvent("unknown", "order-1", "del-1", LocalDateTime.now());
+        DroneAssignedEvent assigned = new DroneAssignedEvent("unknown", "order-1", "drone-1", LocalDateTime.now());
+        DeliveryScheduledEvent other = new DeliveryScheduledEvent("unknown", "order-2", "del-2", LocalDateTime.now());
+
+        listener.onSagaEvents(List.of(message(scheduled, 1), message(other, 2), message(assigned, 3)), channel);
+
+        verify(orchestrator).loadSagas(Set.of("order-1", "order-2"));
+        verify(orchestrator).adoptLoaded(stored);
+        // Events of the same SAGA are applied in arrival order
+        var inOrder = inOrder(orchestrator);
+        inOrder.verify(orchestrator).handleSagaEvents(scheduled);
+        inOrder.verify(orchestrator).handleSagaEvents(assigned);
+        verify(orchestrator).handleSagaEvents(other);
+
+        verify(channel).basicAck(3, true);
+        verifyNoMoreInteractions(channel);
+        assertEquals(2.0, registry.get("saga_event_batch_sagas").summary().totalAmount());
+    }
+
+    @Test
+    void testFailedEventIsRetriedAndHoldsBackTheRestOfItsSaga() throws Exception {
+        when(orchestrator.loadSagas(anyCollection())).thenReturn(Map.of());
+
+        DeliveryScheduledEvent scheduled = new DeliveryScheduledEvent("unknown", "order-1", "del-1", LocalDateTime.now());
+        DroneAssignedEvent assigned = new DroneAssignedEvent("unknown", "order-1", "drone-1", LocalDateTime.now());
+        DeliveryScheduledEvent other = new DeliveryScheduledEvent("unknown", "order-2", "del-2", LocalDateTime.now());
+        doThrow(new IllegalStateException("boom")).when(orchestrator).handleSagaEvents(scheduled);
+        Message failed = message(scheduled, 1);
+        Message later = message(assigned, 3);
+        when(retryRouter.reroute(eq(failed), any())).thenReturn(1000L);
+
+        listener.onSagaEvents(List.of(failed, message(other, 2), later), channel);
+
+        verify(orchestrator, never()).handleSagaEvents(assigned);
+        verify(retryRouter).delay(later, 1000L);
+        verify(channel).basicAck(1, false);
+        verify(channel).basicAck(2, false);
+        verify(channel).basicAck(3, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+        assertEquals(2.0, registry.get("saga_event_batch_retried_total").counter().count());
+    }
+
+    @Test
+    void testEventsOfAHeldSagaWaitInLaterBatches() throws Exception {
+        when(orchestrator.loadSagas(anyCollection())).thenReturn(Map.of());
+
+        DeliveryScheduledEvent scheduled = new DeliveryScheduledEvent("unknown", "order-1", "del-1", LocalDateTime.now());
+        DroneAssignedEvent assigned = new DroneAssignedEvent("unknown", "order-1", "drone-1", LocalDateTime.now());
+        doThrow(new IllegalStateException("boom")).doReturn(CompletableFuture.completedFuture(null)).when(orchestrator).handleSagaEvents(scheduled);
+        when(retryRouter.reroute(any(), any())).thenReturn(1000L);
+
+        listener.onSagaEvents(List.of(message(scheduled, "m-1", 1)), channel);
+        Message held = message(assigned, "m-2", 2);
+        listener.onSagaEvents(List.of(held), channel);
+
+        verify(retryRouter).delay(held, 1000L);
+        verify(orchestrator, never()).handleSagaEvents(assigned);
+
+        // The failed event comes back first, the held one follows it in the same batch
+        listener.onSagaEvents(List.of(message(scheduled, "m-1", 3), message(assigned, "m-2", 4)), channel);
+
+        verify(orchestrator).handleSagaEvents(assigned);
+        verify(channel).basicAck(4, true);
+    }
+
+    @Test
+    void testFailedWriteRetriesItsSagaWithoutItsChanges() throws Exception {
+        SagaStateStore sagaStore = mock(SagaStateStore.class);
+        when(sagaStore.writeBatch(anyCollection(), anyCollection(), anyList()))
+                .thenThrow(new IllegalStateException("primary stepped down"));
+        SagaStateWriter groupCommit = new SagaStateWriter(sagaStore, new SagaStateCache(registry, 100, 100, 30),
+                registry, SagaDurabilityMode.GROUP_COMMIT, 100, 60_000);
+        listener = new SagaEventBatchListener(dispatcher, orchestrator, groupCommit,
+                mock(MessageDeduplicator.class), messageConverter, registry);
+        when(orchestrator.loadSagas(anyCollection())).thenReturn(Map.of());
+
+        OrderSagaState saga = new OrderSagaState("saga-1", "order-1", "cust-1", "A", "B", 1.0,
+                LocalDateTime.now(), 60);
+        saga.setVersion(1L);
+        DeliveryScheduledEvent scheduled = new DeliveryScheduledEvent("unknown", "order-1", "del-1", LocalDateTime.now());
+        doAnswer(invocation -> {
+            saga.setDeliveryId("del-1");
+            groupCommit.write(saga);
+            return CompletableFuture.completedFuture(null);
+        }).when(orchestrator).handleSagaEvents(scheduled);
+
+        Message message = message(scheduled, 1);
+        try {
+            listener.onSagaEvents(List.of(message), channel);
+        } finally {
+            groupCommit.shutdown();
+        }
+
+        verify(retryRouter).reroute(eq(message), any());
+        verify(channel).basicAck(1, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+        // The redelivery must not find the change that was not stored
+        assertTrue(groupCommit.findPending("order-1").isEmpty());
+    }
+
+    @Test
+    void testConcurrentlyChangedSagaIsRetriedAlone() throws Exception {
+        SagaStateStore sagaStore = mock(SagaStateStore.class);
+        when(sagaStore.writeBatch(anyCollection(), anyCollection(), anyList()))
+                .thenThrow(new SagaStateStore.ConflictException(Set.of("saga-1")))
+                .thenReturn(BulkWriteResult.acknowledged(0, 1, 0, 1, List.of(), List.of()));
+        SagaStateWriter groupCommit = new SagaStateWriter(sagaStore, new SagaStateCache(registry, 100, 100, 30),
+                registry, SagaDurabilityMode.GROUP_COMMIT, 100, 60_000);
+        listener = new SagaEventBatchListener(dispatcher, orchestrator, groupCommit,
+                mock(MessageDeduplicator.class), messageConverter, registry);
+        when(orchestrator.loadSagas(anyCollection())).thenReturn(Map.of());
+
+        DeliveryScheduledEvent stale = new DeliveryScheduledEvent("unknown", "order-1", "del-1", LocalDateTime.now());
+        DeliveryScheduledEvent other = new DeliveryScheduledEvent("unknown", "order-2", "del-2", LocalDateTime.now());
+        for (DeliveryScheduledEvent event : List.of(stale, other)) {
+            OrderSagaState saga = new OrderSagaState(event.getOrderId().replace("order", "saga"), event.getOrderId(),
+                    "cust-1", "A", "B", 1.0, LocalDateTime.now(), 60);
+            saga.setVersion(1L);
+            doAnswer(invocation -> {
+                saga.setDeliveryId(event.getDeliveryId());
+                groupCommit.write(saga);
+                return CompletableFuture.completedFuture(null);
+            }).when(orchestrator).handleSagaEvents(event);
+        }
+
+        Message staleMessage = message(stale, 1);
+        try {
+            listener.onSagaEvents(List.of(staleMessage, message(other, 2)), channel);
+        } finally {
+            groupCommit.shutdown();
+        }
+
+        verify(retryRouter).reroute(eq(staleMessage), any(SagaStateStore.ConflictException.class));
+        verify(retryRouter, times(1)).reroute(any(), any());
+        verify(channel).basicAck(1, false);
+        verify(channel).basicAck(2, false);
+        verify(sagaStore, times(2)).writeBatch(anyCollection(), anyCollection(), anyList());
+    }
+
+    private Message message(SagaEvent event, long deliveryTag) {
+        return message(event, "m-" + deliveryTag, deliveryTag);
+    }
+
+    private Message message(SagaEvent event, String messageId, long deliveryTag) {
+        MessageProperties properties = new MessageProperties();
+        properties.setConsumerQueue(RabbitMqConfig.SAGA_EVENTS_QUEUE);
+        properties.setMessageId(messageId);
+        properties.setDeliveryTag(deliveryTag);
+        Message message = new Message(new byte[0], properties);
+        when(messageConverter.fromMessage(message)).thenReturn(event);
+        return message;
+    }
+}
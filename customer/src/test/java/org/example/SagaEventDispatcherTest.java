@@ -0,0 +1,211 @@
+package org.example;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SagaEventDispatcherTest {
+
+    private OrderSagaOrchestrator orchestrator;
+    private TieredRetryRouter retryRouter;
+    private Channel channel;
+    private SagaEventDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        orchestrator = mock(OrderSagaOrchestrator.class);
+        when(orchestrator.handleSagaEvents(any())).thenReturn(CompletableFuture.completedFuture(null));
+        retryRouter = mock(TieredRetryRouter.class);
+        channel = mock(Channel.class);
+        dispatcher = new SagaEventDispatcher(orchestrator, mock(SagaTimeoutScheduler.class),
+                mock(MessageDeduplicator.class), retryRouter, new SimpleMeterRegistry(), 4);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testSameSagaEventsKeepArrivalOrder() {
+        List<Integer> applied = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            int sequence = i;
+            futures.add(dispatcher.dispatch("order-1", () -> applied.add(sequence)));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, applied.get(i));
+        }
+    }
+
+    @Test
+    void testDifferentSagasRunInParallel() throws Exception {
+        // Pick two keys owned by different lanes
+        String first = "order-0";
+        String second = null;
+        for (int i = 1; second == null; i++) {
+            String candidate = "order-" + i;
+            if (Math.floorMod(candidate.hashCode(), dispatcher.laneCount())
+                    != Math.floorMod(first.hashCode(), dispatcher.laneCount())) {
+                second = candidate;
+            }
+        }
+
+        // Each task waits for the other: only completes if both lanes run at once
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        Runnable task = () -> {
+            bothRunning.countDown();
+            try {
+                bothRunning.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        CompletableFuture<Void> a = dispatcher.dispatch(first, task);
+        CompletableFuture<Void> b = dispatcher.dispatch(second, task);
+        CompletableFuture.allOf(a, b).get(10, TimeUnit.SECONDS);
+
+        assertTrue(bothRunning.await(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testFailedEventIsRetriedInsteadOfRequeued() throws Exception {
+        DeliveryScheduledEvent event = new DeliveryScheduledEvent("unknown", "order-1", "del-1", LocalDateTime.now());
+        Message message = message("m-1", 1);
+        doThrow(new IllegalStateException("boom")).when(orchestrator).handleSagaEvents(event);
+        when(retryRouter.reroute(eq(message), any())).thenReturn(1000L);
+
+        receive(event, message);
+
+        verify(channel).basicAck(1, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void testLaterEventsOfAFailedOrderWaitBehindIt() throws Exception {
+        DeliveryScheduledEvent scheduled = new DeliveryScheduledEvent("unknown", "order-1", "del-1",
+                LocalDateTime.now());
+        DroneAssignedEvent assigned = new DroneAssignedEvent("unknown", "order-1", "drone-1", LocalDateTime.now());
+        DeliveryScheduledEvent other = new DeliveryScheduledEvent("unknown", "order-2", "del-2", LocalDateTime.now());
+        Message failed = message("m-1", 1);
+        Message later = message("m-2", 2);
+        doThrow(new IllegalStateException("boom")).doReturn(CompletableFuture.completedFuture(null)).when(orchestrator).handleSagaEvents(scheduled);
+        when(retryRouter.reroute(eq(failed), any())).thenReturn(1000L);
+
+        receive(scheduled, failed);
+        receive(assigned, later);
+        receive(other, message("m-3", 3));
+
+        verify(retryRouter).delay(later, 1000L);
+        verify(orchestrator, never()).handleSagaEvents(assigned);
+        verify(orchestrator).handleSagaEvents(other);
+
+        // The failed event comes back first and releases its order
+        receive(scheduled, message("m-1", 4));
+        receive(assigned, message("m-2", 5));
+
+        verify(orchestrator).handleSagaEvents(assigned);
+        verify(retryRouter, times(1)).delay(any(), anyLong());
+        for (long tag = 1; tag <= 5; tag++) {
+            verify(channel).basicAck(tag, false);
+        }
+    }
+
+    @Test
+    void testParkedEventNoLongerHoldsItsOrder() throws Exception {
+        DeliveryScheduledEvent scheduled = new DeliveryScheduledEvent("unknown", "order-1", "del-1",
+                LocalDateTime.now());
+        DroneAssignedEvent assigned = new DroneAssignedEvent("unknown", "order-1", "drone-1", LocalDateTime.now());
+        doThrow(new IllegalStateException("boom")).when(orchestrator).handleSagaEvents(scheduled);
+        when(retryRouter.reroute(any(), any())).thenReturn(TieredRetryRouter.PARKED);
+
+        receive(scheduled, message("m-1", 1));
+        receive(assigned, message("m-2", 2));
+
+        verify(orchestrator).handleSagaEvents(assigned);
+        verify(retryRouter, never()).delay(any(), anyLong());
+    }
+
+    @Test
+    void testEventIsRequeuedWhenItCannotBeRerouted() throws Exception {
+        DeliveryScheduledEvent event = new DeliveryScheduledEvent("unknown", "order-1", "del-1", LocalDateTime.now());
+        doThrow(new IllegalStateException("boom")).when(orchestrator).handleSagaEvents(event);
+        when(retryRouter.reroute(any(), any())).thenThrow(new IllegalStateException("broker down"));
+
+        receive(event, message("m-1", 1));
+
+        verify(channel).basicNack(1, false, true);
+    }
+
+    @Test
+    void testAsyncEventIsAckedOnceItsWriteLands() throws Exception {
+        DeliveryScheduledEvent event = new DeliveryScheduledEvent("unknown", "order-1", "del-1", LocalDateTime.now());
+        Message message = message("m-1", 1);
+        CompletableFuture<Void> persisted = new CompletableFuture<>();
+        when(orchestrator.handleSagaEvents(event)).thenReturn(persisted);
+
+        receive(event, message);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        persisted.complete(null);
+        verify(channel).basicAck(1, false);
+    }
+
+    @Test
+    void testAsyncEventWhoseWriteWasDroppedIsRetried() throws Exception {
+        DeliveryScheduledEvent event = new DeliveryScheduledEvent("unknown", "order-1", "del-1", LocalDateTime.now());
+        Message message = message("m-1", 1);
+        CompletableFuture<Void> persisted = new CompletableFuture<>();
+        when(orchestrator.handleSagaEvents(event)).thenReturn(persisted);
+        when(retryRouter.reroute(eq(message), any())).thenReturn(1000L);
+
+        receive(event, message);
+        persisted.completeExceptionally(new SagaStateStore.ConflictException(Set.of("saga-1")));
+        dispatcher.dispatch(SagaEventDispatcher.partitionKey(event), () -> {
+        }).join();
+
+        verify(retryRouter).reroute(eq(message), any());
+        verify(channel).basicAck(1, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    /**
+     * Deliver an event and wait for its lane to settle it
+     */
+    private void receive(SagaEvent event, Message message) {
+        dispatcher.onSagaEvent(event, message, channel);
+        dispatcher.dispatch(SagaEventDispatcher.partitionKey(event), () -> {
+        }).join();
+    }
+
+    private static Message message(String messageId, long deliveryTag) {
+        MessageProperties properties = new MessageProperties();
+        properties.setConsumerQueue(RabbitMqConfig.SAGA_EVENTS_QUEUE);
+        properties.setMessageId(messageId);
+        properties.setDeliveryTag(deliveryTag);
+        return new Message(new byte[0], properties);
+    }
+}
@@ -0,0 +1,103 @@
+package org.example;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class SagaOutboxRelayTest {
+
+    private SagaOutbox outbox;
+    private ConfirmingPublisher publisher;
+    private SimpleMeterRegistry registry;
+    private SagaOutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        outbox = mock(SagaOutbox.class);
+        publisher = mock(ConfirmingPublisher.class);
+        registry = new SimpleMeterRegistry();
+        relay = new SagaOutboxRelay(outbox, publisher, registry, 10, 20, 1000);
+    }
+
+    @Test
+    void testDeletesOnlyConfirmedMessages() throws Exception {
+        when(outbox.findBatch(10)).thenReturn(List.of(message("m1", "order-1"), message("m2", "order-2")));
+        when(publisher.publish(eq("order-1"), anyString(), anyString(), any(Message.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(publisher.publish(eq("order-2"), anyString(), anyString(), any(Message.class)))
+                .thenReturn(CompletableFuture.failedFuture(new AmqpException("nacked")));
+
+        assertEquals(1, relay.relayBatch());
+
+        verify(outbox).delete(List.of("m1"));
+        assertEquals(1.0, registry.get("saga_outbox_relayed_total").counter().count());
+        assertEquals(1.0, registry.get("saga_outbox_relay_failures_total").counter().count());
+    }
+
+    @Test
+    void testNackedMessageHoldsBackTheRestOfItsOrder() throws Exception {
+        when(outbox.findBatch(10)).thenReturn(List.of(
+                message("m1", "order-1"), message("m2", "order-2"), message("m3", "order-1"), message("m4", "order-2")));
+        CompletableFuture<Void> nacked = CompletableFuture.failedFuture(new AmqpException("nacked"));
+        CompletableFuture<Void> acked = CompletableFuture.completedFuture(null);
+        when(publisher.publish(eq("order-1"), anyString(), anyString(), any(Message.class))).thenReturn(nacked)
+                .thenReturn(acked);
+        when(publisher.publish(eq("order-2"), anyString(), anyString(), any(Message.class))).thenReturn(acked);
+
+        assertEquals(2, relay.relayBatch());
+
+        // m3 would have overtaken m1: it waits for m1 to go out first
+        verify(publisher, times(1)).publish(eq("order-1"), anyString(), anyString(), any(Message.class));
+        verify(publisher, times(2)).publish(eq("order-2"), anyString(), anyString(), any(Message.class));
+        verify(outbox).delete(List.of("m2", "m4"));
+    }
+
+    @Test
+    void testPublishesStoredMessageAsIs() throws Exception {
+        when(outbox.findBatch(10)).thenReturn(List.of(message("m1", "order-1")));
+        when(publisher.publish(anyString(), anyString(), anyString(), any(Message.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        relay.relayBatch();
+
+        verify(publisher).publish(eq("order-1"), eq(RabbitMqConfig.NOTIFICATIONS_EXCHANGE), eq("saga.order_saga_started"),
+                argThat((Message message) -> "{}".equals(new String(message.getBody(), StandardCharsets.UTF_8))
+                        && "application/json".equals(message.getMessageProperties().getContentType())
+                        && "org.example.OrderSagaStartedEvent".equals(
+                                message.getMessageProperties().getHeader("__TypeId__"))));
+    }
+
+    @Test
+    void testEmptyOutboxPublishesNothing() throws Exception {
+        when(outbox.findBatch(10)).thenReturn(List.of());
+
+        assertEquals(0, relay.relayBatch());
+
+        verifyNoInteractions(publisher);
+        verify(outbox, never()).delete(anyList());
+    }
+
+    private static Document message(String id, String orderId) {
+        return new Document("_id", id)
+                .append("key", orderId)
+                .append("exchange", RabbitMqConfig.NOTIFICATIONS_EXCHANGE)
+                .append("routingKey", "saga.order_saga_started")
+                .append("contentType", "application/json")
+                .append("contentEncoding", "UTF-8")
+                .append("headers", new Document("__TypeId__", "org.example.OrderSagaStartedEvent"))
+                .append("body", new Binary("{}".getBytes(StandardCharsets.UTF_8)))
+                .append("createdAt", new Date());
+    }
+}
@@ -0,0 +1,62 @@
+package org.example;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class SagaRecoveryServiceTest {
+
+    private SagaRecoveryService recovery;
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        // 60s for delivery scheduling, 120s for drone assignment
+        SagaTimeoutScheduler timeoutScheduler = new SagaTimeoutScheduler(registry, 100, 60, 120);
+        recovery = new SagaRecoveryService(mock(MongoTemplate.class), mock(OrderSagaOrchestrator.class),
+                mock(SagaEventDispatcher.class), timeoutScheduler, registry, 100, 100, 30);
+        now = LocalDateTime.now();
+    }
+
+    @Test
+    void testFailedSagaIsCompensated() {
+        OrderSagaState saga = sagaAt(SagaStep.DRONE_ASSIGNMENT, 1);
+        saga.markFailed("boom");
+
+        assertEquals(SagaRecoveryAction.COMPENSATE, recovery.decide(saga, now));
+    }
+
+    @Test
+    void testInterruptedValidationIsResent() {
+        assertEquals(SagaRecoveryAction.RESEND, recovery.decide(sagaAt(SagaStep.ORDER_VALIDATION, 0), now));
+    }
+
+    @Test
+    void testDeliverySchedulingByWaitingTime() {
+        assertEquals(SagaRecoveryAction.WAIT, recovery.decide(sagaAt(SagaStep.DELIVERY_SCHEDULING, 10), now));
+        assertEquals(SagaRecoveryAction.RESEND, recovery.decide(sagaAt(SagaStep.DELIVERY_SCHEDULING, 40), now));
+        assertEquals(SagaRecoveryAction.COMPENSATE, recovery.decide(sagaAt(SagaStep.DELIVERY_SCHEDULING, 90), now));
+    }
+
+    @Test
+    void testDroneAssignmentIsNeverResent() {
+        assertEquals(SagaRecoveryAction.WAIT, recovery.decide(sagaAt(SagaStep.DRONE_ASSIGNMENT, 90), now));
+        assertEquals(SagaRecoveryAction.COMPENSATE, recovery.decide(sagaAt(SagaStep.DRONE_ASSIGNMENT, 150), now));
+    }
+
+    private OrderSagaState sagaAt(SagaStep step, long secondsWaiting) {
+        OrderSagaState saga = new OrderSagaState(
+                "saga-1", "order-1", "cust-1", "A", "B", 1.0, now, 30
+        );
+        saga.setCurrentStep(step);
+        saga.setStepStartedAt(now.minusSeconds(secondsWaiting));
+        return saga;
+    }
+}
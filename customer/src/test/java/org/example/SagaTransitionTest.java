@@ -0,0 +1,43 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SagaTransitionTest {
+
+    @Test
+    void testMergeKeepsFirstVersionAndLatestValues() {
+        SagaTransition first = new SagaTransition("saga-1", "order-1", 4,
+                Map.of("status", SagaStatus.FAILED, "failureReason", "timeout"),
+                List.of(SagaStep.DELIVERY_SCHEDULING), 1);
+        SagaTransition second = new SagaTransition("saga-1", "order-1", 5,
+                Map.of("status", SagaStatus.COMPENSATING),
+                List.of(SagaStep.DRONE_ASSIGNMENT), 1);
+
+        SagaTransition merged = first.merge(second);
+
+        assertEquals(4, merged.expectedVersion());
+        assertEquals(6, merged.resultingVersion());
+        assertEquals(SagaStatus.COMPENSATING, merged.changes().get("status"));
+        assertEquals("timeout", merged.changes().get("failureReason"));
+        assertEquals(List.of(SagaStep.DELIVERY_SCHEDULING, SagaStep.DRONE_ASSIGNMENT), merged.completedSteps());
+    }
+
+    @Test
+    void testOnlyTheResultingVersionCountsAsApplied() {
+        SagaTransition transition = new SagaTransition("saga-1", "order-1", 1,
+                Map.of("droneId", "drone-1"), List.of(SagaStep.DRONE_ASSIGNMENT), 2);
+
+        assertTrue(transition.isAppliedAt(3L));
+        // Someone else moved the SAGA: a conflict, not a retry of this transition
+        assertFalse(transition.isAppliedAt(2L));
+        assertFalse(transition.isAppliedAt(4L));
+        assertFalse(transition.isAppliedAt(null));
+    }
+}
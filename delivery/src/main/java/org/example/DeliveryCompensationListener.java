@@ -0,0 +1,20 @@
+package org.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Service;
+
+@Service
+public class DeliveryCompensationListener {
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryCompensationListener.class);
+
+    @RabbitListener(id = "delivery-compensation", queues = RabbitMqConfig.DELIVERY_COMPENSATION_QUEUE)
+    public void handleCompensateDelivery(CompensateDeliveryEvent event) {
+        logger.warn("❌ Starting Delivery compensation {} for order {}. Reason: {}",
+                event.getDeliveryId(), event.getOrderId(), event.getReason());
+
+        // Deliveries are not stored here: cancelling one only needs the drone side to let go
+        logger.info("✅ Delivery {} compensation completed successfully.", event.getDeliveryId());
+    }
+}
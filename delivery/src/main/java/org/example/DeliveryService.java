@@ -1,17 +1,23 @@
 package org.example;
 
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.AmqpException;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class DeliveryService {
-    private final RabbitTemplate rabbitTemplate;
+    private static final long CONFIRM_TIMEOUT_MS = 10_000;
 
-    public DeliveryService(RabbitTemplate rabbitTemplate) {
-        this.rabbitTemplate = rabbitTemplate;
+    private final ConfirmingPublisher publisher;
+
+    public DeliveryService(ConfirmingPublisher publisher) {
+        this.publisher = publisher;
     }
 
     public void askDroneForOrder(final String orderId,
@@ -25,7 +31,8 @@ public class DeliveryService {
         OrderMessage order = new OrderMessage(orderId, customerId, fromAddress, toAddress,
                 packageWeight, requestedDeliveryTime, maxDeliveryTimeMinutes);
 
-        rabbitTemplate.convertAndSend(RabbitMqConfig.DRONE_QUEUE, order);
+        CompletableFuture<Void> droneRequest =
+                publisher.publish(orderId, ShardedQueue.exchange(RabbitMqConfig.DRONE_QUEUE), orderId, order);
 
         String deliveryId = UUID.randomUUID().toString();
         DeliveryScheduledEvent event = new DeliveryScheduledEvent(
@@ -34,6 +41,22 @@ public class DeliveryService {
                 deliveryId,
                 LocalDateTime.now()
         );
-        rabbitTemplate.convertAndSend(RabbitMqConfig.SAGA_EVENTS_EXCHANGE, "saga.delivery_scheduled", event);
+        CompletableFuture<Void> scheduled =
+                publisher.publish(orderId, RabbitMqConfig.SAGA_EVENTS_EXCHANGE, SagaTopology.DELIVERY_SCHEDULED, event);
+
+        // The order request is only acked once both are with the broker; otherwise it is retried
+        await(droneRequest, orderId);
+        await(scheduled, orderId);
+    }
+
+    private static void await(CompletableFuture<Void> confirm, String orderId) {
+        try {
+            confirm.get(CONFIRM_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmqpException("Interrupted waiting for the confirms of order " + orderId, e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new AmqpException("Messages of order " + orderId + " were not confirmed", e);
+        }
     }
 }
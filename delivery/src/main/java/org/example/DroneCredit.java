@@ -0,0 +1,136 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Credit the drone services grant for new orders.
+ *
+ * Each drone instance advertises how many drones it can still dispatch. The
+ * credit is their sum, minus the orders forwarded since the latest advertisement.
+ * At zero the {@code order-requests} listener is paused, and new orders wait in
+ * {@code order_queue} instead of piling up in {@code drone_queue}; the next
+ * advertisement with free drones resumes it.
+ *
+ * Advertisements older than {@code stale-after-ms} are ignored. Without any
+ * fresh one, e.g. while the drone services restart, orders flow unthrottled.
+ * With several delivery instances the credit is shared without coordination:
+ * each may forward up to the full credit before the next advertisement.
+ */
+@Service
+public class DroneCredit {
+    private static final Logger logger = LoggerFactory.getLogger(DroneCredit.class);
+
+    private final Map<String, DroneCapacity> advertisements = new ConcurrentHashMap<>();
+    private final ListenerFlowControl intake;
+    private final long staleAfterMs;
+    private int forwardedSinceAdvertisement;
+
+    private final Counter pauseCounter;
+
+    public DroneCredit(RabbitListenerEndpointRegistry listeners,
+                       MeterRegistry registry,
+                       @Value("${delivery.drone-credit.stale-after-ms:5000}") long staleAfterMs) {
+        this.intake = new ListenerFlowControl(listeners, OrderMessageConsumer.LISTENER_ID);
+        this.staleAfterMs = staleAfterMs;
+
+        Gauge.builder("delivery_drone_credit", this, c -> c.credit())
+                .description("Orders that may still be forwarded to the drone services, -1 when unknown")
+                .register(registry);
+        Gauge.builder("drone_fleet_saturation", this, DroneCredit::saturation)
+                .description("Share of the advertised drone capacity in use")
+                .register(registry);
+        Gauge.builder("delivery_intake_paused", intake, i -> i.isPaused() ? 1 : 0)
+                .description("Whether orders are left in the queue for lack of drone credit")
+                .register(registry);
+        this.pauseCounter = Counter.builder("delivery_intake_pauses_total")
+                .description("Times order intake was paused for lack of drone credit")
+                .register(registry);
+    }
+
+    @RabbitListener(id = "drone-capacity", bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(value = SagaTopology.DRONE_CAPACITY_EXCHANGE, type = ExchangeTypes.FANOUT)))
+    public void onAdvertisement(DroneCapacity advertisement) {
+        synchronized (this) {
+            advertisements.put(advertisement.instanceId(), advertisement);
+            forwardedSinceAdvertisement = 0;
+        }
+        regulate();
+    }
+
+    /**
+     * Spend one credit for an order forwarded to the drone services
+     */
+    public void consume() {
+        synchronized (this) {
+            forwardedSinceAdvertisement++;
+        }
+        regulate();
+    }
+
+    /**
+     * Remaining credit, or -1 without any fresh advertisement
+     */
+    public synchronized int credit() {
+        long freshSince = System.currentTimeMillis() - staleAfterMs;
+        int available = 0;
+        boolean known = false;
+        for (DroneCapacity advertisement : advertisements.values()) {
+            if (advertisement.advertisedAt() >= freshSince) {
+                available += advertisement.available();
+                known = true;
+            }
+        }
+        return known ? Math.max(0, available - forwardedSinceAdvertisement) : -1;
+    }
+
+    private double saturation() {
+        long freshSince = System.currentTimeMillis() - staleAfterMs;
+        int capacity = 0;
+        int available = 0;
+        for (DroneCapacity advertisement : advertisements.values()) {
+            if (advertisement.advertisedAt() >= freshSince) {
+                capacity += advertisement.capacity();
+                available += advertisement.available();
+            }
+        }
+        return capacity == 0 ? 0.0 : 1.0 - (double) available / capacity;
+    }
+
+    // Also resumes when the advertisements stop, rather than pausing forever
+    @Scheduled(fixedDelayString = "${delivery.drone-credit.check-interval-ms:1000}")
+    public void regulate() {
+        int credit = credit();
+        if (credit == 0) {
+            if (intake.pause()) {
+                pauseCounter.increment();
+                logger.warn("No drone credit left, pausing order intake");
+            }
+        } else if (intake.resume()) {
+            logger.info(credit > 0 ? "Drone credit of {}, resuming order intake"
+                    : "No fresh drone capacity advertisement, resuming order intake", credit);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        intake.shutdown();
+    }
+}
@@ -2,23 +2,34 @@ package org.example;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Service;
 
+/**
+ * Consumes order requests from the legacy {@code order_queue} and the shards
+ * claimed by {@link ShardCoordinator}, one consumer per queue.
+ */
 @Service
 public class OrderMessageConsumer {
+    public static final String LISTENER_ID = "order-requests";
+
     private final DeliveryService deliveryService;
+    private final DroneCredit droneCredit;
     private static final Logger logger = LoggerFactory.getLogger(OrderMessageConsumer.class);
 
-    public OrderMessageConsumer(DeliveryService deliveryService) {
+    public OrderMessageConsumer(DeliveryService deliveryService, DroneCredit droneCredit) {
         this.deliveryService = deliveryService;
+        this.droneCredit = droneCredit;
     }
 
-    @RabbitListener(queues = RabbitMqConfig.ORDER_QUEUE)
+    @RabbitListener(id = LISTENER_ID, queues = RabbitMqConfig.ORDER_QUEUE,
+            containerFactory = AmqpAutoConfiguration.SHARDED_CONTAINER_FACTORY)
     public void processOrderMessage(OrderMessage orderMessage) {
         try {
             if (orderMessage.orderId() == null || orderMessage.orderId().isEmpty()) {
-                throw new IllegalArgumentException("Order ID cannot be null or empty");
+                // Never valid on a later attempt: park it right away
+                throw new AmqpRejectAndDontRequeueException("Order ID cannot be null or empty");
             }
 
             deliveryService.askDroneForOrder(
@@ -30,6 +41,7 @@ public class OrderMessageConsumer {
                     orderMessage.requestedDeliveryTime(),
                     orderMessage.maxDeliveryTimeMinutes()
             );
+            droneCredit.consume();
         } catch (Exception e) {
             logger.error("Error processing order message: {}", orderMessage, e);
             throw e;
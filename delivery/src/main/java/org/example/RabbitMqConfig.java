@@ -1,101 +1,71 @@
 package org.example;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.amqp.core.*;
-import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
-import org.springframework.amqp.rabbit.connection.ConnectionFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
 
 /**
- * RabbitMQ configuration with SAGA pattern support.
- * Uses topic exchange for SAGA event routing.
+ * RabbitMQ topology of the delivery service, see {@link SagaTopology}.
+ * Replies to the orchestrator are published under {@link SagaTopology#REPLIES};
+ * only the delivery compensation command is consumed from the SAGA exchange.
+ * Order requests are consumed from the shards of {@code order_queue} this instance
+ * claims, and drone requests published to the shards of {@code drone_queue}.
+ * Connections, converter and listener containers come from {@link AmqpAutoConfiguration}.
  */
 @Configuration
 public class RabbitMqConfig {
 
     // Existing queues
-    public static final String ORDER_QUEUE = "order_queue";
-    public static final String DRONE_QUEUE = "drone_queue";
+    public static final String ORDER_QUEUE = SagaTopology.ORDER_QUEUE;
+    public static final String DRONE_QUEUE = SagaTopology.DRONE_QUEUE;
 
     // SAGA-specific exchange and queues
-    public static final String SAGA_EVENTS_EXCHANGE = "saga_events_exchange";
-    public static final String SAGA_EVENTS_QUEUE = "saga_events_queue";
-    public static final String SAGA_COMPENSATION_QUEUE = "saga_compensation_queue";
+    public static final String SAGA_EVENTS_EXCHANGE = SagaTopology.SAGA_EVENTS_EXCHANGE;
+    public static final String DELIVERY_COMPENSATION_QUEUE = SagaTopology.DELIVERY_COMPENSATION_QUEUE;
 
-    @Value("${spring.rabbitmq.host:localhost}")
-    private String rabbitmqHost;
-
-    @Value("${spring.rabbitmq.username:guest}")
-    private String rabbitmqUsername;
-
-    @Value("${spring.rabbitmq.password:guest}")
-    private String rabbitmqPassword;
-
-    // Existing queues
+    // Shards of the order requests and the unsharded queue of earlier orchestrators,
+    // still drained, with their delay queues and parking lots
     @Bean
-    public Queue orderQueue() {
-        return new Queue(ORDER_QUEUE, true);
+    public Declarables orderQueueShards(AmqpProperties amqp) {
+        return ShardedQueue.declarables(ORDER_QUEUE, amqp.sharding().shards(), amqp.retry());
     }
 
     @Bean
-    public Queue droneQueue() {
-        return new Queue(DRONE_QUEUE, true);
+    public Declarables droneQueueShards(AmqpProperties amqp) {
+        return ShardedQueue.declarables(DRONE_QUEUE, amqp.sharding().shards());
     }
 
-    // SAGA queues
-    @Bean
-    public Queue sagaEventsQueue() {
-        return new Queue(SAGA_EVENTS_QUEUE, true);
+    @Bean(destroyMethod = "shutdown")
+    public ShardCoordinator orderQueueCoordinator(ObjectProvider<MongoTemplate> mongoTemplate,
+                                                  MeterRegistry registry,
+                                                  RabbitListenerEndpointRegistry listeners,
+                                                  AmqpProperties amqp) {
+        return new ShardCoordinator(mongoTemplate.getIfAvailable(), registry, listeners,
+                OrderMessageConsumer.LISTENER_ID, ORDER_QUEUE, amqp.sharding());
     }
 
+    // SAGA queues
     @Bean
-    public Queue sagaCompensationQueue() {
-        return new Queue(SAGA_COMPENSATION_QUEUE, true);
+    public Queue deliveryCompensationQueue() {
+        return new Queue(DELIVERY_COMPENSATION_QUEUE, true);
     }
 
-    // Topic exchange for SAGA events
+    // Topic exchange for SAGA commands and replies
     @Bean
     public TopicExchange sagaEventsExchange() {
         return new TopicExchange(SAGA_EVENTS_EXCHANGE);
     }
 
-    // Bindings for SAGA events
-    @Bean
-    public Binding sagaEventsBinding(Queue sagaEventsQueue, TopicExchange sagaEventsExchange) {
-        return BindingBuilder.bind(sagaEventsQueue)
-                .to(sagaEventsExchange)
-                .with("saga.*");
-    }
-
     // Bindings for compensation events
     @Bean
-    public Binding sagaCompensationBinding(Queue sagaCompensationQueue,
-                                           TopicExchange sagaEventsExchange) {
-        return BindingBuilder.bind(sagaCompensationQueue)
+    public Binding deliveryCompensationBinding(Queue deliveryCompensationQueue,
+                                               TopicExchange sagaEventsExchange) {
+        return BindingBuilder.bind(deliveryCompensationQueue)
                 .to(sagaEventsExchange)
-                .with("saga.compensate.*");
-    }
-
-    @Bean
-    public ConnectionFactory connectionFactory() {
-        CachingConnectionFactory factory = new CachingConnectionFactory(rabbitmqHost);
-        factory.setUsername(rabbitmqUsername);
-        factory.setPassword(rabbitmqPassword);
-        return factory;
-    }
-
-    @Bean
-    public Jackson2JsonMessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
-    }
-
-    @Bean
-    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
-        RabbitTemplate template = new RabbitTemplate(connectionFactory);
-        template.setMessageConverter(messageConverter());
-        return template;
+                .with(SagaTopology.COMPENSATE_DELIVERY);
     }
-}
\ No newline at end of file
+}
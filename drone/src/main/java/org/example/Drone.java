@@ -86,6 +86,15 @@ public class Drone {
         this.returnTime = LocalDateTime.now();
     }
 
+    // Restore the state saved in a snapshot
+    void restore(DroneState state, LocalDateTime dispatchTime, LocalDateTime deliveryTime,
+                 LocalDateTime returnTime) {
+        this.state = state;
+        this.dispatchTime = dispatchTime;
+        this.deliveryTime = deliveryTime;
+        this.returnTime = returnTime;
+    }
+
     @Override
     public String toString() {
         Duration elapsed = Duration.between(this.deliveryStartTime, LocalDateTime.now());
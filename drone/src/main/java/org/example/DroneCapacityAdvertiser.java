@@ -0,0 +1,107 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+
+/**
+ * Credit-based flow control of drone dispatching.
+ *
+ * This instance dispatches at most {@code drone.capacity.max-in-flight} drones at
+ * once. Its remaining capacity is broadcast every {@code advertise-interval-ms} as
+ * a {@link DroneCapacity}, so that the delivery services stop forwarding orders
+ * before the drones are all out. Once full, the {@code drone-requests} listener
+ * itself is paused too, and orders already forwarded wait in {@code drone_queue};
+ * it resumes when {@code resume-at} drones are available again.
+ */
+@Service
+public class DroneCapacityAdvertiser {
+    private static final Logger logger = LoggerFactory.getLogger(DroneCapacityAdvertiser.class);
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final DroneController controller;
+    private final ConfirmingPublisher publisher;
+    private final ListenerFlowControl intake;
+    private final int capacity;
+    private final int resumeAt;
+
+    private final Counter pauseCounter;
+
+    public DroneCapacityAdvertiser(DroneController controller,
+                                   ConfirmingPublisher publisher,
+                                   RabbitListenerEndpointRegistry listeners,
+                                   MeterRegistry registry,
+                                   @Value("${drone.capacity.max-in-flight:100}") int capacity,
+                                   @Value("${drone.capacity.resume-at:10}") int resumeAt) {
+        this.controller = controller;
+        this.publisher = publisher;
+        this.intake = new ListenerFlowControl(listeners, DroneMessageConsumer.LISTENER_ID);
+        this.capacity = capacity;
+        this.resumeAt = Math.max(1, Math.min(resumeAt, capacity));
+
+        Gauge.builder("drone_capacity_available", this, DroneCapacityAdvertiser::available)
+                .description("Drones this instance can still dispatch")
+                .register(registry);
+        Gauge.builder("drone_capacity_saturation", this, a -> 1.0 - (double) a.available() / a.capacity)
+                .description("Share of the drone capacity in use")
+                .register(registry);
+        Gauge.builder("drone_intake_paused", intake, i -> i.isPaused() ? 1 : 0)
+                .description("Whether drone requests are left in the queue for lack of capacity")
+                .register(registry);
+        this.pauseCounter = Counter.builder("drone_intake_pauses_total")
+                .description("Times drone requests were paused for lack of capacity")
+                .register(registry);
+    }
+
+    public int available() {
+        return Math.max(0, capacity - controller.getCurrentDispatchedDrones().size());
+    }
+
+    /**
+     * Pause or resume drone requests on the current capacity; called after each
+     * dispatch, and with every advertisement for drones that came back
+     */
+    public void regulate() {
+        int available = available();
+        if (available <= 0) {
+            if (intake.pause()) {
+                pauseCounter.increment();
+                logger.warn("All {} drones dispatched, pausing drone requests", capacity);
+                advertise();
+            }
+        } else if (available >= resumeAt && intake.resume()) {
+            logger.info("{} drones available again, resuming drone requests", available);
+            advertise();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${drone.capacity.advertise-interval-ms:1000}")
+    public void tick() {
+        regulate();
+        advertise();
+    }
+
+    private void advertise() {
+        DroneCapacity advertisement = new DroneCapacity(instanceId, capacity, available(), System.currentTimeMillis());
+        publisher.publish(instanceId, SagaTopology.DRONE_CAPACITY_EXCHANGE, "", advertisement)
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        logger.warn("Failed to advertise drone capacity: {}", error.getMessage());
+                    }
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        intake.shutdown();
+    }
+}
@@ -18,10 +18,10 @@ public class DroneCompensationListener {
         this.controller = controller;
     }
 
-    @RabbitListener(bindings = @QueueBinding(
-            value = @Queue(value = "drone_compensation_queue", durable = "true"),
+    @RabbitListener(id = "drone-compensation", bindings = @QueueBinding(
+            value = @Queue(value = SagaTopology.DRONE_COMPENSATION_QUEUE, durable = "true"),
             exchange = @Exchange(value = RabbitMqConfig.SAGA_EVENTS_EXCHANGE, type = "topic"),
-            key = "saga.compensate.drone"
+            key = SagaTopology.COMPENSATE_DRONE
     ))
     public void handleCompensateDrone(CompensateDroneEvent event) {
         logger.warn("❌ Starting Drone compensation {} for SAGA {}. Reason: {}",
@@ -31,7 +31,7 @@ public class DroneCompensationListener {
             logger.info("🚁 ABORT MISSION signal sent to drone {}...", event.getDroneId());
 
             // Real compensation logic: detach the drone from the order
-            controller.detachDrone(event.getDroneId());
+            controller.detachDrone(event.getOrderId());
 
             logger.info("🔋 Drone {} detached from the order and returned to the pool.", event.getDroneId());
             logger.info("✅ Drone {} compensation completed successfully.", event.getDroneId());
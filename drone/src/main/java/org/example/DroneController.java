@@ -1,35 +1,58 @@
 package org.example;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * REST controller for drone operations with Event Sourcing support.
  * Provides endpoints to query current state and historical events.
+ *
+ * Event histories are returned whole unless paging is asked for with {@code limit}
+ * or {@code after}: pages hold {@code limit} events (100 by default), and the
+ * {@code X-Next-Cursor} header of a page, passed back as {@code after}, gives the
+ * next one. Whole histories are written as they are read from the database cursor,
+ * as a JSON array, or as NDJSON by the {@code /stream} variants. The cursor is
+ * opened by the response body, which closes it once written.
  */
 @RestController
 @RequestMapping("/")
 public class DroneController {
-    private final HashMap<String, Drone> dispatchedDrones = new HashMap<>();
+    // By order ID; written by listener threads and the arrival scheduler
+    private final Map<String, Drone> dispatchedDrones = new ConcurrentHashMap<>();
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int FLUSH_EVERY = 100;
+
     private final DroneEventStore eventStore;
+    private final ObjectMapper objectMapper;
 
-    public DroneController(DroneEventStore eventStore) {
+    public DroneController(DroneEventStore eventStore, ObjectMapper objectMapper) {
         this.eventStore = eventStore;
+        this.objectMapper = objectMapper;
     }
 
-    public void attachDrone(final String droneId, final Drone drone) {
-        this.dispatchedDrones.put(droneId, drone);
+    public void attachDrone(final String orderId, final Drone drone) {
+        this.dispatchedDrones.put(orderId, drone);
     }
 
-    public void detachDrone(final String droneId) {
-        this.dispatchedDrones.remove(droneId);
+    public void detachDrone(final String orderId) {
+        this.dispatchedDrones.remove(orderId);
     }
 
-    public HashMap<String, Drone> getCurrentDispatchedDrones() {
+    public Map<String, Drone> getCurrentDispatchedDrones() {
         return this.dispatchedDrones;
     }
 
@@ -46,55 +69,150 @@ public class DroneController {
     }
 
     /**
-     * Get event history for a specific drone
+     * Get the whole event history of a drone
+     */
+    @GetMapping(value = "/drone/{droneId}/events", params = {"!after", "!limit"})
+    public ResponseEntity<StreamingResponseBody> getDroneEventHistory(@PathVariable String droneId) {
+        if (!eventStore.hasEventsForDrone(droneId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return array(() -> eventStore.streamEventsForDrone(droneId, null));
+    }
+
+    /**
+     * Get event history for a specific drone a page at a time
      */
     @GetMapping("/drone/{droneId}/events")
-    public ResponseEntity<List<EventSummary>> getDroneEventHistory(@PathVariable String droneId) {
-        List<DroneEvent> events = eventStore.getEventsForDrone(droneId);
+    public ResponseEntity<List<EventSummary>> getDroneEventPage(@PathVariable String droneId,
+                                                                @RequestParam(required = false) String after,
+                                                                @RequestParam(required = false) Integer limit) {
+        try {
+            return page(eventStore.getEventPageForDrone(droneId, after, pageSize(limit)), after);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
 
-        if (events.isEmpty()) {
+    /**
+     * Get the whole event history of an order
+     */
+    @GetMapping(value = "/order/{orderId}/events", params = {"!after", "!limit"})
+    public ResponseEntity<StreamingResponseBody> getOrderEventHistory(@PathVariable String orderId) {
+        if (!eventStore.hasEventsForOrder(orderId)) {
             return ResponseEntity.notFound().build();
         }
+        return array(() -> eventStore.streamEventsForOrder(orderId, null));
+    }
 
-        List<EventSummary> summaries = events.stream()
-                .map(e -> new EventSummary(
-                        e.getEventType(),
-                        e.getTimestamp().toString(),
-                        e.getVersion()
-                ))
-                .collect(Collectors.toList());
+    /**
+     * Get event history for a specific order a page at a time
+     */
+    @GetMapping("/order/{orderId}/events")
+    public ResponseEntity<List<EventSummary>> getOrderEventPage(@PathVariable String orderId,
+                                                                @RequestParam(required = false) String after,
+                                                                @RequestParam(required = false) Integer limit) {
+        try {
+            return page(eventStore.getEventPageForOrder(orderId, after, pageSize(limit)), after);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
 
-        return ResponseEntity.ok(summaries);
+    /**
+     * Stream the event history of a drone as NDJSON
+     */
+    @GetMapping(value = "/drone/{droneId}/events/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamDroneEventHistory(@PathVariable String droneId,
+                                                                         @RequestParam(required = false) String after) {
+        if (!validCursor(after)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ndjson(() -> eventStore.streamEventsForDrone(droneId, after));
     }
 
     /**
-     * Get event history for a specific order
+     * Stream the event history of an order as NDJSON
      */
-    @GetMapping("/order/{orderId}/events")
-    public ResponseEntity<List<EventSummary>> getOrderEventHistory(@PathVariable String orderId) {
-        List<DroneEvent> events = eventStore.getEventsForOrder(orderId);
+    @GetMapping(value = "/order/{orderId}/events/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamOrderEventHistory(@PathVariable String orderId,
+                                                                         @RequestParam(required = false) String after) {
+        if (!validCursor(after)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ndjson(() -> eventStore.streamEventsForOrder(orderId, after));
+    }
+
+    private static int pageSize(Integer limit) {
+        return limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    // Checked before the response is committed, the cursor is only opened by the body
+    private static boolean validCursor(String after) {
+        if (after == null || after.isEmpty()) {
+            return true;
+        }
+        try {
+            DroneEventStore.decodeCursor(after);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
 
-        if (events.isEmpty()) {
+    private static ResponseEntity<List<EventSummary>> page(DroneEventStore.EventPage page, String after) {
+        // Unknown history, rather than one read to the end
+        if (page.events().isEmpty() && after == null) {
             return ResponseEntity.notFound().build();
         }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.next() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.next());
+        }
+        return response.body(page.events());
+    }
 
-        List<EventSummary> summaries = events.stream()
-                .map(e -> new EventSummary(
-                        e.getEventType(),
-                        e.getTimestamp().toString(),
-                        e.getVersion()
-                ))
-                .collect(Collectors.toList());
+    private ResponseEntity<StreamingResponseBody> array(Supplier<Stream<EventSummary>> history) {
+        StreamingResponseBody body = output -> {
+            try (Stream<EventSummary> summaries = history.get();
+                 JsonGenerator json = objectMapper.getFactory().createGenerator(output)) {
+                json.writeStartArray();
+                int written = 0;
+                for (Iterator<EventSummary> it = summaries.iterator(); it.hasNext(); ) {
+                    json.writeObject(it.next());
+                    if (++written % FLUSH_EVERY == 0) {
+                        json.flush();
+                    }
+                }
+                json.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
 
-        return ResponseEntity.ok(summaries);
+    private ResponseEntity<StreamingResponseBody> ndjson(Supplier<Stream<EventSummary>> history) {
+        StreamingResponseBody body = output -> {
+            try (Stream<EventSummary> summaries = history.get()) {
+                int written = 0;
+                for (Iterator<EventSummary> it = summaries.iterator(); it.hasNext(); ) {
+                    output.write(objectMapper.writeValueAsBytes(it.next()));
+                    output.write('\n');
+                    if (++written % FLUSH_EVERY == 0) {
+                        output.flush();
+                    }
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
     }
 
     /**
-     * Rebuild drone state from event history
+     * Rebuild drone state from event history, starting from the latest snapshot
+     * unless {@code full} is set
      */
     @GetMapping("/drone/{droneId}/rebuild")
-    public ResponseEntity<String> rebuildDroneState(@PathVariable String droneId) {
-        Drone drone = eventStore.rebuildDroneFromEvents(droneId);
+    public ResponseEntity<String> rebuildDroneState(@PathVariable String droneId,
+                                                    @RequestParam(defaultValue = "false") boolean full) {
+        Drone drone = full ? eventStore.rebuildDroneFromHistory(droneId) : eventStore.rebuildDroneFromEvents(droneId);
 
         if (drone == null) {
             return ResponseEntity.notFound().build();
@@ -0,0 +1,100 @@
+package org.example;
+
+import org.bson.Document;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * BSON form of the drone events, registered with Spring Data by {@link DroneMongoConfig}.
+ *
+ * A payload is a subdocument with the {@code type} name used in JSON and the
+ * fields of the event. Times are BSON dates in the system time zone, as Spring
+ * Data stores {@code LocalDateTime} everywhere else, so payload fields can be
+ * queried and indexed like any other, e.g. {@code payload.fromAddress}.
+ */
+final class DroneEventCodec {
+    static final String TYPE = "type";
+
+    private DroneEventCodec() {
+    }
+
+    static Document encode(DroneEvent event) {
+        Document payload = new Document(TYPE, event.getEventType())
+                .append("droneId", event.getDroneId())
+                .append("orderId", event.getOrderId())
+                .append("timestamp", date(event.getTimestamp()))
+                .append("version", event.getVersion());
+        if (event instanceof DroneCreatedEvent created) {
+            payload.append("fromAddress", created.getFromAddress())
+                    .append("toAddress", created.getToAddress())
+                    .append("packageWeight", created.getPackageWeight())
+                    .append("requestedDeliveryTime", date(created.getRequestedDeliveryTime()))
+                    .append("maxDeliveryTimeMinutes", created.getMaxDeliveryTimeMinutes());
+        } else if (event instanceof DroneDispatchedEvent dispatched) {
+            payload.append("dispatchTime", date(dispatched.getDispatchTime()));
+        } else if (event instanceof DroneDeliveredEvent delivered) {
+            payload.append("deliveryTime", date(delivered.getDeliveryTime()));
+        } else if (event instanceof DroneReturnedEvent returned) {
+            payload.append("returnTime", date(returned.getReturnTime()));
+        }
+        return payload;
+    }
+
+    static DroneEvent decode(Document payload) {
+        String droneId = payload.getString("droneId");
+        String orderId = payload.getString("orderId");
+        LocalDateTime timestamp = time(payload, "timestamp");
+        long version = ((Number) payload.get("version")).longValue();
+        String type = payload.getString(TYPE);
+        return switch (type) {
+            case "DRONE_CREATED" -> new DroneCreatedEvent(droneId, orderId,
+                    payload.getString("fromAddress"),
+                    payload.getString("toAddress"),
+                    ((Number) payload.get("packageWeight")).doubleValue(),
+                    time(payload, "requestedDeliveryTime"),
+                    ((Number) payload.get("maxDeliveryTimeMinutes")).intValue(),
+                    timestamp, version);
+            case "DRONE_DISPATCHED" -> new DroneDispatchedEvent(droneId, orderId,
+                    time(payload, "dispatchTime"), timestamp, version);
+            case "DRONE_DELIVERED" -> new DroneDeliveredEvent(droneId, orderId,
+                    time(payload, "deliveryTime"), timestamp, version);
+            case "DRONE_RETURNED" -> new DroneReturnedEvent(droneId, orderId,
+                    time(payload, "returnTime"), timestamp, version);
+            default -> throw new IllegalArgumentException("Unknown drone event type " + type);
+        };
+    }
+
+    private static Date date(LocalDateTime time) {
+        return time == null ? null : Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    static LocalDateTime time(Document payload, String field) {
+        Date date = payload.getDate(field);
+        return date == null ? null : LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+    }
+
+    @WritingConverter
+    enum Writer implements Converter<DroneEvent, Document> {
+        INSTANCE;
+
+        @Override
+        public Document convert(DroneEvent event) {
+            return encode(event);
+        }
+    }
+
+    @ReadingConverter
+    enum Reader implements Converter<Document, DroneEvent> {
+        INSTANCE;
+
+        @Override
+        public DroneEvent convert(Document payload) {
+            return decode(payload);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package org.example;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.index.Indexed;
 
@@ -9,8 +11,19 @@ import java.time.LocalDateTime;
 /**
  * MongoDB document to store drone events for event sourcing.
  * Each document represents a single event in a drone's lifecycle.
+ * A version is taken by one event of a drone only: appends racing for it conflict.
+ *
+ * The event itself is the {@code payload} subdocument. Documents written before
+ * it hold the event as a JSON string in {@code eventData} instead, until
+ * {@link DroneEventPayloadMigration} converts them.
  */
 @Document(collection = "drone_events")
+@CompoundIndexes({
+        @CompoundIndex(name = "drone_version", def = "{'droneId': 1, 'version': 1}", unique = true),
+        // Keyset pagination of the event histories
+        @CompoundIndex(name = "drone_history", def = "{'droneId': 1, 'timestamp': 1, '_id': 1}"),
+        @CompoundIndex(name = "order_history", def = "{'orderId': 1, 'timestamp': 1, '_id': 1}")
+})
 public class DroneEventDocument {
     @Id
     private String id;
@@ -24,18 +37,19 @@ public class DroneEventDocument {
     private String eventType;
     private LocalDateTime timestamp;
     private long version;
-    private String eventData; // JSON serialized event
+    private DroneEvent payload;
+    private String eventData; // JSON serialized event, legacy
 
     public DroneEventDocument() {}
 
     public DroneEventDocument(String droneId, String orderId, String eventType,
-                              LocalDateTime timestamp, long version, String eventData) {
+                              LocalDateTime timestamp, long version, DroneEvent payload) {
         this.droneId = droneId;
         this.orderId = orderId;
         this.eventType = eventType;
         this.timestamp = timestamp;
         this.version = version;
-        this.eventData = eventData;
+        this.payload = payload;
     }
 
     // Getters and setters
@@ -57,6 +71,9 @@ public class DroneEventDocument {
     public long getVersion() { return version; }
     public void setVersion(long version) { this.version = version; }
 
+    public DroneEvent getPayload() { return payload; }
+    public void setPayload(DroneEvent payload) { this.payload = payload; }
+
     public String getEventData() { return eventData; }
     public void setEventData(String eventData) { this.eventData = eventData; }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package org.example;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ensures the indexes declared on {@link DroneEventDocument} exist before the
+ * service starts appending, the unique (droneId, version) index first of all.
+ * Startup fails without a unique index: appends rely on it to detect concurrent
+ * writers, and would otherwise store the same version twice.
+ */
+@Component
+public class DroneEventIndexInitializer {
+    private static final Logger logger = LoggerFactory.getLogger(DroneEventIndexInitializer.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    public DroneEventIndexInitializer(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(DroneEventDocument.class);
+        MongoPersistentEntityIndexResolver resolver =
+                new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+
+        for (IndexDefinition index : resolver.resolveIndexFor(DroneEventDocument.class)) {
+            try {
+                String name = indexOps.ensureIndex(index);
+                logger.info("Ensured index {} {} on drone_events", name, index.getIndexKeys().toJson());
+            } catch (DataAccessException e) {
+                if (Boolean.TRUE.equals(index.getIndexOptions().get("unique"))) {
+                    // Typically versions appended twice by earlier releases
+                    throw new IllegalStateException("Failed to create unique index "
+                            + index.getIndexKeys().toJson() + " on drone_events; fix the events stored twice "
+                            + "with the same key before starting the service", e);
+                }
+                logger.error("Failed to create index {} on drone_events", index.getIndexKeys().toJson(), e);
+            }
+        }
+    }
+}
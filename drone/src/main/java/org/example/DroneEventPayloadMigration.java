@@ -0,0 +1,126 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Converts drone events stored as JSON strings to native payloads, in the
+ * background while the service runs.
+ *
+ * Each run walks the legacy documents by {@code _id}, {@code batch-size} at a time
+ * and at most {@code batches-per-run} batches, and rewrites each batch with one
+ * unordered bulk write. Events are immutable, so the only concurrent writer is
+ * another instance migrating the same document to the same payload. Documents
+ * that cannot be parsed are left as they are and counted. Once nothing is left,
+ * runs are a single empty query.
+ */
+@Component
+public class DroneEventPayloadMigration {
+    private static final Logger logger = LoggerFactory.getLogger(DroneEventPayloadMigration.class);
+    private static final String COLLECTION = "drone_events";
+
+    private final MongoTemplate mongoTemplate;
+    private final DroneEventStore eventStore;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int batchesPerRun;
+
+    private final Counter migrated;
+    private final Counter failed;
+
+    public DroneEventPayloadMigration(MongoTemplate mongoTemplate,
+                                      DroneEventStore eventStore,
+                                      MeterRegistry registry,
+                                      @Value("${drone.event-store.migration.enabled:true}") boolean enabled,
+                                      @Value("${drone.event-store.migration.batch-size:500}") int batchSize,
+                                      @Value("${drone.event-store.migration.batches-per-run:20}") int batchesPerRun) {
+        this.mongoTemplate = mongoTemplate;
+        this.eventStore = eventStore;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.batchesPerRun = batchesPerRun;
+        this.migrated = Counter.builder("drone_event_payloads_migrated_total")
+                .description("Drone events converted from JSON strings to native payloads")
+                .register(registry);
+        this.failed = Counter.builder("drone_event_payload_migration_failures_total")
+                .description("Legacy drone events that could not be converted")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${drone.event-store.migration.interval-ms:10000}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int total = 0;
+            ObjectId after = null;
+            for (int batch = 0; batch < batchesPerRun; batch++) {
+                List<Document> legacy = nextBatch(after);
+                if (legacy.isEmpty()) {
+                    break;
+                }
+                total += migrate(legacy);
+                after = legacy.get(legacy.size() - 1).getObjectId("_id");
+            }
+            if (total > 0) {
+                logger.info("Migrated {} drone events to native payloads", total);
+            }
+        } catch (DataAccessException e) {
+            logger.warn("Drone event payload migration failed, retrying with the next run", e);
+        }
+    }
+
+    private List<Document> nextBatch(ObjectId after) {
+        Criteria legacy = Criteria.where("payload").exists(false).and("eventData").exists(true);
+        if (after != null) {
+            legacy = legacy.and("_id").gt(after);
+        }
+        Query query = Query.query(legacy).with(Sort.by("_id")).limit(batchSize);
+        query.fields().include("_id").include("eventData");
+        return mongoTemplate.find(query, Document.class, COLLECTION);
+    }
+
+    /**
+     * @return the number of documents converted
+     */
+    int migrate(List<Document> legacy) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION);
+        int converted = 0;
+        for (Document document : legacy) {
+            Object id = document.get("_id");
+            DroneEvent event;
+            try {
+                event = eventStore.fromLegacyJson(document.getString("eventData"));
+            } catch (Exception e) {
+                failed.increment();
+                logger.error("Failed to convert drone event {}, leaving it as JSON", id, e);
+                continue;
+            }
+            bulk.updateOne(Query.query(Criteria.where("_id").is(id).and("payload").exists(false)),
+                    new Update().set("payload", DroneEventCodec.encode(event)).unset("eventData"));
+            converted++;
+        }
+        if (converted > 0) {
+            bulk.execute();
+            migrated.increment(converted);
+        }
+        return converted;
+    }
+}
@@ -4,6 +4,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository for storing and retrieving drone events from MongoDB.
@@ -29,7 +30,7 @@ public interface DroneEventRepository extends MongoRepository<DroneEventDocument
             String droneId, long version);
 
     /**
-     * Count events for a specific drone
+     * Find the latest event of a drone
      */
-    long countByDroneId(String droneId);
+    Optional<DroneEventDocument> findFirstByDroneIdOrderByVersionDesc(String droneId);
 }
\ No newline at end of file
@@ -1,67 +1,271 @@
 package org.example;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mongodb.MongoBulkWriteException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
 
 /**
  * Event Store service implementing the Event Sourcing pattern.
  * Stores all drone state changes as immutable events in MongoDB.
+ * Rebuilds start from the latest {@link DroneSnapshotStore snapshot} and replay
+ * only the events after it.
+ *
+ * Events of a drone are numbered from 0, each version taken once thanks to the
+ * unique (droneId, version) index. The latest version of recently written drones
+ * is remembered, so that appending is a single insert; another writer having
+ * taken the version shows up as a duplicate key, and the append is retried on
+ * the version after it.
  */
 @Service
 public class DroneEventStore {
     private static final Logger logger = LoggerFactory.getLogger(DroneEventStore.class);
     private final DroneEventRepository repository;
+    private final MongoTemplate mongoTemplate;
+    private final DroneSnapshotStore snapshots;
     private final ObjectMapper objectMapper;
+    private final MeterRegistry registry;
+    private final Map<String, Long> latestVersions;
+    private final int maxAppendAttempts;
+    private final boolean writeLegacyJson;
+    private final Counter conflicts;
+    private final DistributionSummary batchSizes;
 
-    public DroneEventStore(DroneEventRepository repository) {
+    public DroneEventStore(DroneEventRepository repository, MongoTemplate mongoTemplate,
+                           DroneSnapshotStore snapshots, MeterRegistry registry,
+                           @Value("${drone.event-store.version-cache-size:10000}") int versionCacheSize,
+                           @Value("${drone.event-store.max-append-attempts:5}") int maxAppendAttempts,
+                           @Value("${drone.event-store.write-legacy-json:false}") boolean writeLegacyJson) {
         this.repository = repository;
+        this.mongoTemplate = mongoTemplate;
+        this.writeLegacyJson = writeLegacyJson;
+        this.snapshots = snapshots;
+        this.registry = registry;
+        this.maxAppendAttempts = maxAppendAttempts;
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
+        // Access-ordered: drones no longer written to go first
+        this.latestVersions = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > versionCacheSize;
+            }
+        };
+        this.conflicts = Counter.builder("drone_event_append_conflicts_total")
+                .description("Appends that lost their version to a concurrent writer and were retried")
+                .register(registry);
+        this.batchSizes = DistributionSummary.builder("drone_event_append_batch_size")
+                .description("Events written per batched append")
+                .register(registry);
     }
 
     /**
-     * Save a new event to the event store
+     * The next event of a drone, built once its version is known
      */
-    public void saveEvent(DroneEvent event) {
+    public record Append(String droneId, LongFunction<? extends DroneEvent> event) {}
+
+    /**
+     * Append events of many drones with one ordered insert. Events of the same drone
+     * take consecutive versions, in list order.
+     *
+     * When another writer took a version, the events before it are kept, the
+     * drone's version is looked up again, and the rest is inserted anew.
+     *
+     * @return the events appended, in list order
+     * @throws OptimisticLockingFailureException when concurrent writers took every
+     *                                           version tried; the events before
+     *                                           the conflict are appended
+     */
+    public List<DroneEvent> appendAll(List<Append> appends) {
+        List<DroneEvent> appended = new ArrayList<>(appends.size());
+        List<Append> remaining = appends;
+        for (int attempt = 1; !remaining.isEmpty(); attempt++) {
+            Map<String, Long> versions = new HashMap<>();
+            List<DroneEvent> events = new ArrayList<>(remaining.size());
+            for (Append append : remaining) {
+                long version = versions.computeIfAbsent(append.droneId(), this::nextVersion);
+                events.add(append.event().apply(version));
+                versions.put(append.droneId(), version + 1);
+            }
+
+            int inserted = insertOrdered(events);
+            for (DroneEvent event : events.subList(0, inserted)) {
+                appended(event);
+                appended.add(event);
+            }
+            batchSizes.record(inserted);
+            if (inserted == events.size()) {
+                break;
+            }
+
+            DroneEvent conflicting = events.get(inserted);
+            if (attempt >= maxAppendAttempts) {
+                throw new OptimisticLockingFailureException("Drone " + conflicting.getDroneId()
+                        + " already has version " + conflicting.getVersion());
+            }
+            conflicts.increment();
+            forget(conflicting.getDroneId());
+            remaining = remaining.subList(inserted, remaining.size());
+            logger.debug("Version conflict on drone {}, retrying {} events", conflicting.getDroneId(),
+                    remaining.size());
+        }
+        logger.info("Saved {} events of {} drones", appended.size(),
+                appends.stream().map(Append::droneId).distinct().count());
+        return appended;
+    }
+
+    /**
+     * @return how many events were inserted before a version conflict
+     */
+    private int insertOrdered(List<DroneEvent> events) {
+        List<org.bson.Document> documents = new ArrayList<>(events.size());
+        for (DroneEvent event : events) {
+            org.bson.Document bson = new org.bson.Document();
+            mongoTemplate.getConverter().write(toDocument(event), bson);
+            documents.add(bson);
+        }
         try {
-            String eventData = objectMapper.writeValueAsString(event);
-
-            DroneEventDocument document = new DroneEventDocument(
-                    event.getDroneId(),
-                    event.getOrderId(),
-                    event.getEventType(),
-                    event.getTimestamp(),
-                    event.getVersion(),
-                    eventData
-            );
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(DroneEventDocument.class))
+                    .insertMany(documents);
+            return documents.size();
+        } catch (MongoBulkWriteException e) {
+            // Ordered: everything before the first error is written, nothing after it
+            var error = e.getWriteErrors().get(0);
+            if (error.getCode() != 11000) {
+                throw e;
+            }
+            return error.getIndex();
+        }
+    }
+
+    /**
+     * Append the next event of a drone, at the version after its latest one
+     *
+     * @param event the event to append, given its version
+     * @return the event appended
+     * @throws OptimisticLockingFailureException when concurrent writers took every
+     *                                           version tried
+     */
+    public <E extends DroneEvent> E append(String droneId, LongFunction<E> event) {
+        long expected = nextVersion(droneId);
+        for (int attempt = 1; ; attempt++) {
+            E next = event.apply(expected);
+            try {
+                saveEvent(next);
+                return next;
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxAppendAttempts) {
+                    throw e;
+                }
+                conflicts.increment();
+                forget(droneId);
+                expected = nextVersion(droneId);
+                logger.debug("Version conflict on drone {}, retrying at version {}", droneId, expected);
+            }
+        }
+    }
 
-            repository.save(document);
+    /**
+     * Save a new event to the event store, at the version it carries
+     *
+     * @throws OptimisticLockingFailureException when the drone has an event with this
+     *                                           version already
+     */
+    public void saveEvent(DroneEvent event) {
+        try {
+            repository.insert(toDocument(event));
+            appended(event);
             logger.info("Saved event: {} for drone: {}",
                     event.getEventType(), event.getDroneId());
+        } catch (DuplicateKeyException e) {
+            throw new OptimisticLockingFailureException("Drone " + event.getDroneId() + " already has version "
+                    + event.getVersion(), e);
         } catch (Exception e) {
             logger.error("Failed to save event", e);
             throw new RuntimeException("Failed to save event", e);
         }
     }
 
+    private DroneEventDocument toDocument(DroneEvent event) {
+        DroneEventDocument document = new DroneEventDocument(
+                event.getDroneId(),
+                event.getOrderId(),
+                event.getEventType(),
+                event.getTimestamp(),
+                event.getVersion(),
+                event
+        );
+        if (writeLegacyJson) {
+            // For instances still reading eventData only, during a rollout
+            try {
+                document.setEventData(objectMapper.writeValueAsString(event));
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Failed to serialize event", e);
+            }
+        }
+        return document;
+    }
+
+    private void appended(DroneEvent event) {
+        remember(event.getDroneId(), event.getVersion());
+        if (snapshots.isDue(event.getVersion())) {
+            snapshots.takeAsync(event.getDroneId(), this::snapshot);
+        }
+    }
+
     /**
      * Load all events for a specific drone
      */
     public List<DroneEvent> getEventsForDrone(String droneId) {
-        List<DroneEventDocument> documents = repository.findByDroneIdOrderByTimestampAsc(droneId);
+        return deserialize(repository.findByDroneIdOrderByTimestampAsc(droneId));
+    }
+
+    /**
+     * Load all events for a specific order
+     */
+    public List<DroneEvent> getEventsForOrder(String orderId) {
+        return deserialize(repository.findByOrderIdOrderByTimestampAsc(orderId));
+    }
+
+    private List<DroneEvent> deserialize(List<DroneEventDocument> documents) {
         List<DroneEvent> events = new ArrayList<>();
 
         for (DroneEventDocument doc : documents) {
+            if (doc.getPayload() != null) {
+                events.add(doc.getPayload());
+                continue;
+            }
             try {
-                DroneEvent event = objectMapper.readValue(doc.getEventData(), DroneEvent.class);
-                events.add(event);
+                events.add(fromLegacyJson(doc.getEventData()));
             } catch (Exception e) {
                 logger.error("Failed to deserialize event: {}", doc.getId(), e);
             }
@@ -71,57 +275,245 @@ public class DroneEventStore {
     }
 
     /**
-     * Load all events for a specific order
+     * A page of an event history, with the cursor of the next page; null on the last one
      */
-    public List<DroneEvent> getEventsForOrder(String orderId) {
-        List<DroneEventDocument> documents = repository.findByOrderIdOrderByTimestampAsc(orderId);
-        List<DroneEvent> events = new ArrayList<>();
+    public record EventPage(List<EventSummary> events, String next) {}
 
-        for (DroneEventDocument doc : documents) {
+    /**
+     * Events of a drone, oldest first, after a cursor of a previous page
+     *
+     * @throws IllegalArgumentException for a cursor not from a previous page
+     */
+    public EventPage getEventPageForDrone(String droneId, String after, int limit) {
+        return page(Criteria.where("droneId").is(droneId), after, limit);
+    }
+
+    /**
+     * Events of an order, oldest first, after a cursor of a previous page
+     *
+     * @throws IllegalArgumentException for a cursor not from a previous page
+     */
+    public EventPage getEventPageForOrder(String orderId, String after, int limit) {
+        return page(Criteria.where("orderId").is(orderId), after, limit);
+    }
+
+    /**
+     * Events of a drone, oldest first, straight from the database cursor; the
+     * stream must be closed
+     */
+    public Stream<EventSummary> streamEventsForDrone(String droneId, String after) {
+        return stream(Criteria.where("droneId").is(droneId), after);
+    }
+
+    /**
+     * Events of an order, oldest first, straight from the database cursor; the
+     * stream must be closed
+     */
+    public Stream<EventSummary> streamEventsForOrder(String orderId, String after) {
+        return stream(Criteria.where("orderId").is(orderId), after);
+    }
+
+    /**
+     * Whether a drone has any event
+     */
+    public boolean hasEventsForDrone(String droneId) {
+        return mongoTemplate.exists(Query.query(Criteria.where("droneId").is(droneId)), DroneEventDocument.class);
+    }
+
+    /**
+     * Whether an order has any event
+     */
+    public boolean hasEventsForOrder(String orderId) {
+        return mongoTemplate.exists(Query.query(Criteria.where("orderId").is(orderId)), DroneEventDocument.class);
+    }
+
+    // Keyset on (timestamp, _id): pages do not shift as events are added
+    private EventPage page(Criteria history, String after, int limit) {
+        Query query = historyQuery(history, after).limit(limit + 1);
+        List<org.bson.Document> documents = mongoTemplate.find(query, org.bson.Document.class,
+                mongoTemplate.getCollectionName(DroneEventDocument.class));
+        boolean more = documents.size() > limit;
+        List<org.bson.Document> page = more ? documents.subList(0, limit) : documents;
+        String next = more ? cursor(page.get(page.size() - 1)) : null;
+        return new EventPage(page.stream().map(this::summary).toList(), next);
+    }
+
+    private Stream<EventSummary> stream(Criteria history, String after) {
+        Query query = historyQuery(history, after).cursorBatchSize(500);
+        return mongoTemplate.stream(query, org.bson.Document.class,
+                        mongoTemplate.getCollectionName(DroneEventDocument.class))
+                .map(this::summary);
+    }
+
+    // Only the fields of the summaries: payloads are not read, let alone decoded.
+    // Legacy JSON is, until migrated, for the timestamp as it was written
+    private static Query historyQuery(Criteria history, String after) {
+        Criteria criteria = history;
+        if (after != null && !after.isEmpty()) {
+            String[] position = decodeCursor(after);
+            Date timestamp = new Date(Long.parseLong(position[0]));
+            ObjectId id = new ObjectId(position[1]);
+            criteria = new Criteria().andOperator(history, new Criteria().orOperator(
+                    Criteria.where("timestamp").gt(timestamp),
+                    Criteria.where("timestamp").is(timestamp).and("_id").gt(id)));
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Order.asc("timestamp"), Sort.Order.asc("_id")));
+        query.fields().include("eventType").include("timestamp").include("version").include("eventData");
+        return query;
+    }
+
+    // Timestamp as the event itself has it, like the summaries built from whole events
+    private EventSummary summary(org.bson.Document document) {
+        LocalDateTime timestamp = DroneEventCodec.time(document, "timestamp");
+        String eventData = document.getString("eventData");
+        if (eventData != null) {
             try {
-                DroneEvent event = objectMapper.readValue(doc.getEventData(), DroneEvent.class);
-                events.add(event);
-            } catch (Exception e) {
-                logger.error("Failed to deserialize event: {}", doc.getId(), e);
+                timestamp = fromLegacyJson(eventData).getTimestamp();
+            } catch (IOException e) {
+                logger.warn("Failed to read the legacy event {}, summarized from its fields",
+                        document.getObjectId("_id"), e);
             }
         }
+        return new EventSummary(
+                document.getString("eventType"),
+                timestamp.toString(),
+                ((Number) document.get("version")).longValue()
+        );
+    }
+
+    // Opaque to clients: position of the last event of a page
+    private static String cursor(org.bson.Document last) {
+        String position = last.getDate("timestamp").getTime() + ":" + last.getObjectId("_id").toHexString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException for a cursor not from a previous page
+     */
+    static String[] decodeCursor(String cursor) {
+        String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+        if (position.length != 2 || !position[0].matches("-?\\d{1,18}") || !ObjectId.isValid(position[1])) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        return position;
+    }
 
-        return events;
+    /**
+     * Event of a document written before native payloads
+     */
+    DroneEvent fromLegacyJson(String eventData) throws IOException {
+        return objectMapper.readValue(eventData, DroneEvent.class);
     }
 
     /**
-     * Get the current version (event count) for a drone
+     * Version the next event of a drone gets: one past the highest stored version,
+     * 0 for a drone without events
      */
     public long getCurrentVersion(String droneId) {
-        return repository.countByDroneId(droneId);
+        return nextVersion(droneId);
+    }
+
+    // Remembered, else looked up once
+    private long nextVersion(String droneId) {
+        synchronized (latestVersions) {
+            Long latest = latestVersions.get(droneId);
+            if (latest != null) {
+                return latest + 1;
+            }
+        }
+        long latest = repository.findFirstByDroneIdOrderByVersionDesc(droneId)
+                .map(DroneEventDocument::getVersion)
+                .orElse(-1L);
+        if (latest >= 0) {
+            remember(droneId, latest);
+        }
+        return latest + 1;
+    }
+
+    private void remember(String droneId, long version) {
+        synchronized (latestVersions) {
+            latestVersions.merge(droneId, version, Math::max);
+        }
+    }
+
+    private void forget(String droneId) {
+        synchronized (latestVersions) {
+            latestVersions.remove(droneId);
+        }
     }
 
     /**
-     * Rebuild drone state from events
+     * Rebuild drone state from its latest snapshot and the events after it
      */
     public Drone rebuildDroneFromEvents(String droneId) {
-        List<DroneEvent> events = getEventsForDrone(droneId);
-
-        if (events.isEmpty()) {
-            return null;
+        Timer.Sample sample = Timer.start(registry);
+        Optional<DroneSnapshotDocument> snapshot = snapshots.latest(droneId);
+        if (snapshot.isEmpty()) {
+            DroneSnapshotDocument rebuilt = replay(droneId, null);
+            record(sample, "full", rebuilt);
+            return rebuilt != null ? rebuilt.toDrone() : null;
         }
+        DroneSnapshotDocument rebuilt = replay(droneId, snapshot.get());
+        record(sample, "snapshot", rebuilt);
+        return rebuilt.toDrone();
+    }
 
-        // Start with first event (DRONE_CREATED)
-        DroneCreatedEvent createdEvent = (DroneCreatedEvent) events.get(0);
-        OrderMessage order = new OrderMessage(
-                createdEvent.getOrderId(),
-                "reconstructed", // customerId not stored in event
-                createdEvent.getFromAddress(),
-                createdEvent.getToAddress(),
-                createdEvent.getPackageWeight(),
-                createdEvent.getRequestedDeliveryTime(),
-                createdEvent.getMaxDeliveryTimeMinutes()
-        );
+    /**
+     * Rebuild drone state from its whole event history, ignoring snapshots
+     */
+    public Drone rebuildDroneFromHistory(String droneId) {
+        Timer.Sample sample = Timer.start(registry);
+        DroneSnapshotDocument rebuilt = replay(droneId, null);
+        record(sample, "full", rebuilt);
+        return rebuilt != null ? rebuilt.toDrone() : null;
+    }
+
+    // Current state of a drone to snapshot
+    private DroneSnapshotDocument snapshot(String droneId) {
+        return replay(droneId, snapshots.latest(droneId).orElse(null));
+    }
+
+    /**
+     * Apply the events after a snapshot, or all events without one
+     *
+     * @return the state after the last event, null for an unknown drone
+     */
+    private DroneSnapshotDocument replay(String droneId, DroneSnapshotDocument snapshot) {
+        List<DroneEvent> events = snapshot != null
+                ? deserialize(repository.findByDroneIdAndVersionGreaterThanOrderByVersionAsc(
+                        droneId, snapshot.getVersion()))
+                : getEventsForDrone(droneId);
+        replayed(snapshot != null ? "snapshot" : "full").record(events.size());
 
-        Drone drone = new Drone(order, createdEvent.getDroneId());
+        Drone drone;
+        long version;
+        int next;
+        if (snapshot != null) {
+            drone = snapshot.toDrone();
+            version = snapshot.getVersion();
+            next = 0;
+        } else if (events.isEmpty()) {
+            return null;
+        } else {
+            // Start with first event (DRONE_CREATED)
+            DroneCreatedEvent createdEvent = (DroneCreatedEvent) events.get(0);
+            OrderMessage order = new OrderMessage(
+                    createdEvent.getOrderId(),
+                    "reconstructed", // customerId not stored in event
+                    createdEvent.getFromAddress(),
+                    createdEvent.getToAddress(),
+                    createdEvent.getPackageWeight(),
+                    createdEvent.getRequestedDeliveryTime(),
+                    createdEvent.getMaxDeliveryTimeMinutes()
+            );
+            drone = new Drone(order, createdEvent.getDroneId());
+            version = createdEvent.getVersion();
+            next = 1;
+        }
 
         // Apply subsequent events
-        for (int i = 1; i < events.size(); i++) {
+        for (int i = next; i < events.size(); i++) {
             DroneEvent event = events.get(i);
 
             if (event instanceof DroneDispatchedEvent) {
@@ -129,8 +521,24 @@ public class DroneEventStore {
             } else if (event instanceof DroneDeliveredEvent) {
                 drone.end();
             }  // Drone is already in returning state from end()
+            version = Math.max(version, event.getVersion());
         }
 
-        return drone;
+        return new DroneSnapshotDocument(drone, version);
+    }
+
+    private void record(Timer.Sample sample, String source, DroneSnapshotDocument rebuilt) {
+        sample.stop(Timer.builder("drone_rebuild_seconds")
+                .tag("source", source)
+                .tag("found", String.valueOf(rebuilt != null))
+                .description("Latency of drone rebuilds, from a snapshot or the full history")
+                .register(registry));
+    }
+
+    private DistributionSummary replayed(String source) {
+        return DistributionSummary.builder("drone_rebuild_events_replayed")
+                .tag("source", source)
+                .description("Events applied per drone rebuild")
+                .register(registry);
     }
-}
\ No newline at end of file
+}
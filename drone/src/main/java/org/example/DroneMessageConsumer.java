@@ -12,26 +12,34 @@ import java.util.Random;
 /**
  * Consumer that processes order messages and creates drone deliveries
  * using Event Sourcing pattern to track all state changes.
+ * Requests come from the legacy {@code drone_queue} and the shards claimed by
+ * {@link ShardCoordinator}, one consumer per queue.
  */
 @Service
 public class DroneMessageConsumer {
+    public static final String LISTENER_ID = "drone-requests";
+
     private static final Logger logger = LoggerFactory.getLogger(DroneMessageConsumer.class);
     private final DroneController controller;
     private final DroneService droneService;
+    private final DroneCapacityAdvertiser capacity;
     private final Gauge drones;
 
     public DroneMessageConsumer(final DroneController controller,
                                 final DroneService droneService,
+                                final DroneCapacityAdvertiser capacity,
                                 MeterRegistry registry) {
         this.controller = controller;
         this.droneService = droneService;
+        this.capacity = capacity;
         this.drones = Gauge.builder("drone_sent", controller,
                         c -> c.getCurrentDispatchedDrones().size())
                 .description("Total numbers of drones sent")
                 .register(registry);
     }
 
-    @RabbitListener(queues = RabbitMqConfig.DRONE_QUEUE)
+    @RabbitListener(id = LISTENER_ID, queues = RabbitMqConfig.DRONE_QUEUE,
+            containerFactory = AmqpAutoConfiguration.SHARDED_CONTAINER_FACTORY)
     public void processOrderMessage(OrderMessage orderMessage) {
         try {
             logger.info("Received order message: {}", orderMessage);
@@ -39,6 +47,7 @@ public class DroneMessageConsumer {
             int sleepMinutes = rand.nextInt(orderMessage.maxDeliveryTimeMinutes()) + 1;
 
             droneService.startDroneDelivery(orderMessage, sleepMinutes);
+            capacity.regulate();
 
         } catch (Exception e) {
             logger.error("Error processing order message", e);
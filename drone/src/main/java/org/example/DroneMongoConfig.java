@@ -0,0 +1,20 @@
+package org.example;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+import java.util.List;
+
+/**
+ * Mongo mapping of the drone service: drone events are stored as native BSON
+ * subdocuments, see {@link DroneEventCodec}.
+ */
+@Configuration
+public class DroneMongoConfig {
+
+    @Bean
+    public MongoCustomConversions mongoCustomConversions() {
+        return new MongoCustomConversions(List.of(DroneEventCodec.Writer.INSTANCE, DroneEventCodec.Reader.INSTANCE));
+    }
+}
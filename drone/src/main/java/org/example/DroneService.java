@@ -2,11 +2,19 @@ package org.example;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.AmqpException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Service that handles drone operations using Event Sourcing pattern.
@@ -14,22 +22,26 @@ import java.time.LocalDateTime;
  */
 @Service
 public class DroneService {
-    private final RabbitTemplate rabbitTemplate;
+    private static final long CONFIRM_TIMEOUT_MS = 10_000;
+
+    private final ConfirmingPublisher publisher;
     private static final Logger logger = LoggerFactory.getLogger(DroneService.class);
     private final DroneEventStore eventStore;
     private final DroneController controller;
 
-    public DroneService(RabbitTemplate rabbitTemplate, DroneEventStore eventStore, DroneController controller) {
+    public DroneService(ConfirmingPublisher publisher, DroneEventStore eventStore, DroneController controller) {
         this.eventStore = eventStore;
         this.controller = controller;
-        this.rabbitTemplate = rabbitTemplate;
+        this.publisher = publisher;
     }
 
     /**
-     * Create a new drone for an order and store the creation event
+     * Create the drone of an order and store the creation event, then reply with
+     * its assignment. The drone ID derives from the order ID: a redelivered request
+     * finds the drone created by the first attempt and replies with it again.
      */
     public Drone createDrone(OrderMessage order) {
-        Drone drone = new Drone(order);
+        Drone drone = new Drone(order, droneIdFor(order.orderId()));
 
         // Create and store the DRONE_CREATED event (for Event Sourcing)
         DroneCreatedEvent event = new DroneCreatedEvent(
@@ -44,32 +56,48 @@ public class DroneService {
                 0 // First event is version 0
         );
 
-        eventStore.saveEvent(event);
-        logger.info("Created drone {} for order {}", drone.getId(), order.orderId());
+        try {
+            eventStore.saveEvent(event);
+            logger.info("Created drone {} for order {}", drone.getId(), order.orderId());
+        } catch (OptimisticLockingFailureException e) {
+            // An earlier attempt stored it, then failed before its reply was confirmed
+            drone = eventStore.rebuildDroneFromEvents(drone.getId());
+            logger.info("Drone {} already created for order {}, assigning it again", drone.getId(),
+                    order.orderId());
+        }
 
         DroneAssignedEvent sagaEvent = new DroneAssignedEvent(
                 "unknown", order.orderId(), drone.getId(), LocalDateTime.now()
         );
-        rabbitTemplate.convertAndSend(RabbitMqConfig.SAGA_EVENTS_EXCHANGE, "saga.drone_assigned", sagaEvent);
+        // The drone request is only acked once the reply is with the broker; otherwise it is retried
+        try {
+            publisher.publish(order.orderId(), RabbitMqConfig.SAGA_EVENTS_EXCHANGE, SagaTopology.DRONE_ASSIGNED, sagaEvent)
+                    .get(CONFIRM_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmqpException("Interrupted waiting for the confirm of drone " + drone.getId(), e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new AmqpException("Assignment of drone " + drone.getId() + " was not confirmed", e);
+        }
 
         return drone;
     }
 
+    static String droneIdFor(String orderId) {
+        return UUID.nameUUIDFromBytes(("drone:" + orderId).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
     /**
      * Dispatch a drone and record the event
      */
     public void dispatchDrone(String droneId, String orderId) {
-        long version = eventStore.getCurrentVersion(droneId);
-
-        DroneDispatchedEvent event = new DroneDispatchedEvent(
+        eventStore.append(droneId, version -> new DroneDispatchedEvent(
                 droneId,
                 orderId,
                 LocalDateTime.now(),
                 LocalDateTime.now(),
                 version
-        );
-
-        eventStore.saveEvent(event);
+        ));
         logger.info("Dispatched drone {} for order {}", droneId, orderId);
     }
 
@@ -77,17 +105,13 @@ public class DroneService {
      * Mark drone delivery as complete and record the event
      */
     public void completeDroneDelivery(String droneId, String orderId) {
-        long version = eventStore.getCurrentVersion(droneId);
-
-        DroneDeliveredEvent event = new DroneDeliveredEvent(
+        eventStore.append(droneId, version -> new DroneDeliveredEvent(
                 droneId,
                 orderId,
                 LocalDateTime.now(),
                 LocalDateTime.now(),
                 version
-        );
-
-        eventStore.saveEvent(event);
+        ));
         logger.info("Drone {} delivered order {}", droneId, orderId);
     }
 
@@ -95,17 +119,13 @@ public class DroneService {
      * Record drone return and record the event
      */
     public void recordDroneReturn(String droneId, String orderId) {
-        long version = eventStore.getCurrentVersion(droneId);
-
-        DroneReturnedEvent event = new DroneReturnedEvent(
+        eventStore.append(droneId, version -> new DroneReturnedEvent(
                 droneId,
                 orderId,
                 LocalDateTime.now(),
                 LocalDateTime.now(),
                 version
-        );
-
-        eventStore.saveEvent(event);
+        ));
         logger.info("Drone {} returned from order {}", droneId, orderId);
     }
 
@@ -122,6 +142,11 @@ public class DroneService {
     public void startDroneDelivery(OrderMessage order, int sleepMinutes) {
         // Create drone (this also sends the SAGA assigned event)
         Drone drone = createDrone(order);
+        if (drone.getState() != DroneState.Sleeping) {
+            // Dispatched by an earlier delivery of this request
+            logger.info("Drone {} already left for order {}", drone.getId(), order.orderId());
+            return;
+        }
         drone.start();
 
         drone.setExpectedArrivalTime(LocalDateTime.now().plusMinutes(sleepMinutes));
@@ -132,12 +157,15 @@ public class DroneService {
     }
 
     /**
-     * Scheduler that checks periodically which drones have arrived
+     * Scheduler that checks periodically which drones have arrived; the events of
+     * all arrivals of a tick are written at once
      */
     @Scheduled(fixedRate = 10000)
     public void checkArrivedDrones() {
         LocalDateTime now = LocalDateTime.now();
 
+        List<Drone> arrived = new ArrayList<>();
+        List<DroneEventStore.Append> events = new ArrayList<>();
         for (Drone drone : controller.getCurrentDispatchedDrones().values()) {
             if (drone.getState() == DroneState.InTransit &&
                     drone.getExpectedArrivalTime() != null &&
@@ -146,11 +174,27 @@ public class DroneService {
                 logger.info("Drone {} arrived at destination!", drone.getId());
 
                 drone.end();
-                completeDroneDelivery(drone.getId(), drone.getOrder().orderId());
-                recordDroneReturn(drone.getId(), drone.getOrder().orderId());
+                arrived.add(drone);
+                String droneId = drone.getId();
+                String orderId = drone.getOrder().orderId();
+                events.add(new DroneEventStore.Append(droneId, version -> new DroneDeliveredEvent(
+                        droneId, orderId, LocalDateTime.now(), LocalDateTime.now(), version)));
+                events.add(new DroneEventStore.Append(droneId, version -> new DroneReturnedEvent(
+                        droneId, orderId, LocalDateTime.now(), LocalDateTime.now(), version)));
+            }
+        }
+        if (arrived.isEmpty()) {
+            return;
+        }
 
-                controller.detachDrone(drone.getId());
+        try {
+            eventStore.appendAll(events);
+            logger.info("{} drones delivered and returned", arrived.size());
+        } finally {
+            // Ended either way: keeping them would hold their capacity forever
+            for (Drone drone : arrived) {
+                controller.detachDrone(drone.getOrder().orderId());
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,72 @@
+package org.example;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * MongoDB document holding the latest snapshot of a drone.
+ * Captures the state after the event with {@code version}; later events are
+ * replayed on top of it.
+ */
+@Document(collection = "drone_snapshots")
+public class DroneSnapshotDocument {
+    @Id
+    private String droneId;
+
+    private long version;
+    private OrderMessage order;
+    private DroneState state;
+    private LocalDateTime dispatchTime;
+    private LocalDateTime deliveryTime;
+    private LocalDateTime returnTime;
+    private LocalDateTime takenAt;
+
+    public DroneSnapshotDocument() {}
+
+    public DroneSnapshotDocument(Drone drone, long version) {
+        this.droneId = drone.getId();
+        this.version = version;
+        this.order = drone.getOrder();
+        this.state = drone.getState();
+        this.dispatchTime = drone.getDispatchTime();
+        this.deliveryTime = drone.getDeliveryTime();
+        this.returnTime = drone.getReturnTime();
+        this.takenAt = LocalDateTime.now();
+    }
+
+    /**
+     * The drone as it was at {@code version}
+     */
+    public Drone toDrone() {
+        Drone drone = new Drone(order, droneId);
+        drone.restore(state, dispatchTime, deliveryTime, returnTime);
+        return drone;
+    }
+
+    // Getters and setters
+    public String getDroneId() { return droneId; }
+    public void setDroneId(String droneId) { this.droneId = droneId; }
+
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+
+    public OrderMessage getOrder() { return order; }
+    public void setOrder(OrderMessage order) { this.order = order; }
+
+    public DroneState getState() { return state; }
+    public void setState(DroneState state) { this.state = state; }
+
+    public LocalDateTime getDispatchTime() { return dispatchTime; }
+    public void setDispatchTime(LocalDateTime dispatchTime) { this.dispatchTime = dispatchTime; }
+
+    public LocalDateTime getDeliveryTime() { return deliveryTime; }
+    public void setDeliveryTime(LocalDateTime deliveryTime) { this.deliveryTime = deliveryTime; }
+
+    public LocalDateTime getReturnTime() { return returnTime; }
+    public void setReturnTime(LocalDateTime returnTime) { this.returnTime = returnTime; }
+
+    public LocalDateTime getTakenAt() { return takenAt; }
+    public void setTakenAt(LocalDateTime takenAt) { this.takenAt = takenAt; }
+}
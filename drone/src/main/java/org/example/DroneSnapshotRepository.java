@@ -0,0 +1,11 @@
+package org.example;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository of the latest snapshot of each drone, by drone ID.
+ */
+@Repository
+public interface DroneSnapshotRepository extends MongoRepository<DroneSnapshotDocument, String> {
+}
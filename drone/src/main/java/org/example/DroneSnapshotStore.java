@@ -0,0 +1,105 @@
+package org.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Snapshots of drone state, taken every {@code drone.snapshot.every-events} events.
+ *
+ * Snapshots are written on a background thread, off the append path: a
+ * snapshot that fails or is dropped only makes the next rebuild replay more events.
+ * Requests for a drone already waiting for its snapshot are coalesced.
+ */
+@Service
+public class DroneSnapshotStore {
+    private static final Logger logger = LoggerFactory.getLogger(DroneSnapshotStore.class);
+    private static final int MAX_PENDING = 10_000;
+
+    private final DroneSnapshotRepository repository;
+    private final int everyEvents;
+    private final ThreadPoolExecutor writer;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private final Counter taken;
+    private final Counter failed;
+
+    public DroneSnapshotStore(DroneSnapshotRepository repository,
+                              MeterRegistry registry,
+                              @Value("${drone.snapshot.every-events:50}") int everyEvents) {
+        this.repository = repository;
+        this.everyEvents = everyEvents;
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(MAX_PENDING), r -> {
+                    Thread thread = new Thread(r, "drone-snapshots");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.taken = Counter.builder("drone_snapshots_total")
+                .description("Drone snapshots written")
+                .register(registry);
+        this.failed = Counter.builder("drone_snapshot_failures_total")
+                .description("Drone snapshots that failed or were dropped")
+                .register(registry);
+    }
+
+    /**
+     * Whether the event with this version is one to snapshot after
+     */
+    public boolean isDue(long version) {
+        return everyEvents > 0 && (version + 1) % everyEvents == 0;
+    }
+
+    public Optional<DroneSnapshotDocument> latest(String droneId) {
+        return repository.findById(droneId);
+    }
+
+    /**
+     * Snapshot a drone in the background
+     *
+     * @param rebuild the current state of the drone and its version, null when unknown
+     */
+    public void takeAsync(String droneId, Function<String, DroneSnapshotDocument> rebuild) {
+        if (!pending.add(droneId)) {
+            return;
+        }
+        try {
+            writer.execute(() -> {
+                pending.remove(droneId);
+                try {
+                    DroneSnapshotDocument snapshot = rebuild.apply(droneId);
+                    if (snapshot != null) {
+                        repository.save(snapshot);
+                        taken.increment();
+                        logger.debug("Snapshot of drone {} at version {}", droneId, snapshot.getVersion());
+                    }
+                } catch (RuntimeException e) {
+                    failed.increment();
+                    logger.warn("Failed to snapshot drone {}", droneId, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(droneId);
+            failed.increment();
+            logger.warn("Snapshot backlog full, skipping drone {}", droneId);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writer.shutdown();
+    }
+}
@@ -1,101 +1,55 @@
 package org.example;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.amqp.core.*;
-import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
-import org.springframework.amqp.rabbit.connection.ConnectionFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
 
 /**
- * RabbitMQ configuration with SAGA pattern support.
- * Uses topic exchange for SAGA event routing.
+ * RabbitMQ topology of the drone service, see {@link SagaTopology}.
+ * Replies to the orchestrator are published under {@link SagaTopology#REPLIES};
+ * the drone compensation queue is declared by {@link DroneCompensationListener}.
+ * Drone requests are consumed from the shards of {@code drone_queue} this instance
+ * claims.
+ * Connections, converter and listener containers come from {@link AmqpAutoConfiguration}.
  */
 @Configuration
 public class RabbitMqConfig {
 
     // Existing queues
-    public static final String ORDER_QUEUE = "order_queue";
-    public static final String DRONE_QUEUE = "drone_queue";
+    public static final String DRONE_QUEUE = SagaTopology.DRONE_QUEUE;
 
-    // SAGA-specific exchange and queues
-    public static final String SAGA_EVENTS_EXCHANGE = "saga_events_exchange";
-    public static final String SAGA_EVENTS_QUEUE = "saga_events_queue";
-    public static final String SAGA_COMPENSATION_QUEUE = "saga_compensation_queue";
+    // SAGA-specific exchange
+    public static final String SAGA_EVENTS_EXCHANGE = SagaTopology.SAGA_EVENTS_EXCHANGE;
 
-    @Value("${spring.rabbitmq.host:localhost}")
-    private String rabbitmqHost;
-
-    @Value("${spring.rabbitmq.username:guest}")
-    private String rabbitmqUsername;
-
-    @Value("${spring.rabbitmq.password:guest}")
-    private String rabbitmqPassword;
-
-    // Existing queues
-    @Bean
-    public Queue orderQueue() {
-        return new Queue(ORDER_QUEUE, true);
-    }
-
-    @Bean
-    public Queue droneQueue() {
-        return new Queue(DRONE_QUEUE, true);
-    }
-
-    // SAGA queues
+    // Shards of the drone requests and the unsharded queue of earlier delivery
+    // services, still drained, with their delay queues and parking lots
     @Bean
-    public Queue sagaEventsQueue() {
-        return new Queue(SAGA_EVENTS_QUEUE, true);
+    public Declarables droneQueueShards(AmqpProperties amqp) {
+        return ShardedQueue.declarables(DRONE_QUEUE, amqp.sharding().shards(), amqp.retry());
     }
 
-    @Bean
-    public Queue sagaCompensationQueue() {
-        return new Queue(SAGA_COMPENSATION_QUEUE, true);
+    @Bean(destroyMethod = "shutdown")
+    public ShardCoordinator droneQueueCoordinator(ObjectProvider<MongoTemplate> mongoTemplate,
+                                                  MeterRegistry registry,
+                                                  RabbitListenerEndpointRegistry listeners,
+                                                  AmqpProperties amqp) {
+        return new ShardCoordinator(mongoTemplate.getIfAvailable(), registry, listeners,
+                DroneMessageConsumer.LISTENER_ID, DRONE_QUEUE, amqp.sharding());
     }
 
-    // Topic exchange for SAGA events
+    // Topic exchange for SAGA commands and replies
     @Bean
     public TopicExchange sagaEventsExchange() {
         return new TopicExchange(SAGA_EVENTS_EXCHANGE);
     }
 
-    // Bindings for SAGA events
-    @Bean
-    public Binding sagaEventsBinding(Queue sagaEventsQueue, TopicExchange sagaEventsExchange) {
-        return BindingBuilder.bind(sagaEventsQueue)
-                .to(sagaEventsExchange)
-                .with("saga.*");
-    }
-
-    // Bindings for compensation events
-    @Bean
-    public Binding sagaCompensationBinding(Queue sagaCompensationQueue,
-                                           TopicExchange sagaEventsExchange) {
-        return BindingBuilder.bind(sagaCompensationQueue)
-                .to(sagaEventsExchange)
-                .with("saga.compensate.*");
-    }
-
-    @Bean
-    public ConnectionFactory connectionFactory() {
-        CachingConnectionFactory factory = new CachingConnectionFactory(rabbitmqHost);
-        factory.setUsername(rabbitmqUsername);
-        factory.setPassword(rabbitmqPassword);
-        return factory;
-    }
-
-    @Bean
-    public Jackson2JsonMessageConverter messageConverter() {
-        return new Jackson2JsonMessageConverter();
-    }
-
+    // Fanout exchange for capacity advertisements
     @Bean
-    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
-        RabbitTemplate template = new RabbitTemplate(connectionFactory);
-        template.setMessageConverter(messageConverter());
-        return template;
+    public FanoutExchange droneCapacityExchange() {
+        return new FanoutExchange(SagaTopology.DRONE_CAPACITY_EXCHANGE);
     }
-}
\ No newline at end of file
+}
@@ -1,22 +1,41 @@
 package org.example;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
-@DataMongoTest(properties = "de.flapdoodle.mongodb.embedded.version=6.0.10")
-@Import(DroneEventStore.class)
+@DataMongoTest(properties = {"de.flapdoodle.mongodb.embedded.version=6.0.10", "drone.snapshot.every-events=2"})
+@Import({DroneEventStore.class, DroneSnapshotStore.class, DroneEventIndexInitializer.class,
+        DroneEventPayloadMigration.class, DroneMongoConfig.class, SimpleMeterRegistry.class})
 class DroneEventStoreIntegrationTest {
 
     @Autowired
     private DroneEventStore droneEventStore;
 
+    @Autowired
+    private DroneSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private DroneEventPayloadMigration migration;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @Test
     void testSaveAndRebuildDroneFromEvents() {
         // Arrange
@@ -44,4 +63,131 @@ class DroneEventStoreIntegrationTest {
         assertEquals(droneId, rebuiltDrone.getId());
         assertEquals(DroneState.InTransit, rebuiltDrone.getState());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testRebuildFromSnapshotReplaysLaterEvents() throws InterruptedException {
+        String droneId = "drone-888";
+        String orderId = "order-666";
+
+        droneEventStore.saveEvent(new DroneCreatedEvent(
+                droneId, orderId, "Rome", "Milan", 2.5,
+                LocalDateTime.now(), 30, LocalDateTime.now(), 0
+        ));
+        droneEventStore.saveEvent(new DroneDispatchedEvent(
+                droneId, orderId, LocalDateTime.now(), LocalDateTime.now(), 1
+        ));
+        // Written in the background after version 1
+        for (int i = 0; i < 50 && snapshotRepository.findById(droneId).isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(1, snapshotRepository.findById(droneId).orElseThrow().getVersion());
+
+        droneEventStore.saveEvent(new DroneDeliveredEvent(
+                droneId, orderId, LocalDateTime.now(), LocalDateTime.now(), 2
+        ));
+
+        Drone fromSnapshot = droneEventStore.rebuildDroneFromEvents(droneId);
+        Drone fromHistory = droneEventStore.rebuildDroneFromHistory(droneId);
+
+        assertEquals(DroneState.Returning, fromSnapshot.getState());
+        assertEquals(fromHistory.getState(), fromSnapshot.getState());
+        assertEquals(orderId, fromSnapshot.getOrder().orderId());
+    }
+
+    @Test
+    void testAppendTakesTheNextFreeVersion() {
+        String droneId = "drone-777";
+        String orderId = "order-555";
+
+        droneEventStore.saveEvent(new DroneCreatedEvent(
+                droneId, orderId, "Rome", "Milan", 2.5,
+                LocalDateTime.now(), 30, LocalDateTime.now(), 0
+        ));
+        // Version 0 is taken
+        assertThrows(OptimisticLockingFailureException.class, () -> droneEventStore.saveEvent(
+                new DroneCreatedEvent(droneId, orderId, "Rome", "Milan", 2.5,
+                        LocalDateTime.now(), 30, LocalDateTime.now(), 0)));
+
+        DroneDispatchedEvent dispatched = droneEventStore.append(droneId, version -> new DroneDispatchedEvent(
+                droneId, orderId, LocalDateTime.now(), LocalDateTime.now(), version));
+
+        assertEquals(1, dispatched.getVersion());
+        assertEquals(2, droneEventStore.getCurrentVersion(droneId));
+    }
+
+    @Test
+    void testLegacyJsonEventsAreReadAndMigrated() {
+        String droneId = "drone-666";
+        mongoTemplate.insert(new org.bson.Document("droneId", droneId)
+                .append("orderId", "order-444")
+                .append("eventType", "DRONE_CREATED")
+                .append("version", 0L)
+                .append("eventData", "{\"type\":\"DRONE_CREATED\",\"droneId\":\"" + droneId + "\","
+                        + "\"orderId\":\"order-444\",\"fromAddress\":\"Rome\",\"toAddress\":\"Milan\","
+                        + "\"packageWeight\":2.5,\"maxDeliveryTimeMinutes\":30,\"version\":0}"),
+                "drone_events");
+
+        assertEquals(1, droneEventStore.getEventsForDrone(droneId).size());
+
+        migration.run();
+
+        org.bson.Document migrated = mongoTemplate.findOne(
+                Query.query(Criteria.where("droneId").is(droneId)), org.bson.Document.class, "drone_events");
+        assertEquals("Milan", migrated.get("payload", org.bson.Document.class).getString("toAddress"));
+        assertFalse(migrated.containsKey("eventData"));
+        List<DroneEvent> events = droneEventStore.getEventsForDrone(droneId);
+        assertEquals("Rome", ((DroneCreatedEvent) events.get(0)).getFromAddress());
+    }
+
+    @Test
+    void testAppendAllRetriesTheDronesInConflict() {
+        for (String droneId : List.of("drone-a", "drone-b")) {
+            droneEventStore.saveEvent(new DroneCreatedEvent(
+                    droneId, "order-" + droneId, "Rome", "Milan", 2.5,
+                    LocalDateTime.now(), 30, LocalDateTime.now(), 0
+            ));
+        }
+        // Written by another instance: drone-a is at version 1 already
+        mongoTemplate.insert(new org.bson.Document("droneId", "drone-a").append("version", 1L), "drone_events");
+
+        List<DroneEvent> appended = droneEventStore.appendAll(List.of(
+                new DroneEventStore.Append("drone-b", version -> new DroneDeliveredEvent(
+                        "drone-b", "order-drone-b", LocalDateTime.now(), LocalDateTime.now(), version)),
+                new DroneEventStore.Append("drone-a", version -> new DroneDeliveredEvent(
+                        "drone-a", "order-drone-a", LocalDateTime.now(), LocalDateTime.now(), version)),
+                new DroneEventStore.Append("drone-a", version -> new DroneReturnedEvent(
+                        "drone-a", "order-drone-a", LocalDateTime.now(), LocalDateTime.now(), version))
+        ));
+
+        assertEquals(List.of(1L, 2L, 3L), appended.stream().map(DroneEvent::getVersion).toList());
+        assertEquals(4, droneEventStore.getCurrentVersion("drone-a"));
+        assertEquals(2, droneEventStore.getCurrentVersion("drone-b"));
+    }
+
+    @Test
+    void testEventHistoryPagesFollowTheCursor() {
+        String droneId = "drone-555";
+        String orderId = "order-333";
+        LocalDateTime start = LocalDateTime.now();
+
+        droneEventStore.saveEvent(new DroneCreatedEvent(
+                droneId, orderId, "Rome", "Milan", 2.5, start, 30, start, 0));
+        droneEventStore.saveEvent(new DroneDispatchedEvent(droneId, orderId, start, start.plusSeconds(1), 1));
+        droneEventStore.saveEvent(new DroneDeliveredEvent(droneId, orderId, start, start.plusSeconds(2), 2));
+
+        DroneEventStore.EventPage first = droneEventStore.getEventPageForDrone(droneId, null, 2);
+        DroneEventStore.EventPage second = droneEventStore.getEventPageForDrone(droneId, first.next(), 2);
+
+        assertEquals(List.of(0L, 1L), first.events().stream().map(EventSummary::version).toList());
+        assertEquals(List.of(2L), second.events().stream().map(EventSummary::version).toList());
+        assertNull(second.next());
+        try (var streamed = droneEventStore.streamEventsForOrder(orderId, first.next())) {
+            assertEquals(1, streamed.count());
+        }
+        assertThrows(IllegalArgumentException.class, () -> droneEventStore.getEventPageForDrone(droneId, "x", 2));
+        // Summaries keep the timestamps of the events
+        List<String> timestamps = droneEventStore.getEventsForDrone(droneId).stream()
+                .map(e -> e.getTimestamp().toString()).toList();
+        assertEquals(timestamps.subList(0, 2), first.events().stream().map(EventSummary::timestamp).toList());
+    }
+}